@@ -0,0 +1,183 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.benchmarks;
+
+import com.appeaser.sublimepickerlibrary.recurrencepicker.EventRecurrence;
+import com.appeaser.sublimepickerlibrary.recurrencepicker.RecurrenceClassifier;
+import com.appeaser.sublimepickerlibrary.recurrencepicker.RecurrenceIterator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the recurrence code paths the pickers hit on every rule.
+ * Each operation handles one rule of the selected corpus, cycling through
+ * the corpus. Run with the GC profiler (see build.gradle) to get the bytes
+ * allocated per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RecurrenceBenchmarks {
+
+    // Occurrences taken per expansion - about what a preview shows
+    private static final int EXPANSION_LENGTH = 10;
+
+    // 2016-01-04, a Monday
+    private static final long START_MILLIS = 1451865600000L;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    @State(Scope.Thread)
+    public static class Corpus {
+
+        @Param({"SIMPLE_WEEKLY", "MONTHLY_NTH", "LONG_BYDAY", "UNTIL", "COUNT"})
+        public String corpus;
+
+        String[] rules;
+
+        // rules[i], parsed
+        EventRecurrence[] parsed;
+
+        // Equal to parsed[i], but separate instances
+        EventRecurrence[] copies;
+
+        // Reused by the benchmarks that write
+        final EventRecurrence scratch = new EventRecurrence();
+        final StringBuilder builder = new StringBuilder();
+        RecurrenceIterator iterator;
+
+        private int mIndex;
+
+        @Setup
+        public void setUp() {
+            rules = getRules(corpus);
+            parsed = new EventRecurrence[rules.length];
+            copies = new EventRecurrence[rules.length];
+            for (int i = 0; i < rules.length; i++) {
+                parsed[i] = new EventRecurrence();
+                parsed[i].parse(rules[i]);
+                copies[i] = new EventRecurrence();
+                copies[i].parse(rules[i]);
+            }
+            iterator = new RecurrenceIterator(parsed[0], START_MILLIS, UTC);
+        }
+
+        int next() {
+            final int index = mIndex;
+            mIndex = index + 1 == rules.length ? 0 : index + 1;
+            return index;
+        }
+    }
+
+    static String[] getRules(String corpus) {
+        switch (corpus) {
+            case "SIMPLE_WEEKLY":
+                return new String[]{
+                        "FREQ=WEEKLY;BYDAY=MO",
+                        "FREQ=WEEKLY;INTERVAL=2;BYDAY=TU,TH",
+                        "FREQ=WEEKLY;WKST=SU;BYDAY=MO,WE,FR"
+                };
+            case "MONTHLY_NTH":
+                return new String[]{
+                        "FREQ=MONTHLY;BYDAY=2TU",
+                        "FREQ=MONTHLY;BYDAY=-1FR",
+                        "FREQ=MONTHLY;INTERVAL=3;BYDAY=1MO"
+                };
+            case "LONG_BYDAY":
+                return new String[]{
+                        "FREQ=MONTHLY;BYDAY=1MO,2MO,3MO,4MO,-1MO,1WE,2WE,3WE,4WE,-1WE,"
+                                + "1FR,2FR,3FR,4FR,-1FR",
+                        "FREQ=YEARLY;BYMONTH=1,2,3,4,5,6,7,8,9,10,11,12;BYDAY=1SU,-1SA",
+                        "FREQ=WEEKLY;WKST=SU;BYDAY=SU,MO,TU,WE,TH,FR,SA",
+                        "FREQ=MONTHLY;BYDAY=MO,TU,WE,TH,FR;BYSETPOS=-1"
+                };
+            case "UNTIL":
+                return new String[]{
+                        "FREQ=DAILY;UNTIL=20301231T235959Z",
+                        "FREQ=WEEKLY;UNTIL=20251231;BYDAY=MO,FR",
+                        "FREQ=MONTHLY;UNTIL=20280101T000000Z;BYMONTHDAY=15"
+                };
+            case "COUNT":
+                return new String[]{
+                        "FREQ=DAILY;COUNT=10",
+                        "FREQ=WEEKLY;COUNT=52;BYDAY=SA",
+                        "FREQ=YEARLY;COUNT=5;BYMONTH=6;BYMONTHDAY=21"
+                };
+            default:
+                throw new IllegalArgumentException("Unknown corpus: " + corpus);
+        }
+    }
+
+    @Benchmark
+    public EventRecurrence parse(Corpus c) {
+        c.scratch.parse(c.rules[c.next()]);
+        return c.scratch;
+    }
+
+    @Benchmark
+    public String toString(Corpus c) {
+        return c.parsed[c.next()].toString();
+    }
+
+    // The allocation-free form of toString()
+    @Benchmark
+    public int writeTo(Corpus c) {
+        final StringBuilder builder = c.builder;
+        builder.setLength(0);
+        c.parsed[c.next()].writeTo(builder);
+        return builder.length();
+    }
+
+    // Equal rules - every field has to be compared
+    @Benchmark
+    public boolean equals(Corpus c) {
+        final int index = c.next();
+        return c.parsed[index].equals(c.copies[index]);
+    }
+
+    // What RecurrenceOptionCreator does to load a rule into its model
+    @Benchmark
+    public int classify(Corpus c) {
+        return RecurrenceClassifier.classify(c.parsed[c.next()]);
+    }
+
+    @Benchmark
+    public int expand(Corpus c) {
+        final RecurrenceIterator iterator = c.iterator;
+        iterator.reset(c.parsed[c.next()], START_MILLIS, UTC);
+        int last = 0;
+        for (int i = 0; i < EXPANSION_LENGTH && iterator.hasNext(); i++) {
+            last = iterator.nextEpochDay();
+        }
+        return last;
+    }
+}
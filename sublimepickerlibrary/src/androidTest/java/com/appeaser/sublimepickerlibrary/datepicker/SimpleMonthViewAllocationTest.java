@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.datepicker;
+
+import android.content.res.ColorStateList;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+
+import com.appeaser.sublimepickerlibrary.R;
+
+import java.util.Calendar;
+
+/**
+ * Checks that drawing a laid out SimpleMonthView allocates nothing.
+ */
+public class SimpleMonthViewAllocationTest extends AndroidTestCase {
+
+    // Draws measured, after warming up
+    private static final int DRAWS = 50;
+
+    private SimpleMonthView mView;
+    private Canvas mCanvas;
+
+    // Keeps the allocation in testAllocationsAreCounted() from being optimized out
+    private Object mSink;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        mView = new SimpleMonthView(new ContextThemeWrapper(getContext(),
+                android.support.v7.appcompat.R.style.Theme_AppCompat_Light));
+        mView.setMonthTextAppearance(R.style.SPMonthLabelTextAppearance);
+        mView.setDayOfWeekTextAppearance(R.style.SPWeekDayLabelTextAppearance);
+        mView.setDayTextAppearance(R.style.SPDayTextAppearance);
+
+        final ColorStateList color = ColorStateList.valueOf(Color.DKGRAY);
+        mView.setMonthTextColor(color);
+        mView.setDayOfWeekTextColor(color);
+        mView.setDayTextColor(color);
+        mView.setDaySelectorColor(ColorStateList.valueOf(Color.BLUE));
+        mView.setDayHighlightColor(ColorStateList.valueOf(Color.LTGRAY));
+
+        // This month, so that today is drawn too, with a selected range,
+        // a disabled day & a few occurrences
+        final Calendar today = Calendar.getInstance();
+        mView.setMonthParams(today.get(Calendar.MONTH), today.get(Calendar.YEAR),
+                Calendar.SUNDAY, 2, 31, 10, 16, SelectedDate.Type.RANGE);
+        mView.setOccurrenceMask(0x1248421);
+
+        mView.measure(View.MeasureSpec.makeMeasureSpec(720, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        mView.layout(0, 0, mView.getMeasuredWidth(), mView.getMeasuredHeight());
+
+        mCanvas = new Canvas(Bitmap.createBitmap(mView.getWidth(), mView.getHeight(),
+                Bitmap.Config.ARGB_8888));
+    }
+
+    public void testAllocationsAreCounted() {
+        // Otherwise the other tests would pass with the counter off
+        assertTrue(countAllocations(new Runnable() {
+            @Override
+            public void run() {
+                mSink = new Object();
+            }
+        }) > 0);
+    }
+
+    public void testOnDrawDoesNotAllocate() {
+        mView.setRenderCache(null);
+        assertEquals(0, countDrawAllocations());
+    }
+
+    public void testOnDrawFromRenderCacheDoesNotAllocate() {
+        final MonthRenderCache cache = new MonthRenderCache(4 * 1024 * 1024);
+        mView.setRenderCache(cache);
+        // Drawn from the cache, not directly
+        assertNotNull(cache.get(mView));
+        assertEquals(0, countDrawAllocations());
+    }
+
+    public void testSingleDaySelectionDoesNotAllocate() {
+        mView.setRenderCache(null);
+        mView.setSelectedDays(12, 12, SelectedDate.Type.SINGLE);
+        assertEquals(0, countDrawAllocations());
+    }
+
+    /**
+     * @return objects allocated by this thread over DRAWS calls to onDraw()
+     */
+    private int countDrawAllocations() {
+        // The title, label & render caches fill on the first draw
+        mView.onDraw(mCanvas);
+        mView.onDraw(mCanvas);
+
+        return countAllocations(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < DRAWS; i++) {
+                    mView.onDraw(mCanvas);
+                }
+            }
+        });
+    }
+
+    /**
+     * Debug's allocation counting is deprecated since API 23, but nothing
+     * replaces it for counting a single thread's allocations.
+     *
+     * @return objects allocated by this thread while running 'r'
+     */
+    @SuppressWarnings("deprecation")
+    private static int countAllocations(Runnable r) {
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            r.run();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return Debug.getThreadAllocCount();
+    }
+}
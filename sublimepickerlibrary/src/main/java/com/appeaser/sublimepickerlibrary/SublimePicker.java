@@ -41,6 +41,7 @@ import com.appeaser.sublimepickerlibrary.datepicker.SublimeDatePicker;
 import com.appeaser.sublimepickerlibrary.drawables.OverflowDrawable;
 import com.appeaser.sublimepickerlibrary.helpers.SublimeListenerAdapter;
 import com.appeaser.sublimepickerlibrary.helpers.SublimeOptions;
+import com.appeaser.sublimepickerlibrary.recurrencepicker.EventRecurrenceCodec;
 import com.appeaser.sublimepickerlibrary.recurrencepicker.SublimeRecurrencePicker;
 import com.appeaser.sublimepickerlibrary.timepicker.SublimeTimePicker;
 import com.appeaser.sublimepickerlibrary.utilities.SUtils;
@@ -489,7 +490,7 @@ public class SublimePicker extends FrameLayout
             sCurrentPicker = SublimeOptions.Picker.valueOf(in.readString());
             sHiddenPicker = SublimeOptions.Picker.valueOf(in.readString());
             sCurrentRecurrenceOption = SublimeRecurrencePicker.RecurrenceOption.valueOf(in.readString());
-            sRecurrenceRule = in.readString();
+            sRecurrenceRule = EventRecurrenceCodec.readRule(in);
         }
 
         @Override
@@ -499,7 +500,7 @@ public class SublimePicker extends FrameLayout
             dest.writeString(sCurrentPicker.name());
             dest.writeString(sHiddenPicker.name());
             dest.writeString(sCurrentRecurrenceOption.name());
-            dest.writeString(sRecurrenceRule);
+            EventRecurrenceCodec.writeRule(dest, sRecurrenceRule);
         }
 
         public SublimeOptions.Picker getCurrentPicker() {
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.datepicker;
+
+import android.text.format.DateFormat;
+import android.util.LruCache;
+
+import com.appeaser.sublimepickerlibrary.common.DateTimePatternHelper;
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
+import com.appeaser.sublimepickerlibrary.utilities.SUtils;
+
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * The text of a month view - day numbers, weekday labels & month titles -
+ * formatted once per locale & shared by all month views.
+ * <p/>
+ * {@link #get(Locale)} holds on to the labels of the last locale asked
+ * for; asking for another locale (i.e. after a locale change) drops them.
+ * Month titles are formatted as they are first asked for. Thread-safe.
+ */
+final class CalendarLabels {
+
+    private static final String DEFAULT_TITLE_FORMAT = "MMMMy";
+    private static final String NARROW_DAY_OF_WEEK_FORMAT;
+
+    // Titles kept - a few years of paging
+    private static final int TITLE_CACHE_SIZE = 120;
+
+    static {
+        // Deals with the change in usage of `EEEEE` pattern.
+        // See method `SimpleDateFormat#appendDayOfWeek(...)` for more details.
+        if (SUtils.isApi_18_OrHigher()) {
+            NARROW_DAY_OF_WEEK_FORMAT = "EEEEE";
+        } else {
+            NARROW_DAY_OF_WEEK_FORMAT = "E";
+        }
+    }
+
+    private static CalendarLabels sLabels;
+
+    private final Locale mLocale;
+
+    // mDayLabels[day - 1] is the label for 'day'
+    private final String[] mDayLabels = new String[31];
+
+    // Indexed by Calendar.DAY_OF_WEEK
+    private final String[] mNarrowDayOfWeekLabels = new String[Calendar.SATURDAY + 1];
+
+    // Keyed by epoch month. Guarded by mTitleFormatter.
+    private final LruCache<Integer, String> mTitles = new LruCache<>(TITLE_CACHE_SIZE);
+    private final SimpleDateFormat mTitleFormatter;
+    private final Calendar mTitleCalendar;
+
+    private CalendarLabels(Locale locale) {
+        mLocale = locale;
+
+        final NumberFormat dayFormatter = NumberFormat.getIntegerInstance(locale);
+        for (int day = 1; day <= mDayLabels.length; day++) {
+            mDayLabels[day - 1] = dayFormatter.format(day);
+        }
+
+        final SimpleDateFormat narrowFormatter
+                = new SimpleDateFormat(NARROW_DAY_OF_WEEK_FORMAT, locale);
+        final Calendar calendar = Calendar.getInstance(locale);
+        for (int dayOfWeek = Calendar.SUNDAY; dayOfWeek <= Calendar.SATURDAY; dayOfWeek++) {
+            calendar.set(Calendar.DAY_OF_WEEK, dayOfWeek);
+            mNarrowDayOfWeekLabels[dayOfWeek] = narrowFormatter.format(calendar.getTime());
+        }
+
+        final String titleFormat;
+        if (SUtils.isApi_18_OrHigher()) {
+            titleFormat = DateFormat.getBestDateTimePattern(locale, DEFAULT_TITLE_FORMAT);
+        } else {
+            titleFormat = DateTimePatternHelper.getBestDateTimePattern(locale,
+                    DateTimePatternHelper.PATTERN_MMMMy);
+        }
+        mTitleFormatter = new SimpleDateFormat(titleFormat, locale);
+        mTitleCalendar = Calendar.getInstance(locale);
+    }
+
+    /**
+     * @return the labels for 'locale'
+     */
+    static synchronized CalendarLabels get(Locale locale) {
+        if (sLabels == null || !sLabels.mLocale.equals(locale)) {
+            sLabels = new CalendarLabels(locale);
+        }
+        return sLabels;
+    }
+
+    /**
+     * @param day 1-31
+     * @return 'day' as a number in this locale
+     */
+    String getDayLabel(int day) {
+        return mDayLabels[day - 1];
+    }
+
+    /**
+     * @param dayOfWeek {@link Calendar#SUNDAY} through {@link Calendar#SATURDAY}
+     * @return the narrow (usually single letter) name of 'dayOfWeek'
+     */
+    String getNarrowDayOfWeekLabel(int dayOfWeek) {
+        return mNarrowDayOfWeekLabels[dayOfWeek];
+    }
+
+    /**
+     * @param month 0-11
+     * @return the title for 'month', e.g. "March 2016"
+     */
+    String getMonthTitle(int year, int month) {
+        final Integer key = EpochDayUtils.toEpochMonth(year, month);
+        synchronized (mTitleFormatter) {
+            String title = mTitles.get(key);
+            if (title == null) {
+                mTitleCalendar.clear();
+                mTitleCalendar.set(year, month, 1);
+                title = mTitleFormatter.format(mTitleCalendar.getTime());
+                mTitles.put(key, title);
+            }
+            return title;
+        }
+    }
+}
@@ -31,9 +31,11 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.appeaser.sublimepickerlibrary.R;
+import com.appeaser.sublimepickerlibrary.recurrencepicker.RecurrenceMonthMask;
 import com.appeaser.sublimepickerlibrary.utilities.Config;
 import com.appeaser.sublimepickerlibrary.utilities.SUtils;
 
+import java.util.ArrayDeque;
 import java.util.Calendar;
 
 /**
@@ -45,11 +47,20 @@ class DayPickerPagerAdapter extends PagerAdapter {
 
     private static final int MONTHS_IN_YEAR = 12;
 
+    // Pages kept for reuse. ViewPager destroys pages one at a time as it
+    // pages, so a few are enough.
+    private static final int MAX_RECYCLED_PAGES = 3;
+
     private final Calendar mMinDate = Calendar.getInstance();
     private final Calendar mMaxDate = Calendar.getInstance();
 
     private final SparseArray<ViewHolder> mItems = new SparseArray<>();
 
+    // Destroyed pages, rebound instead of inflating new ones
+    private final ArrayDeque<ViewHolder> mRecycledPages = new ArrayDeque<>(MAX_RECYCLED_PAGES);
+    private int mRecycleHits;
+    private int mRecycleMisses;
+
     private final LayoutInflater mInflater;
     private final int mLayoutResId;
     private final int mCalendarViewId;
@@ -69,6 +80,12 @@ class DayPickerPagerAdapter extends PagerAdapter {
     private int mCount;
     private int mFirstDayOfWeek;
 
+    // Occurrences to mark, or null
+    private RecurrenceMonthMask mOccurrences;
+
+    // Renders of months, or null if disabled
+    private MonthRenderCache mRenderCache;
+
     // used in resolving start/end dates during range selection
     private final SelectedDate mTempSelectedDay = new SelectedDate(Calendar.getInstance());
 
@@ -117,6 +134,70 @@ class DayPickerPagerAdapter extends PagerAdapter {
         return mFirstDayOfWeek;
     }
 
+    /**
+     * Sets the recurrence whose occurrences are marked on each month.
+     *
+     * @param occurrences the occurrences, or null to mark none
+     */
+    public void setOccurrences(@Nullable RecurrenceMonthMask occurrences) {
+        mOccurrences = occurrences;
+
+        // Update displayed views.
+        final int count = mItems.size();
+        for (int i = 0; i < count; i++) {
+            final ViewHolder holder = mItems.valueAt(i);
+            holder.calendar.setOccurrenceMask(getOccurrenceMask(
+                    getMonthForPosition(holder.position), getYearForPosition(holder.position)));
+        }
+    }
+
+    /**
+     * Enables drawing months from a cache of bitmaps, so that months paged
+     * back into view aren't redrawn from scratch. Costs memory - up to
+     * 1/16 of the heap.
+     */
+    public void setRenderCacheEnabled(boolean enabled) {
+        if (enabled == (mRenderCache != null)) {
+            return;
+        }
+
+        mRenderCache = enabled ? MonthRenderCache.createDefault() : null;
+
+        // Update displayed views.
+        final int count = mItems.size();
+        for (int i = 0; i < count; i++) {
+            mItems.valueAt(i).calendar.setRenderCache(mRenderCache);
+        }
+    }
+
+    // Renders & recycled pages set up with the old appearance are stale
+    private void onAppearanceChanged() {
+        if (mRenderCache != null) {
+            mRenderCache.evictAll();
+        }
+        mRecycledPages.clear();
+    }
+
+    /**
+     * @return the number of destroyed pages held for reuse
+     */
+    int getRecyclePoolSize() {
+        return mRecycledPages.size();
+    }
+
+    /**
+     * @return the fraction of pages created by reusing a destroyed page
+     * rather than inflating, or 0 if none have been created
+     */
+    float getRecycleHitRate() {
+        final int total = mRecycleHits + mRecycleMisses;
+        return total == 0 ? 0f : mRecycleHits / (float) total;
+    }
+
+    private int getOccurrenceMask(int month, int year) {
+        return mOccurrences != null ? mOccurrences.getMask(year, month) : 0;
+    }
+
     /**
      * Sets the selected day.
      *
@@ -204,18 +285,22 @@ class DayPickerPagerAdapter extends PagerAdapter {
     @SuppressWarnings("unused")
     void setCalendarTextColor(ColorStateList calendarTextColor) {
         mCalendarTextColor = calendarTextColor;
+        onAppearanceChanged();
     }
 
     void setDaySelectorColor(ColorStateList selectorColor) {
         mDaySelectorColor = selectorColor;
+        onAppearanceChanged();
     }
 
     void setMonthTextAppearance(int resId) {
         mMonthTextAppearance = resId;
+        onAppearanceChanged();
     }
 
     void setDayOfWeekTextAppearance(int resId) {
         mDayOfWeekTextAppearance = resId;
+        onAppearanceChanged();
     }
 
     int getDayOfWeekTextAppearance() {
@@ -224,6 +309,7 @@ class DayPickerPagerAdapter extends PagerAdapter {
 
     void setDayTextAppearance(int resId) {
         mDayTextAppearance = resId;
+        onAppearanceChanged();
     }
 
     int getDayTextAppearance() {
@@ -290,26 +376,28 @@ class DayPickerPagerAdapter extends PagerAdapter {
 
     @Override
     public Object instantiateItem(ViewGroup container, int position) {
-        final View itemView = mInflater.inflate(mLayoutResId, container, false);
-
-        final SimpleMonthView v = (SimpleMonthView) itemView.findViewById(mCalendarViewId);
-        v.setOnDayClickListener(mOnDayClickListener);
-        v.setMonthTextAppearance(mMonthTextAppearance);
-        v.setDayOfWeekTextAppearance(mDayOfWeekTextAppearance);
-        v.setDayTextAppearance(mDayTextAppearance);
+        final View itemView;
+        final SimpleMonthView v;
 
-        if (mDaySelectorColor != null) {
-            v.setDaySelectorColor(mDaySelectorColor);
-        }
+        final ViewHolder recycled = mRecycledPages.poll();
+        if (recycled != null) {
+            mRecycleHits++;
+            itemView = recycled.container;
+            v = recycled.calendar;
 
-        if (mDayHighlightColor != null) {
-            v.setDayHighlightColor(mDayHighlightColor);
+            // Its display list shows the month it was last bound to
+            v.invalidate();
+        } else {
+            mRecycleMisses++;
+            itemView = mInflater.inflate(mLayoutResId, container, false);
+            v = (SimpleMonthView) itemView.findViewById(mCalendarViewId);
+            setUpMonthView(v);
         }
 
-        if (mCalendarTextColor != null) {
-            v.setMonthTextColor(mCalendarTextColor);
-            v.setDayOfWeekTextColor(mCalendarTextColor);
-            v.setDayTextColor(mCalendarTextColor);
+        if (Config.DEBUG) {
+            Log.i(TAG, "instantiateItem(" + position + "): recycled=" + (recycled != null)
+                    + ", pool size=" + mRecycledPages.size()
+                    + ", hit rate=" + getRecycleHitRate());
         }
 
         final int month = getMonthForPosition(position);
@@ -338,6 +426,8 @@ class DayPickerPagerAdapter extends PagerAdapter {
         v.setMonthParams(month, year, mFirstDayOfWeek,
                 enabledDayRangeStart, enabledDayRangeEnd, selectedDay[0], selectedDay[1],
                 mSelectedDay != null ? mSelectedDay.getType() : null);
+        v.setOccurrenceMask(getOccurrenceMask(month, year));
+        v.setRenderCache(mRenderCache);
 
         final ViewHolder holder = new ViewHolder(position, itemView, v);
         mItems.put(position, holder);
@@ -353,6 +443,35 @@ class DayPickerPagerAdapter extends PagerAdapter {
         container.removeView(holder.container);
 
         mItems.remove(position);
+
+        if (mRecycledPages.size() < MAX_RECYCLED_PAGES) {
+            mRecycledPages.add(holder);
+        }
+    }
+
+    /**
+     * Applies the appearance to a newly inflated month view. Recycled
+     * views keep theirs.
+     */
+    private void setUpMonthView(SimpleMonthView v) {
+        v.setOnDayClickListener(mOnDayClickListener);
+        v.setMonthTextAppearance(mMonthTextAppearance);
+        v.setDayOfWeekTextAppearance(mDayOfWeekTextAppearance);
+        v.setDayTextAppearance(mDayTextAppearance);
+
+        if (mDaySelectorColor != null) {
+            v.setDaySelectorColor(mDaySelectorColor);
+        }
+
+        if (mDayHighlightColor != null) {
+            v.setDayHighlightColor(mDayHighlightColor);
+        }
+
+        if (mCalendarTextColor != null) {
+            v.setMonthTextColor(mCalendarTextColor);
+            v.setDayOfWeekTextColor(mCalendarTextColor);
+            v.setDayTextColor(mCalendarTextColor);
+        }
     }
 
     @Override
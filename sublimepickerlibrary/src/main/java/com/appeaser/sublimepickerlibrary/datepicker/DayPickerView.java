@@ -31,6 +31,7 @@ import android.view.accessibility.AccessibilityManager;
 import android.widget.ImageButton;
 
 import com.appeaser.sublimepickerlibrary.R;
+import com.appeaser.sublimepickerlibrary.recurrencepicker.RecurrenceMonthMask;
 import com.appeaser.sublimepickerlibrary.utilities.Config;
 import com.appeaser.sublimepickerlibrary.utilities.SUtils;
 
@@ -387,6 +388,23 @@ class DayPickerView extends ViewGroup {
         return mAdapter.getFirstDayOfWeek();
     }
 
+    /**
+     * Marks the occurrences of a recurrence on the calendar.
+     *
+     * @param occurrences the occurrences, or null to mark none
+     */
+    public void setOccurrences(@Nullable RecurrenceMonthMask occurrences) {
+        mAdapter.setOccurrences(occurrences);
+    }
+
+    /**
+     * Enables drawing months from a cache of bitmaps - see
+     * {@link DayPickerPagerAdapter#setRenderCacheEnabled(boolean)}.
+     */
+    public void setMonthRenderCacheEnabled(boolean enabled) {
+        mAdapter.setRenderCacheEnabled(enabled);
+    }
+
     public void setMinDate(long timeInMillis) {
         mMinDate.setTimeInMillis(timeInMillis);
         onRangeChanged();
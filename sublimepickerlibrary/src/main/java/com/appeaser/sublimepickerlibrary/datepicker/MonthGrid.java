@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.datepicker;
+
+import android.util.LruCache;
+
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
+
+import java.util.Calendar;
+
+/**
+ * Where the days of a month fall in a 7-column grid, for a given first day
+ * of the week. Cell 0 is the top-left (top-right in RTL) cell.
+ * <p/>
+ * Immutable, & shared: {@link #get(int, int, int)} hands out one instance
+ * per (year, month, weekStart) to all month views. Safe to use from any
+ * thread.
+ */
+final class MonthGrid {
+
+    static final int DAYS_IN_WEEK = 7;
+    static final int MAX_WEEKS_IN_MONTH = 6;
+    static final int CELL_COUNT = DAYS_IN_WEEK * MAX_WEEKS_IN_MONTH;
+
+    // A couple of years either side of the visible month, for each weekStart
+    // in use
+    private static final int CACHE_SIZE = 64;
+
+    private static final LruCache<Integer, MonthGrid> sCache
+            = new LruCache<>(CACHE_SIZE);
+
+    private final int mYear;
+    private final int mMonth;
+    private final int mWeekStart;
+    private final int mDaysInMonth;
+    private final int mFirstEpochDay;
+    private final int mRowCount;
+
+    // Day of month in each cell, or 0 for none
+    private final int[] mCellToDay = new int[CELL_COUNT];
+
+    // Cell of each day of month. Index 0 is unused.
+    private final int[] mDayToCell;
+
+    private MonthGrid(int year, int month, int weekStart) {
+        mYear = year;
+        mMonth = month;
+        mWeekStart = weekStart;
+        mDaysInMonth = EpochDayUtils.getDaysInMonth(year, month);
+        mFirstEpochDay = EpochDayUtils.toEpochDay(year, month, 1);
+
+        // Calendar's days of the week are 1-based, EpochDayUtils' 0-based
+        final int offset = EpochDayUtils.floorMod(
+                EpochDayUtils.getWeekDay(mFirstEpochDay) + 1 - weekStart, DAYS_IN_WEEK);
+
+        mDayToCell = new int[mDaysInMonth + 1];
+        for (int day = 1; day <= mDaysInMonth; day++) {
+            final int cell = offset + day - 1;
+            mCellToDay[cell] = day;
+            mDayToCell[day] = cell;
+        }
+        mRowCount = (offset + mDaysInMonth + DAYS_IN_WEEK - 1) / DAYS_IN_WEEK;
+    }
+
+    /**
+     * @param month     0-11
+     * @param weekStart the first day of the week, {@link Calendar#SUNDAY}
+     *                  through {@link Calendar#SATURDAY}
+     */
+    static MonthGrid get(int year, int month, int weekStart) {
+        if (month < Calendar.JANUARY || month > Calendar.DECEMBER) {
+            throw new IllegalArgumentException("Invalid month: " + month);
+        }
+        if (weekStart < Calendar.SUNDAY || weekStart > Calendar.SATURDAY) {
+            throw new IllegalArgumentException("Invalid weekStart: " + weekStart);
+        }
+
+        final Integer key = EpochDayUtils.toEpochMonth(year, month) * 8 + weekStart;
+        MonthGrid grid = sCache.get(key);
+        if (grid == null) {
+            // Two threads may both build it; either result will do
+            grid = new MonthGrid(year, month, weekStart);
+            sCache.put(key, grid);
+        }
+        return grid;
+    }
+
+    int getYear() {
+        return mYear;
+    }
+
+    int getMonth() {
+        return mMonth;
+    }
+
+    int getWeekStart() {
+        return mWeekStart;
+    }
+
+    int getDaysInMonth() {
+        return mDaysInMonth;
+    }
+
+    /**
+     * @return the number of rows holding days, 4-6
+     */
+    int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * @return the cell of the 1st of the month, i.e. the number of empty
+     * cells before it
+     */
+    int getOffset() {
+        return mDayToCell[1];
+    }
+
+    /**
+     * @param cell 0 to {@link #CELL_COUNT} - 1
+     * @return the day of month in 'cell', or -1 if it is empty
+     */
+    int getDayAt(int cell) {
+        if (cell < 0 || cell >= CELL_COUNT) {
+            return -1;
+        }
+        final int day = mCellToDay[cell];
+        return day != 0 ? day : -1;
+    }
+
+    /**
+     * @param day 1 to {@link #getDaysInMonth()}
+     * @return the cell 'day' is in
+     */
+    int getCell(int day) {
+        return mDayToCell[day];
+    }
+
+    /**
+     * @return the day of month of 'epochDay' (see {@link EpochDayUtils}),
+     * or -1 if it is in another month
+     */
+    int getDayOfMonth(int epochDay) {
+        final int day = epochDay - mFirstEpochDay + 1;
+        return day >= 1 && day <= mDaysInMonth ? day : -1;
+    }
+}
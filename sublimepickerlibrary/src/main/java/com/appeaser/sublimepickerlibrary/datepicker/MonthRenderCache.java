@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.datepicker;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.util.LruCache;
+
+import java.util.Arrays;
+
+/**
+ * Months rendered to bitmaps, so that a month paged back into view is
+ * drawn with a single drawBitmap() instead of its title, weekday header &
+ * every day cell.
+ * <p/>
+ * Entries are per month. Each remembers the state it was rendered with
+ * (selection, enabled range, occurrences, today, size, layout direction,
+ * first day of week - see {@link SimpleMonthView#getRenderState(int[])});
+ * a month is re-rendered only when that state changes. Appearance (colors,
+ * text appearances) is not part of the state: call {@link #evictAll()}
+ * when it changes.
+ * <p/>
+ * Bounded by bytes. Must be used from the main thread.
+ */
+class MonthRenderCache {
+
+    private final LruCache<Integer, Entry> mEntries;
+
+    // Scratch for the state of the month being drawn
+    private final int[] mState = new int[SimpleMonthView.RENDER_STATE_SIZE];
+
+    private final Canvas mCanvas = new Canvas();
+
+    /**
+     * @param maxBytes the most bitmap memory to hold
+     */
+    MonthRenderCache(int maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be > 0: " + maxBytes);
+        }
+
+        mEntries = new LruCache<Integer, Entry>(maxBytes) {
+            @Override
+            protected int sizeOf(Integer key, Entry value) {
+                return value.bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * @return a cache holding up to 1/16 of the heap
+     */
+    static MonthRenderCache createDefault() {
+        return new MonthRenderCache((int) Math.min(Integer.MAX_VALUE,
+                Runtime.getRuntime().maxMemory() / 16));
+    }
+
+    /**
+     * Returns 'view' as currently rendered, rendering it if its month isn't
+     * cached or was cached with a different state.
+     *
+     * @return the rendering, covering the whole view, or null if 'view'
+     * has not been laid out or doesn't fit in the cache
+     */
+    Bitmap get(SimpleMonthView view) {
+        final int width = view.getWidth();
+        final int height = view.getHeight();
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        final int[] state = mState;
+        view.getRenderState(state);
+        // Boxed by the view, as most year * 12 + month values are outside
+        // the Integer cache
+        final Integer key = view.getRenderKey();
+
+        Entry entry = mEntries.get(key);
+        if (entry != null && Arrays.equals(entry.state, state)) {
+            return entry.bitmap;
+        }
+
+        if (entry == null || entry.bitmap.getWidth() != width
+                || entry.bitmap.getHeight() != height) {
+            if ((long) width * height * 4 > mEntries.maxSize()) {
+                return null;
+            }
+
+            // Evicted bitmaps aren't reused: a page still showing may be
+            // drawing one
+            entry = new Entry(Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888));
+        }
+
+        // Render into the entry, & (re)insert it so its size is accounted
+        entry.bitmap.eraseColor(0);
+        mCanvas.setBitmap(entry.bitmap);
+        view.drawContents(mCanvas);
+        mCanvas.setBitmap(null);
+        System.arraycopy(state, 0, entry.state, 0, state.length);
+        mEntries.put(key, entry);
+
+        return entry.bitmap;
+    }
+
+    /**
+     * Drops every rendering, e.g. after a change of colors.
+     */
+    void evictAll() {
+        mEntries.evictAll();
+    }
+
+    private static class Entry {
+        final Bitmap bitmap;
+        final int[] state = new int[SimpleMonthView.RENDER_STATE_SIZE];
+
+        Entry(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+    }
+}
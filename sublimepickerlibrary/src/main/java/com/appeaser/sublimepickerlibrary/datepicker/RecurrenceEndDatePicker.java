@@ -21,6 +21,7 @@ import android.widget.FrameLayout;
 
 import com.appeaser.sublimepickerlibrary.R;
 import com.appeaser.sublimepickerlibrary.common.DecisionButtonLayout;
+import com.appeaser.sublimepickerlibrary.recurrencepicker.RecurrenceMonthMask;
 import com.appeaser.sublimepickerlibrary.utilities.AccessibilityUtils;
 import com.appeaser.sublimepickerlibrary.utilities.Config;
 import com.appeaser.sublimepickerlibrary.utilities.SUtils;
@@ -391,6 +392,16 @@ public class RecurrenceEndDatePicker extends FrameLayout {
         return mFirstDayOfWeek;
     }
 
+    /**
+     * Marks the occurrences of the recurrence being edited, so the user can
+     * see which instance an end date cuts off at.
+     *
+     * @param occurrences the occurrences, or null to mark none
+     */
+    public void setOccurrences(@Nullable RecurrenceMonthMask occurrences) {
+        mDayPickerView.setOccurrences(occurrences);
+    }
+
     @Override
     public void setEnabled(boolean enabled) {
         if (isEnabled() == enabled) {
@@ -21,6 +21,7 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
@@ -42,15 +43,13 @@ import android.view.accessibility.AccessibilityEvent;
 import android.widget.TextView;
 
 import com.appeaser.sublimepickerlibrary.R;
-import com.appeaser.sublimepickerlibrary.common.DateTimePatternHelper;
 import com.appeaser.sublimepickerlibrary.utilities.Config;
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
 import com.appeaser.sublimepickerlibrary.utilities.SUtils;
 
-import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.List;
-import java.util.Locale;
+import java.util.TimeZone;
 
 /**
  * A calendar-like view displaying a specified month and the appropriate selectable day numbers
@@ -59,14 +58,27 @@ import java.util.Locale;
 class SimpleMonthView extends View {
     private static final String TAG = SimpleMonthView.class.getSimpleName();
 
-    private static final int DAYS_IN_WEEK = 7;
-    private static final int MAX_WEEKS_IN_MONTH = 6;
+    private static final int DAYS_IN_WEEK = MonthGrid.DAYS_IN_WEEK;
+    private static final int MAX_WEEKS_IN_MONTH = MonthGrid.MAX_WEEKS_IN_MONTH;
 
     private static final int DEFAULT_SELECTED_DAY = -1;
     private static final int DEFAULT_WEEK_START = Calendar.SUNDAY;
 
-    private static final String DEFAULT_TITLE_FORMAT = "MMMMy";
-    private static final String DAY_OF_WEEK_FORMAT;
+    // Indices into the state filled in by getRenderState()
+    private static final int RENDER_STATE_YEAR = 0;
+    private static final int RENDER_STATE_MONTH = 1;
+    private static final int RENDER_STATE_WEEK_START = 2;
+    private static final int RENDER_STATE_ENABLED_START = 3;
+    private static final int RENDER_STATE_ENABLED_END = 4;
+    private static final int RENDER_STATE_ACTIVATED_START = 5;
+    private static final int RENDER_STATE_ACTIVATED_END = 6;
+    private static final int RENDER_STATE_ACTIVATED_TYPE = 7;
+    private static final int RENDER_STATE_TODAY = 8;
+    private static final int RENDER_STATE_OCCURRENCES = 9;
+    private static final int RENDER_STATE_WIDTH = 10;
+    private static final int RENDER_STATE_HEIGHT = 11;
+    private static final int RENDER_STATE_RTL = 12;
+    static final int RENDER_STATE_SIZE = 13;
 
     @SuppressWarnings("FieldCanBeLocal")
     private final int DRAW_RECT = 0;
@@ -75,16 +87,6 @@ class SimpleMonthView extends View {
     @SuppressWarnings("FieldCanBeLocal")
     private final int DRAW_RECT_WITH_CURVE_ON_RIGHT = 2;
 
-    static {
-        // Deals with the change in usage of `EEEEE` pattern.
-        // See method `SimpleDateFormat#appendDayOfWeek(...)` for more details.
-        if (SUtils.isApi_18_OrHigher()) {
-            DAY_OF_WEEK_FORMAT = "EEEEE";
-        } else {
-            DAY_OF_WEEK_FORMAT = "E";
-        }
-    }
-
     private final TextPaint mMonthPaint = new TextPaint();
     private final TextPaint mDayOfWeekPaint = new TextPaint();
     private final TextPaint mDayPaint = new TextPaint();
@@ -93,13 +95,17 @@ class SimpleMonthView extends View {
     private final Paint mDayRangeSelectorPaint = new Paint();
 
     private final Calendar mCalendar = Calendar.getInstance();
-    private final Calendar mDayOfWeekLabelCalendar = Calendar.getInstance();
+
+    // Reused by drawDays() for range backgrounds
+    private final RectF mRangeRect = new RectF();
 
     private MonthViewTouchHelper mTouchHelper;
 
-    private SimpleDateFormat mTitleFormatter;
-    private SimpleDateFormat mDayOfWeekFormatter;
-    private NumberFormat mDayFormatter;
+    // Day numbers, weekday labels & titles, shared by all month views
+    private CalendarLabels mLabels;
+
+    // Layout direction, resolved on layout
+    private boolean mIsRtl;
 
     // Desired dimensions.
     private int mDesiredMonthHeight;
@@ -147,10 +153,10 @@ class SimpleMonthView extends View {
     private int mDaysInMonth;
 
     /**
-     * The day of week (ex. Calendar.SUNDAY) for the first day of the current
-     * month.
+     * Where the days of the current month fall, shared with other views
+     * showing the month.
      */
-    private int mDayOfWeekStart;
+    private MonthGrid mGrid;
 
     /**
      * The day of month for the first (inclusive) enabled day.
@@ -162,6 +168,11 @@ class SimpleMonthView extends View {
      */
     private int mEnabledDayEnd = 31;
 
+    /**
+     * Days of the month that a recurrence rule lands on. Bit 0 is the 1st.
+     */
+    private int mOccurrenceMask;
+
     /**
      * Optional listener for handling day click actions.
      */
@@ -177,6 +188,12 @@ class SimpleMonthView extends View {
 
     private float mPaddingRangeIndicator;
 
+    // Renders of months, or null to always draw directly
+    private MonthRenderCache mRenderCache;
+
+    // This month's key in mRenderCache, boxed once per setMonthParams()
+    private Integer mRenderKey = 0;
+
     public SimpleMonthView(Context context) {
         this(context, null);
     }
@@ -220,20 +237,8 @@ class SimpleMonthView extends View {
         ViewCompat.setImportantForAccessibility(this,
                 ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_YES);
 
-        final Locale locale = res.getConfiguration().locale;
-
-        String titleFormat;
-
-        if (SUtils.isApi_18_OrHigher()) {
-            titleFormat = DateFormat.getBestDateTimePattern(locale, DEFAULT_TITLE_FORMAT);
-        } else {
-            titleFormat = DateTimePatternHelper.getBestDateTimePattern(locale,
-                    DateTimePatternHelper.PATTERN_MMMMy);
-        }
-
-        mTitleFormatter = new SimpleDateFormat(titleFormat, locale);
-        mDayOfWeekFormatter = new SimpleDateFormat(DAY_OF_WEEK_FORMAT, locale);
-        mDayFormatter = NumberFormat.getIntegerInstance(locale);
+        mLabels = CalendarLabels.get(res.getConfiguration().locale);
+        mGrid = MonthGrid.get(mYear, mMonth, mWeekStart);
 
         initPaints(res);
     }
@@ -299,7 +304,7 @@ class SimpleMonthView extends View {
 
     public CharSequence getTitle() {
         if (mTitle == null) {
-            mTitle = mTitleFormatter.format(mCalendar.getTime());
+            mTitle = mLabels.getMonthTitle(mYear, mMonth);
         }
         return mTitle;
     }
@@ -467,6 +472,22 @@ class SimpleMonthView extends View {
             Log.i(TAG, "onDraw(Canvas)");
         }
 
+        // A pressed day is short-lived, & not worth a render
+        if (mRenderCache != null && mTouchedItem < 0) {
+            final Bitmap rendered = mRenderCache.get(this);
+            if (rendered != null) {
+                canvas.drawBitmap(rendered, 0, 0, null);
+                return;
+            }
+        }
+
+        drawContents(canvas);
+    }
+
+    /**
+     * Draws the title, weekday header & days.
+     */
+    void drawContents(Canvas canvas) {
         final int paddingLeft = getPaddingLeft();
         final int paddingTop = getPaddingTop();
         canvas.translate(paddingLeft, paddingTop);
@@ -478,6 +499,46 @@ class SimpleMonthView extends View {
         canvas.translate(-paddingLeft, -paddingTop);
     }
 
+    /**
+     * Sets the cache to draw from, or null to always draw directly.
+     */
+    void setRenderCache(MonthRenderCache renderCache) {
+        if (mRenderCache != renderCache) {
+            mRenderCache = renderCache;
+            invalidate();
+        }
+    }
+
+    /**
+     * @return the key of this month in a {@link MonthRenderCache}
+     */
+    Integer getRenderKey() {
+        return mRenderKey;
+    }
+
+    /**
+     * Fills 'outState' with everything that drawContents() depends on,
+     * other than appearance.
+     *
+     * @param outState an array of {@link #RENDER_STATE_SIZE}
+     */
+    void getRenderState(int[] outState) {
+        outState[RENDER_STATE_YEAR] = mYear;
+        outState[RENDER_STATE_MONTH] = mMonth;
+        outState[RENDER_STATE_WEEK_START] = mWeekStart;
+        outState[RENDER_STATE_ENABLED_START] = mEnabledDayStart;
+        outState[RENDER_STATE_ENABLED_END] = mEnabledDayEnd;
+        outState[RENDER_STATE_ACTIVATED_START] = mActivatedDays.startingDay;
+        outState[RENDER_STATE_ACTIVATED_END] = mActivatedDays.endingDay;
+        outState[RENDER_STATE_ACTIVATED_TYPE] = mActivatedDays.selectedDateType != null ?
+                mActivatedDays.selectedDateType.ordinal() : -1;
+        outState[RENDER_STATE_TODAY] = mToday;
+        outState[RENDER_STATE_OCCURRENCES] = mOccurrenceMask;
+        outState[RENDER_STATE_WIDTH] = getWidth();
+        outState[RENDER_STATE_HEIGHT] = getHeight();
+        outState[RENDER_STATE_RTL] = mIsRtl ? 1 : 0;
+    }
+
     private void drawMonth(Canvas canvas) {
         final float x = mPaddedWidth / 2f;
 
@@ -501,7 +562,7 @@ class SimpleMonthView extends View {
         for (int col = 0; col < DAYS_IN_WEEK; col++) {
             final int colCenter = colWidth * col + colWidth / 2;
             final int colCenterRtl;
-            if (SUtils.isLayoutRtlCompat(this)) {
+            if (mIsRtl) {
                 colCenterRtl = mPaddedWidth - colCenter;
             } else {
                 colCenterRtl = colCenter;
@@ -514,33 +575,36 @@ class SimpleMonthView extends View {
     }
 
     private String getDayOfWeekLabel(int dayOfWeek) {
-        mDayOfWeekLabelCalendar.set(Calendar.DAY_OF_WEEK, dayOfWeek);
-        return mDayOfWeekFormatter.format(mDayOfWeekLabelCalendar.getTime());
+        // (col + mWeekStart) % DAYS_IN_WEEK yields 0 for Saturday
+        return mLabels.getNarrowDayOfWeekLabel(dayOfWeek == 0 ? Calendar.SATURDAY : dayOfWeek);
     }
 
     /**
-     * Draws the month days.
+     * Draws the month days. Allocation-free: it runs for every frame of a
+     * range drag or pager swipe.
      */
-    @SuppressWarnings("ConstantConditions")
     private void drawDays(Canvas canvas) {
         final TextPaint p = mDayPaint;
         final int headerHeight = mMonthHeight + mDayOfWeekHeight;
-        //final int rowHeight = mDayHeight;
         final float rowHeight = mDayHeight;
-        //final int colWidth = mCellWidth;
         final float colWidth = mCellWidth;
+        final boolean isRtl = mIsRtl;
 
         // Text is vertically centered within the row height.
         final float halfLineHeight = (p.ascent() + p.descent()) / 2f;
-        //int rowCenter = headerHeight + rowHeight / 2;
         float rowCenter = headerHeight + rowHeight / 2f;
 
-        for (int day = 1, col = findDayOffset(); day <= mDaysInMonth; day++) {
-            //final int colCenter = colWidth * col + colWidth / 2;
+        // Range backgrounds are inset vertically by mPaddingRangeIndicator
+        final float halfRangeHeight = rowHeight / 2f - mPaddingRangeIndicator;
+
+        // Use height to constrain the protrusion of the arc
+        final boolean constrainProtrusion = colWidth > (rowHeight - (2 * mPaddingRangeIndicator));
+        final float horDistFromCenter = constrainProtrusion ? halfRangeHeight : colWidth / 2f;
+
+        for (int day = 1, col = mGrid.getOffset(); day <= mDaysInMonth; day++) {
             final float colCenter = colWidth * col + colWidth / 2f;
-            //final int colCenterRtl;
             final float colCenterRtl;
-            if (SUtils.isLayoutRtlCompat(this)) {
+            if (isRtl) {
                 colCenterRtl = mPaddedWidth - colCenter;
             } else {
                 colCenterRtl = colCenter;
@@ -577,65 +641,8 @@ class SimpleMonthView extends View {
                     bgShape = DRAW_RECT_WITH_CURVE_ON_RIGHT;
                 }
 
-                // Use height to constrain the protrusion of the arc
-                boolean constrainProtrusion = colWidth > (rowHeight - (2 * mPaddingRangeIndicator));
-                float horDistFromCenter = constrainProtrusion ?
-                        rowHeight / 2f - mPaddingRangeIndicator
-                        : colWidth / 2f;
-
-                switch (bgShape) {
-                    case DRAW_RECT_WITH_CURVE_ON_LEFT:
-                        int leftRectArcLeft = (int)(colCenterRtl - horDistFromCenter) % 2 == 1 ?
-                                (int)(colCenterRtl - horDistFromCenter) + 1
-                                : (int)(colCenterRtl - horDistFromCenter);
-
-                        int leftRectArcRight = (int)(colCenterRtl + horDistFromCenter) % 2 == 1 ?
-                                (int)(colCenterRtl + horDistFromCenter) + 1
-                                : (int)(colCenterRtl + horDistFromCenter);
-
-                        RectF leftArcRect = new RectF(leftRectArcLeft,
-                                rowCenter - rowHeight / 2f + mPaddingRangeIndicator,
-                                leftRectArcRight,
-                                rowCenter + rowHeight / 2f - mPaddingRangeIndicator);
-
-                        canvas.drawArc(leftArcRect, 90, 180, true, mDayRangeSelectorPaint);
-
-                        canvas.drawRect(new RectF(leftArcRect.centerX(),
-                                        rowCenter - rowHeight / 2f + mPaddingRangeIndicator,
-                                        colCenterRtl + colWidth / 2f,
-                                        rowCenter + rowHeight / 2f - mPaddingRangeIndicator),
-                                mDayRangeSelectorPaint);
-                        break;
-                    case DRAW_RECT_WITH_CURVE_ON_RIGHT:
-                        int rightRectArcLeft = (int)(colCenterRtl - horDistFromCenter) % 2 == 1 ?
-                                (int)(colCenterRtl - horDistFromCenter) + 1
-                                : (int)(colCenterRtl - horDistFromCenter);
-
-                        int rightRectArcRight = (int)(colCenterRtl + horDistFromCenter) % 2 == 1 ?
-                                (int)(colCenterRtl + horDistFromCenter) + 1
-                                : (int)(colCenterRtl + horDistFromCenter);
-
-                        RectF rightArcRect = new RectF(rightRectArcLeft,
-                                rowCenter - rowHeight / 2f + mPaddingRangeIndicator,
-                                rightRectArcRight,
-                                rowCenter + rowHeight / 2f - mPaddingRangeIndicator);
-
-                        canvas.drawArc(rightArcRect, 270, 180, true, mDayRangeSelectorPaint);
-
-                        canvas.drawRect(new RectF(colCenterRtl - colWidth / 2f,
-                                        rowCenter - rowHeight / 2f + mPaddingRangeIndicator,
-                                        rightArcRect.centerX(),
-                                        rowCenter + rowHeight / 2f - mPaddingRangeIndicator),
-                                mDayRangeSelectorPaint);
-                        break;
-                    default:
-                        canvas.drawRect(new RectF(colCenterRtl - colWidth / 2f,
-                                        rowCenter - rowHeight / 2f + mPaddingRangeIndicator,
-                                        colCenterRtl + colWidth / 2f,
-                                        rowCenter + rowHeight / 2f - mPaddingRangeIndicator),
-                                mDayRangeSelectorPaint);
-                        break;
-                }
+                drawRangeBackground(canvas, bgShape, colCenterRtl, rowCenter,
+                        colWidth / 2f, halfRangeHeight, horDistFromCenter);
             }
 
             if (mTouchedItem == day) {
@@ -658,7 +665,13 @@ class SimpleMonthView extends View {
             }
             p.setColor(dayTextColor);
 
-            canvas.drawText(mDayFormatter.format(day), colCenterRtl, rowCenter - halfLineHeight, p);
+            canvas.drawText(mLabels.getDayLabel(day), colCenterRtl, rowCenter - halfLineHeight, p);
+
+            if ((mOccurrenceMask & (1 << (day - 1))) != 0) {
+                // Mark the occurrence with a dot under the day, in the text color
+                canvas.drawCircle(colCenterRtl, rowCenter + mDaySelectorRadius * 0.65f,
+                        mDaySelectorRadius / 10f, p);
+            }
 
             col++;
 
@@ -669,6 +682,43 @@ class SimpleMonthView extends View {
         }
     }
 
+    /**
+     * Draws the background of a day in the activated range: a rect, or a
+     * rect ending in a half-circle on the left or right.
+     */
+    private void drawRangeBackground(Canvas canvas, int bgShape, float colCenter,
+                                     float rowCenter, float halfColWidth,
+                                     float halfRangeHeight, float horDistFromCenter) {
+        final RectF rect = mRangeRect;
+        final float top = rowCenter - halfRangeHeight;
+        final float bottom = rowCenter + halfRangeHeight;
+
+        if (bgShape == DRAW_RECT) {
+            rect.set(colCenter - halfColWidth, top, colCenter + halfColWidth, bottom);
+            canvas.drawRect(rect, mDayRangeSelectorPaint);
+            return;
+        }
+
+        // Arc bounds are snapped to even pixels
+        final int arcLeft = (int) (colCenter - horDistFromCenter) % 2 == 1 ?
+                (int) (colCenter - horDistFromCenter) + 1
+                : (int) (colCenter - horDistFromCenter);
+        final int arcRight = (int) (colCenter + horDistFromCenter) % 2 == 1 ?
+                (int) (colCenter + horDistFromCenter) + 1
+                : (int) (colCenter + horDistFromCenter);
+        final float arcCenterX = (arcLeft + arcRight) / 2f;
+
+        rect.set(arcLeft, top, arcRight, bottom);
+        if (bgShape == DRAW_RECT_WITH_CURVE_ON_LEFT) {
+            canvas.drawArc(rect, 90, 180, true, mDayRangeSelectorPaint);
+            rect.set(arcCenterX, top, colCenter + halfColWidth, bottom);
+        } else {
+            canvas.drawArc(rect, 270, 180, true, mDayRangeSelectorPaint);
+            rect.set(colCenter - halfColWidth, top, arcCenterX, bottom);
+        }
+        canvas.drawRect(rect, mDayRangeSelectorPaint);
+    }
+
     private boolean isDayEnabled(int day) {
         return day >= mEnabledDayStart && day <= mEnabledDayEnd;
     }
@@ -685,8 +735,21 @@ class SimpleMonthView extends View {
         return month >= Calendar.JANUARY && month <= Calendar.DECEMBER;
     }
 
+    /**
+     * Marks the days a recurrence rule lands on.
+     *
+     * @param occurrenceMask bit (day - 1) set for each day of this month with
+     *                       an occurrence, or 0 for none
+     */
+    public void setOccurrenceMask(int occurrenceMask) {
+        if (mOccurrenceMask != occurrenceMask) {
+            mOccurrenceMask = occurrenceMask;
+            invalidate();
+        }
+    }
+
     public void selectAllDays() {
-        setSelectedDays(1, SUtils.getDaysInMonth(mMonth, mYear), SelectedDate.Type.RANGE);
+        setSelectedDays(1, mDaysInMonth, SelectedDate.Type.RANGE);
     }
 
     public void setSelectedDays(int selectedDayStart, int selectedDayEnd, SelectedDate.Type selectedDateType) {
@@ -711,6 +774,7 @@ class SimpleMonthView extends View {
         } else {
             mWeekStart = mCalendar.getFirstDayOfWeek();
         }
+        mGrid = MonthGrid.get(mYear, mMonth, mWeekStart);
 
         // Invalidate cached accessibility information.
         mTouchHelper.invalidateRoot();
@@ -742,11 +806,7 @@ class SimpleMonthView extends View {
             mMonth = month;
         }
         mYear = year;
-
-        mCalendar.set(Calendar.MONTH, mMonth);
-        mCalendar.set(Calendar.YEAR, mYear);
-        mCalendar.set(Calendar.DAY_OF_MONTH, 1);
-        mDayOfWeekStart = mCalendar.get(Calendar.DAY_OF_WEEK);
+        mRenderKey = mYear * 12 + mMonth;
 
         if (isValidDayOfWeek(weekStart)) {
             mWeekStart = weekStart;
@@ -754,16 +814,12 @@ class SimpleMonthView extends View {
             mWeekStart = mCalendar.getFirstDayOfWeek();
         }
 
+        mGrid = MonthGrid.get(mYear, mMonth, mWeekStart);
+        mDaysInMonth = mGrid.getDaysInMonth();
+
         // Figure out what day today is.
-        final Calendar today = Calendar.getInstance();
-        mToday = -1;
-        mDaysInMonth = SUtils.getDaysInMonth(mMonth, mYear);
-        for (int i = 0; i < mDaysInMonth; i++) {
-            final int day = i + 1;
-            if (sameDay(day, today)) {
-                mToday = day;
-            }
-        }
+        mToday = mGrid.getDayOfMonth(EpochDayUtils.fromMillis(
+                System.currentTimeMillis(), TimeZone.getDefault()));
 
         mEnabledDayStart = SUtils.constrain(enabledDayStart, 1, mDaysInMonth);
         mEnabledDayEnd = SUtils.constrain(enabledDayEnd, mEnabledDayStart, mDaysInMonth);
@@ -779,11 +835,6 @@ class SimpleMonthView extends View {
         mTouchHelper.invalidateRoot();
     }
 
-    private boolean sameDay(int day, Calendar today) {
-        return mYear == today.get(Calendar.YEAR) && mMonth == today.get(Calendar.MONTH)
-                && day == today.get(Calendar.DAY_OF_MONTH);
-    }
-
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR1)
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
@@ -803,11 +854,14 @@ class SimpleMonthView extends View {
     public void onRtlPropertiesChanged(/*@ResolvedLayoutDir*/ int layoutDirection) {
         super.onRtlPropertiesChanged(layoutDirection);
 
+        mIsRtl = SUtils.isLayoutRtlCompat(this);
         requestLayout();
     }
 
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        mIsRtl = SUtils.isLayoutRtlCompat(this);
+
         if (!changed) {
             return;
         }
@@ -852,14 +906,6 @@ class SimpleMonthView extends View {
         mTouchHelper.invalidateRoot();
     }
 
-    private int findDayOffset() {
-        final int offset = mDayOfWeekStart - mWeekStart;
-        if (mDayOfWeekStart < mWeekStart) {
-            return offset + DAYS_IN_WEEK;
-        }
-        return offset;
-    }
-
     /**
      * Calculates the day of the month at the specified touch position. Returns
      * the day of the month or -1 if the position wasn't in a valid day.
@@ -884,7 +930,7 @@ class SimpleMonthView extends View {
 
         // Adjust for RTL after applying padding.
         final int paddedXRtl;
-        if (SUtils.isLayoutRtlCompat(this)) {
+        if (mIsRtl) {
             paddedXRtl = mPaddedWidth - paddedX;
         } else {
             paddedXRtl = paddedX;
@@ -892,13 +938,7 @@ class SimpleMonthView extends View {
 
         final int row = (paddedY - headerHeight) / mDayHeight;
         final int col = (paddedXRtl * DAYS_IN_WEEK) / mPaddedWidth;
-        final int index = col + row * DAYS_IN_WEEK;
-        final int day = index + 1 - findDayOffset();
-        if (!isValidDayOfMonth(day)) {
-            return -1;
-        }
-
-        return day;
+        return mGrid.getDayAt(col + row * DAYS_IN_WEEK);
     }
 
     /**
@@ -912,13 +952,13 @@ class SimpleMonthView extends View {
             return false;
         }
 
-        final int index = id - 1 + findDayOffset();
+        final int index = mGrid.getCell(id);
 
         // Compute left edge, taking into account RTL.
         final int col = index % DAYS_IN_WEEK;
         final int colWidth = mCellWidth;
         final int left;
-        if (SUtils.isLayoutRtlCompat(this)) {
+        if (mIsRtl) {
             left = getWidth() - getPaddingRight() - (col + 1) * colWidth;
         } else {
             left = getPaddingLeft() + col * colWidth;
@@ -1053,7 +1093,7 @@ class SimpleMonthView extends View {
          */
         private CharSequence getDayText(int id) {
             if (isValidDayOfMonth(id)) {
-                return mDayFormatter.format(id);
+                return mLabels.getDayLabel(id);
             }
 
             return null;
@@ -709,6 +709,14 @@ public class SublimeDatePicker extends FrameLayout {
         return mFirstDayOfWeek;
     }
 
+    /**
+     * Draws months from a cache of bitmaps, for smoother paging on slow
+     * devices at the cost of memory. Off by default.
+     */
+    public void setMonthRenderCacheEnabled(boolean enabled) {
+        mDayPickerView.setMonthRenderCacheEnabled(enabled);
+    }
+
     @Override
     public void setEnabled(boolean enabled) {
         if (isEnabled() == enabled) {
@@ -22,6 +22,7 @@ import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
 import com.appeaser.sublimepickerlibrary.datepicker.SelectedDate;
+import com.appeaser.sublimepickerlibrary.recurrencepicker.EventRecurrenceCodec;
 import com.appeaser.sublimepickerlibrary.recurrencepicker.SublimeRecurrencePicker;
 import com.appeaser.sublimepickerlibrary.utilities.SUtils;
 
@@ -331,7 +332,7 @@ public class SublimeOptions implements Parcelable {
         mHourOfDay = in.readInt();
         mMinute = in.readInt();
         mIs24HourView = in.readByte() != 0;
-        mRecurrenceRule = in.readString();
+        mRecurrenceRule = EventRecurrenceCodec.readRule(in);
         mCanPickDateRange = in.readByte() != 0;
     }
 
@@ -349,7 +350,7 @@ public class SublimeOptions implements Parcelable {
         dest.writeInt(mHourOfDay);
         dest.writeInt(mMinute);
         dest.writeByte((byte) (mIs24HourView ? 1 : 0));
-        dest.writeString(mRecurrenceRule);
+        EventRecurrenceCodec.writeRule(dest, mRecurrenceRule);
         dest.writeByte((byte) (mCanPickDateRange ? 1 : 0));
     }
 
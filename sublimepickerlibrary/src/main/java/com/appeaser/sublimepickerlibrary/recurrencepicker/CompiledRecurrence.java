@@ -0,0 +1,437 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
+
+/**
+ * An {@link EventRecurrence} reduced to bitmasks & primitive lists, with the
+ * RFC 5545 defaults derived from the start date filled in. Instances are
+ * reusable - {@link #compile(EventRecurrence, int, int)} overwrites all state
+ * and only grows the backing arrays when needed.
+ * <p/>
+ * Dates are epoch days (see {@link EpochDayUtils}). Days of the week are
+ * android.text.format.Time constants (SUNDAY = 0 ... SATURDAY = 6).
+ */
+final class CompiledRecurrence {
+
+    // Bits 0-11 set: every month is allowed
+    static final int ALL_MONTHS = 0xFFF;
+
+    // Bits 0-6 set: every day of the week is allowed
+    static final int ALL_WEEK_DAYS = 0x7F;
+
+    // Bits 0, 7, 14, 21 & 28 set: the days of a month falling on one day of the week
+    private static final int WEEK_DAY_PATTERN = 0x10204081;
+
+    int freq;
+    int interval;
+    int count;
+
+    int startDay;
+    int untilDay;
+    int wkst;
+
+    // BYMONTH, bit 0 = January
+    int monthMask;
+    boolean hasByMonth;
+
+    // BYMONTHDAY, values in [-31, -1] U [1, 31]
+    int[] monthDays = new int[4];
+    int monthDayCount;
+
+    // BYDAY without a numeric prefix, bit 0 = Sunday
+    int weekDayMask;
+    // BYDAY with a numeric prefix, packed as (n << 3) | weekDay
+    int[] nthWeekDays = new int[4];
+    int nthWeekDayCount;
+    boolean hasByDay;
+
+    // BYYEARDAY, values in [-366, -1] U [1, 366]
+    int[] yearDays = new int[4];
+    int yearDayCount;
+
+    // BYWEEKNO, bit 'n' set for week n (positive) or week -n (negative)
+    long positiveWeekNos;
+    long negativeWeekNos;
+    boolean hasByWeekNo;
+
+    // BYSETPOS
+    int[] setPos = new int[4];
+    int setPosCount;
+
+    /**
+     * @param er       the parsed rule
+     * @param startDay epoch day of the first instance (DTSTART)
+     * @param untilDay epoch day of the last allowed instance (inclusive), or
+     *                 Integer.MAX_VALUE if the rule is not bounded by UNTIL
+     */
+    void compile(EventRecurrence er, int startDay, int untilDay) {
+        switch (er.freq) {
+            case EventRecurrence.DAILY:
+            case EventRecurrence.WEEKLY:
+            case EventRecurrence.MONTHLY:
+            case EventRecurrence.YEARLY:
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported FREQ: " + er.freq);
+        }
+
+        this.freq = er.freq;
+        this.interval = er.interval <= 1 ? 1 : er.interval;
+        this.count = er.count > 0 ? er.count : 0;
+        this.startDay = startDay;
+        this.untilDay = untilDay;
+        this.wkst = er.wkst == 0 ? 1 /* MONDAY */ : dayToWeekDay(er.wkst);
+
+        hasByMonth = er.bymonthCount > 0;
+        monthMask = hasByMonth ? 0 : ALL_MONTHS;
+        for (int i = 0; i < er.bymonthCount; i++) {
+            monthMask |= 1 << (er.bymonth[i] - 1);
+        }
+
+        monthDayCount = 0;
+        if (er.bymonthdayCount > 0) {
+            monthDays = ensureCapacity(monthDays, er.bymonthdayCount);
+            System.arraycopy(er.bymonthday, 0, monthDays, 0, er.bymonthdayCount);
+            monthDayCount = er.bymonthdayCount;
+        }
+
+        hasByDay = er.bydayCount > 0;
+        weekDayMask = 0;
+        nthWeekDayCount = 0;
+        for (int i = 0; i < er.bydayCount; i++) {
+            final int weekDay = dayToWeekDay(er.byday[i]);
+            final int n = er.bydayNum == null ? 0 : er.bydayNum[i];
+
+            // A numeric prefix only makes sense for MONTHLY & YEARLY rules
+            if (n == 0 || (freq != EventRecurrence.MONTHLY && freq != EventRecurrence.YEARLY)) {
+                weekDayMask |= 1 << weekDay;
+            } else {
+                nthWeekDays = ensureCapacity(nthWeekDays, nthWeekDayCount + 1);
+                nthWeekDays[nthWeekDayCount++] = (n << 3) | weekDay;
+            }
+        }
+
+        yearDayCount = 0;
+        if (er.byyeardayCount > 0) {
+            yearDays = ensureCapacity(yearDays, er.byyeardayCount);
+            System.arraycopy(er.byyearday, 0, yearDays, 0, er.byyeardayCount);
+            yearDayCount = er.byyeardayCount;
+        }
+
+        hasByWeekNo = er.byweeknoCount > 0;
+        positiveWeekNos = negativeWeekNos = 0;
+        for (int i = 0; i < er.byweeknoCount; i++) {
+            final int weekNo = er.byweekno[i];
+            if (weekNo > 0) {
+                positiveWeekNos |= 1L << weekNo;
+            } else {
+                negativeWeekNos |= 1L << -weekNo;
+            }
+        }
+
+        setPosCount = 0;
+        if (er.bysetposCount > 0) {
+            setPos = ensureCapacity(setPos, er.bysetposCount);
+            System.arraycopy(er.bysetpos, 0, setPos, 0, er.bysetposCount);
+            setPosCount = er.bysetposCount;
+        }
+
+        // RFC 5545: missing BY* parts are derived from DTSTART
+        if (monthDayCount == 0 && !hasByDay && yearDayCount == 0 && !hasByWeekNo) {
+            final int packedStart = EpochDayUtils.toPackedDate(startDay);
+            switch (freq) {
+                case EventRecurrence.YEARLY:
+                    if (!hasByMonth) {
+                        monthMask = 1 << EpochDayUtils.packedMonth(packedStart);
+                        hasByMonth = true;
+                    }
+                    // fall through
+                case EventRecurrence.MONTHLY:
+                    monthDays[0] = EpochDayUtils.packedMonthDay(packedStart);
+                    monthDayCount = 1;
+                    break;
+                case EventRecurrence.WEEKLY:
+                    weekDayMask = 1 << EpochDayUtils.getWeekDay(startDay);
+                    hasByDay = true;
+                    break;
+            }
+        }
+    }
+
+    boolean hasSetPos() {
+        return setPosCount > 0;
+    }
+
+    /**
+     * @return true if BYYEARDAY or BYWEEKNO restrict the candidates, i.e.
+     * the candidates of a month depend on its position in the year
+     */
+    boolean hasYearParts() {
+        return yearDayCount > 0 || hasByWeekNo;
+    }
+
+    boolean isMonthAllowed(int month) {
+        return (monthMask & (1 << month)) != 0;
+    }
+
+    /**
+     * Computes the days of the given month that satisfy BYMONTHDAY, BYDAY,
+     * BYYEARDAY & BYWEEKNO. BYMONTH is not considered - see
+     * {@link #isMonthAllowed(int)}.
+     *
+     * @param year  the year
+     * @param month the month, 0-based
+     * @return a mask with bit 'n' set if day 'n' of the month is a candidate
+     */
+    int getMonthDayMask(int year, int month) {
+        final int daysInMonth = EpochDayUtils.getDaysInMonth(year, month);
+        final int allDays = (int) ((1L << (daysInMonth + 1)) - 2);
+
+        int mask = allDays;
+
+        if (monthDayCount > 0) {
+            int monthDayMask = 0;
+            for (int i = 0; i < monthDayCount; i++) {
+                final int monthDay = monthDays[i] > 0 ?
+                        monthDays[i] : daysInMonth + monthDays[i] + 1;
+                if (monthDay >= 1 && monthDay <= daysInMonth) {
+                    monthDayMask |= 1 << monthDay;
+                }
+            }
+            mask &= monthDayMask;
+        }
+
+        if (hasByDay && mask != 0) {
+            final int firstDay = EpochDayUtils.toEpochDay(year, month, 1);
+            final int firstWeekDay = EpochDayUtils.getWeekDay(firstDay);
+
+            int byDayMask = 0;
+            for (int weekDay = 0; weekDay < 7; weekDay++) {
+                if ((weekDayMask & (1 << weekDay)) != 0) {
+                    byDayMask |= WEEK_DAY_PATTERN
+                            << (1 + EpochDayUtils.floorMod(weekDay - firstWeekDay, 7));
+                }
+            }
+
+            if (nthWeekDayCount > 0) {
+                if (freq == EventRecurrence.YEARLY && !hasByMonth) {
+                    byDayMask |= getNthWeekDayMaskInYear(year, month, firstDay);
+                } else {
+                    byDayMask |= getNthWeekDayMaskInMonth(daysInMonth, firstWeekDay);
+                }
+            }
+
+            mask &= byDayMask;
+        }
+
+        if (yearDayCount > 0 && mask != 0) {
+            mask &= getYearDayMask(year, month, daysInMonth);
+        }
+
+        if (hasByWeekNo && mask != 0) {
+            mask &= getWeekNoMask(year, month, daysInMonth);
+        }
+
+        return mask & allDays;
+    }
+
+    /**
+     * @return true if 'day' falls in a month allowed by BYMONTH & satisfies
+     * BYMONTHDAY and (un-numbered) BYDAY. Used by DAILY & WEEKLY rules.
+     */
+    boolean isDayAllowed(int day) {
+        if (hasByDay && (weekDayMask & (1 << EpochDayUtils.getWeekDay(day))) == 0) {
+            return false;
+        }
+
+        if (hasYearParts()) {
+            final int packed = EpochDayUtils.toPackedDate(day);
+            final int year = EpochDayUtils.packedYear(packed);
+            final int month = EpochDayUtils.packedMonth(packed);
+            final int daysInMonth = EpochDayUtils.getDaysInMonth(year, month);
+            final int bit = 1 << EpochDayUtils.packedMonthDay(packed);
+            if (yearDayCount > 0 && (getYearDayMask(year, month, daysInMonth) & bit) == 0) {
+                return false;
+            }
+            if (hasByWeekNo && (getWeekNoMask(year, month, daysInMonth) & bit) == 0) {
+                return false;
+            }
+        }
+
+        if (!hasByMonth && monthDayCount == 0) {
+            return true;
+        }
+
+        final int packed = EpochDayUtils.toPackedDate(day);
+        final int month = EpochDayUtils.packedMonth(packed);
+        if (!isMonthAllowed(month)) {
+            return false;
+        }
+
+        if (monthDayCount > 0) {
+            final int year = EpochDayUtils.packedYear(packed);
+            final int monthDay = EpochDayUtils.packedMonthDay(packed);
+            final int daysInMonth = EpochDayUtils.getDaysInMonth(year, month);
+            for (int i = 0; i < monthDayCount; i++) {
+                if (monthDays[i] == monthDay || daysInMonth + monthDays[i] + 1 == monthDay) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    private int getNthWeekDayMaskInMonth(int daysInMonth, int firstWeekDay) {
+        int mask = 0;
+        for (int i = 0; i < nthWeekDayCount; i++) {
+            final int n = nthWeekDays[i] >> 3;
+            final int weekDay = nthWeekDays[i] & 7;
+            final int first = 1 + EpochDayUtils.floorMod(weekDay - firstWeekDay, 7);
+
+            final int monthDay;
+            if (n > 0) {
+                monthDay = first + 7 * (n - 1);
+            } else {
+                final int last = first + 7 * ((daysInMonth - first) / 7);
+                monthDay = last + 7 * (n + 1);
+            }
+
+            if (monthDay >= 1 && monthDay <= daysInMonth) {
+                mask |= 1 << monthDay;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return a mask with bit 'n' set if day 'n' of the month is one of the
+     * BYYEARDAY days
+     */
+    private int getYearDayMask(int year, int month, int daysInMonth) {
+        final int daysInYear = EpochDayUtils.getDaysInYear(year);
+        final int firstYearDay = EpochDayUtils.getYearDay(year, month, 1);
+
+        int mask = 0;
+        for (int i = 0; i < yearDayCount; i++) {
+            // 0-based day of the year
+            final int yearDay = yearDays[i] > 0 ? yearDays[i] - 1 : daysInYear + yearDays[i];
+            final int monthDay = yearDay - firstYearDay + 1;
+            if (monthDay >= 1 && monthDay <= daysInMonth) {
+                mask |= 1 << monthDay;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Computes the days of the given month that fall in one of the BYWEEKNO
+     * weeks. Weeks start on WKST; week 1 of a year is the first one with at
+     * least four days in that year, so a week near new year may belong to
+     * the neighbouring year. Each week is checked against the numbering of
+     * the year it belongs to.
+     *
+     * @return a mask with bit 'n' set if day 'n' of the month is selected
+     */
+    private int getWeekNoMask(int year, int month, int daysInMonth) {
+        final int firstDay = EpochDayUtils.toEpochDay(year, month, 1);
+        final int lastDay = firstDay + daysInMonth - 1;
+
+        int mask = 0;
+        int weekStart = EpochDayUtils.getWeekStartEpochDay(firstDay, wkst);
+
+        // The year the week belongs to, the start of its week 1 & its number of weeks
+        int weekYear = Integer.MIN_VALUE;
+        int firstWeekStart = 0;
+        int weeksInYear = 0;
+
+        for (; weekStart <= lastDay; weekStart += 7) {
+            // The fourth day of a week is in the year the week belongs to
+            final int year4 = EpochDayUtils.getYear(weekStart + 3);
+            if (year4 != weekYear) {
+                weekYear = year4;
+                firstWeekStart = getFirstWeekStart(weekYear);
+                weeksInYear = (getFirstWeekStart(weekYear + 1) - firstWeekStart) / 7;
+            }
+
+            final int weekNo = (weekStart - firstWeekStart) / 7 + 1;
+            if ((positiveWeekNos & (1L << weekNo)) != 0
+                    || (negativeWeekNos & (1L << (weeksInYear - weekNo + 1))) != 0) {
+                final int from = Math.max(weekStart, firstDay) - firstDay + 1;
+                final int to = Math.min(weekStart + 6, lastDay) - firstDay + 1;
+                // Bits from..to
+                mask |= (int) ((1L << (to + 1)) - (1L << from));
+            }
+        }
+        return mask;
+    }
+
+    // January 4th is always in week 1
+    private int getFirstWeekStart(int year) {
+        return EpochDayUtils.getWeekStartEpochDay(EpochDayUtils.toEpochDay(year, 0, 4), wkst);
+    }
+
+    // YEARLY rules without BYMONTH: "20MO" is the 20th Monday of the year
+    private int getNthWeekDayMaskInYear(int year, int month, int firstDayOfMonth) {
+        final int firstDayOfYear = EpochDayUtils.toEpochDay(year, 0, 1);
+        final int lastDayOfYear = firstDayOfYear + EpochDayUtils.getDaysInYear(year) - 1;
+        final int lastDayOfMonth = firstDayOfMonth
+                + EpochDayUtils.getDaysInMonth(year, month) - 1;
+
+        int mask = 0;
+        for (int i = 0; i < nthWeekDayCount; i++) {
+            final int n = nthWeekDays[i] >> 3;
+            final int weekDay = nthWeekDays[i] & 7;
+
+            final int day;
+            if (n > 0) {
+                day = firstDayOfYear + EpochDayUtils.floorMod(
+                        weekDay - EpochDayUtils.getWeekDay(firstDayOfYear), 7) + 7 * (n - 1);
+            } else {
+                day = lastDayOfYear - EpochDayUtils.floorMod(
+                        EpochDayUtils.getWeekDay(lastDayOfYear) - weekDay, 7) + 7 * (n + 1);
+            }
+
+            if (day >= firstDayOfMonth && day <= lastDayOfMonth) {
+                mask |= 1 << (day - firstDayOfMonth + 1);
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Converts one of EventRecurrence.SU, MO, etc. to the
+     * android.text.format.Time day of week (SUNDAY = 0).
+     */
+    static int dayToWeekDay(int day) {
+        final int weekDay = Integer.numberOfTrailingZeros(day) - 16;
+        if (weekDay < 0 || weekDay > 6 || Integer.bitCount(day) != 1) {
+            throw new IllegalArgumentException("bad day argument: " + day);
+        }
+        return weekDay;
+    }
+
+    static int[] ensureCapacity(int[] array, int capacity) {
+        if (array == null || array.length < capacity) {
+            return new int[Math.max(capacity, array == null ? 0 : array.length * 2)];
+        }
+        return array;
+    }
+}
@@ -16,13 +16,15 @@
 
 package com.appeaser.sublimepickerlibrary.recurrencepicker;
 
-import android.text.TextUtils;
 import android.text.format.Time;
 import android.util.Log;
-import android.util.TimeFormatException;
 
+import com.appeaser.sublimepickerlibrary.utilities.Config;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.HashMap;
 
 /**
  * Event recurrence utility functions.
@@ -75,29 +77,6 @@ public class EventRecurrence {
     public int[] bysetpos;
     public int bysetposCount;
 
-    /**
-     * maps a part string to a parser object
-     */
-    private static HashMap<String, PartParser> sParsePartMap;
-
-    static {
-        sParsePartMap = new HashMap<String, PartParser>();
-        sParsePartMap.put("FREQ", new ParseFreq());
-        sParsePartMap.put("UNTIL", new ParseUntil());
-        sParsePartMap.put("COUNT", new ParseCount());
-        sParsePartMap.put("INTERVAL", new ParseInterval());
-        sParsePartMap.put("BYSECOND", new ParseBySecond());
-        sParsePartMap.put("BYMINUTE", new ParseByMinute());
-        sParsePartMap.put("BYHOUR", new ParseByHour());
-        sParsePartMap.put("BYDAY", new ParseByDay());
-        sParsePartMap.put("BYMONTHDAY", new ParseByMonthDay());
-        sParsePartMap.put("BYYEARDAY", new ParseByYearDay());
-        sParsePartMap.put("BYWEEKNO", new ParseByWeekNo());
-        sParsePartMap.put("BYMONTH", new ParseByMonth());
-        sParsePartMap.put("BYSETPOS", new ParseBySetPos());
-        sParsePartMap.put("WKST", new ParseWkst());
-    }
-
     /* values for bit vector that keeps track of what we have already seen */
     private static final int PARSED_FREQ = 1 << 0;
     private static final int PARSED_UNTIL = 1 << 1;
@@ -114,36 +93,6 @@ public class EventRecurrence {
     private static final int PARSED_BYSETPOS = 1 << 12;
     private static final int PARSED_WKST = 1 << 13;
 
-    /**
-     * maps a FREQ value to an integer constant
-     */
-    private static final HashMap<String, Integer> sParseFreqMap = new HashMap<String, Integer>();
-
-    static {
-        sParseFreqMap.put("SECONDLY", SECONDLY);
-        sParseFreqMap.put("MINUTELY", MINUTELY);
-        sParseFreqMap.put("HOURLY", HOURLY);
-        sParseFreqMap.put("DAILY", DAILY);
-        sParseFreqMap.put("WEEKLY", WEEKLY);
-        sParseFreqMap.put("MONTHLY", MONTHLY);
-        sParseFreqMap.put("YEARLY", YEARLY);
-    }
-
-    /**
-     * maps a two-character weekday string to an integer constant
-     */
-    private static final HashMap<String, Integer> sParseWeekdayMap = new HashMap<String, Integer>();
-
-    static {
-        sParseWeekdayMap.put("SU", SU);
-        sParseWeekdayMap.put("MO", MO);
-        sParseWeekdayMap.put("TU", TU);
-        sParseWeekdayMap.put("WE", WE);
-        sParseWeekdayMap.put("TH", TH);
-        sParseWeekdayMap.put("FR", FR);
-        sParseWeekdayMap.put("SA", SA);
-    }
-
     /**
      * If set, allow lower-case recurrence rule strings.  Minor performance impact.
      */
@@ -269,6 +218,18 @@ public class EventRecurrence {
         }
     }
 
+    /**
+     * Two-letter tokens for SU, MO, etc., indexed by the position of the
+     * constant's bit above bit 16 (see {@link #day2String(int)}).
+     */
+    private static final String[] DAY_TOKENS = {"SU", "MO", "TU", "WE", "TH", "FR", "SA"};
+
+    /**
+     * FREQ tokens, indexed by SECONDLY, MINUTELY, etc.
+     */
+    private static final String[] FREQ_TOKENS = {null, "SECONDLY", "MINUTELY", "HOURLY",
+            "DAILY", "WEEKLY", "MONTHLY", "YEARLY"};
+
     /**
      * Converts one of the internal day constants (SU, MO, etc.) to the
      * two-letter string representing that constant.
@@ -279,91 +240,119 @@ public class EventRecurrence {
      *                                  the defined day constants.
      */
     private static String day2String(int day) {
-        switch (day) {
-            case SU:
-                return "SU";
-            case MO:
-                return "MO";
-            case TU:
-                return "TU";
-            case WE:
-                return "WE";
-            case TH:
-                return "TH";
-            case FR:
-                return "FR";
-            case SA:
-                return "SA";
-            default:
-                throw new IllegalArgumentException("bad day argument: " + day);
+        int index = Integer.numberOfTrailingZeros(day) - 16;
+        if (index < 0 || index >= DAY_TOKENS.length || Integer.bitCount(day) != 1) {
+            throw new IllegalArgumentException("bad day argument: " + day);
         }
+        return DAY_TOKENS[index];
     }
 
-    private static void appendNumbers(StringBuilder s, String label,
-                                      int count, int[] values) {
+    private static void appendNumbers(Appendable s, String label,
+                                      int count, int[] values) throws IOException {
         if (count > 0) {
             s.append(label);
             count--;
             for (int i = 0; i < count; i++) {
-                s.append(values[i]);
-                s.append(",");
+                appendInt(s, values[i]);
+                s.append(',');
             }
-            s.append(values[count]);
+            appendInt(s, values[count]);
         }
     }
 
-    private void appendByDay(StringBuilder s, int i) {
+    private void appendByDay(Appendable s, int i) throws IOException {
         int n = this.bydayNum[i];
         if (n != 0) {
-            s.append(n);
+            appendInt(s, n);
         }
 
         String str = day2String(this.byday[i]);
         s.append(str);
     }
 
+    /**
+     * Appends the decimal form of 'value' one char at a time, so that no
+     * String is created.
+     */
+    private static void appendInt(Appendable s, int value) throws IOException {
+        if (value < 0) {
+            s.append('-');
+        } else {
+            // Work with negative values, which also covers Integer.MIN_VALUE
+            value = -value;
+        }
+
+        int divisor = 1;
+        while (value / divisor <= -10) {
+            divisor *= 10;
+        }
+        while (divisor != 0) {
+            s.append((char) ('0' - value / divisor));
+            value %= divisor;
+            divisor /= 10;
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
+        writeTo(s);
+        return s.toString();
+    }
 
+    /**
+     * Appends the rfc2445 form of this rule - the same text as {@link #toString()} -
+     * to 's'.
+     */
+    public void writeTo(StringBuilder s) {
+        try {
+            writeTo((Appendable) s);
+        } catch (IOException e) {
+            // StringBuilder does not throw
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Writes the rfc2445 form of this rule - the same text as {@link #toString()} -
+     * into 'buffer', starting at its position.
+     *
+     * @throws java.nio.BufferOverflowException if 'buffer' does not have enough room
+     */
+    public void writeTo(CharBuffer buffer) {
+        try {
+            writeTo((Appendable) buffer);
+        } catch (IOException e) {
+            // CharBuffer does not throw IOException
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Writes the rfc2445 form of this rule - the same text as {@link #toString()} -
+     * to 's'. Apart from anything 's' does, no objects are allocated.
+     *
+     * @throws IOException if 's' does
+     */
+    public void writeTo(Appendable s) throws IOException {
         s.append("FREQ=");
-        switch (this.freq) {
-            case SECONDLY:
-                s.append("SECONDLY");
-                break;
-            case MINUTELY:
-                s.append("MINUTELY");
-                break;
-            case HOURLY:
-                s.append("HOURLY");
-                break;
-            case DAILY:
-                s.append("DAILY");
-                break;
-            case WEEKLY:
-                s.append("WEEKLY");
-                break;
-            case MONTHLY:
-                s.append("MONTHLY");
-                break;
-            case YEARLY:
-                s.append("YEARLY");
-                break;
+        if (this.freq > 0 && this.freq < FREQ_TOKENS.length) {
+            s.append(FREQ_TOKENS[this.freq]);
         }
 
-        if (!TextUtils.isEmpty(this.until)) {
+        if (this.until != null && this.until.length() > 0) {
             s.append(";UNTIL=");
             s.append(until);
         }
 
         if (this.count != 0) {
             s.append(";COUNT=");
-            s.append(this.count);
+            appendInt(s, this.count);
         }
 
         if (this.interval != 0) {
             s.append(";INTERVAL=");
-            s.append(this.interval);
+            appendInt(s, this.interval);
         }
 
         if (this.wkst != 0) {
@@ -373,7 +362,7 @@ public class EventRecurrence {
 
         appendNumbers(s, ";BYSECOND=", this.bysecondCount, this.bysecond);
         appendNumbers(s, ";BYMINUTE=", this.byminuteCount, this.byminute);
-        appendNumbers(s, ";BYSECOND=", this.byhourCount, this.byhour);
+        appendNumbers(s, ";BYHOUR=", this.byhourCount, this.byhour);
 
         // day
         int count = this.bydayCount;
@@ -382,7 +371,7 @@ public class EventRecurrence {
             count--;
             for (int i = 0; i < count; i++) {
                 appendByDay(s, i);
-                s.append(",");
+                s.append(',');
             }
             appendByDay(s, count);
         }
@@ -392,8 +381,111 @@ public class EventRecurrence {
         appendNumbers(s, ";BYWEEKNO=", this.byweeknoCount, this.byweekno);
         appendNumbers(s, ";BYMONTH=", this.bymonthCount, this.bymonth);
         appendNumbers(s, ";BYSETPOS=", this.bysetposCount, this.bysetpos);
+    }
 
-        return s.toString();
+    /**
+     * Rewrites this rule into a canonical form, so that rules which differ
+     * only in spelling become equal & produce the same {@link #toString()}:
+     * <ul>
+     * <li>BY* lists are sorted in ascending order & duplicates removed. BYDAY
+     * entries are ordered by weekday (SU first), then by ordinal.</li>
+     * <li>INTERVAL=1 is dropped, as it is the default.</li>
+     * <li>WKST is reset to the default (MO) where it has no effect - that is,
+     * unless the rule is WEEKLY with an INTERVAL above 1, or has BYWEEKNO or
+     * BYSETPOS.</li>
+     * </ul>
+     * Token case & number formatting are already canonical after {@link #parse(String)}.
+     * A normalized rule is unchanged by parsing its own toString().
+     */
+    public void normalize() {
+        if (interval == 1) {
+            interval = 0;
+        }
+
+        // WKST decides where weeks start: it matters when weeks are numbered,
+        // skipped or (BYSETPOS) ranked
+        if (wkst == 0 || (byweeknoCount == 0 && bysetposCount == 0
+                && (freq != WEEKLY || interval <= 1))) {
+            wkst = MO;
+        }
+
+        bysecondCount = sortUnique(bysecond, bysecondCount);
+        byminuteCount = sortUnique(byminute, byminuteCount);
+        byhourCount = sortUnique(byhour, byhourCount);
+        bymonthdayCount = sortUnique(bymonthday, bymonthdayCount);
+        byyeardayCount = sortUnique(byyearday, byyeardayCount);
+        byweeknoCount = sortUnique(byweekno, byweeknoCount);
+        bymonthCount = sortUnique(bymonth, bymonthCount);
+        bysetposCount = sortUnique(bysetpos, bysetposCount);
+        sortUniqueByDay();
+    }
+
+    /**
+     * @param rule The recurrence rule to parse (in un-folded form).
+     * @return the canonical spelling of 'rule' - see {@link #normalize()}
+     * @throws InvalidFormatException if 'rule' is malformed
+     */
+    public static String toCanonicalString(String rule) {
+        EventRecurrence er = new EventRecurrence();
+        er.parse(rule);
+        er.normalize();
+        return er.toString();
+    }
+
+    /**
+     * Sorts the first 'count' values & removes duplicates.
+     *
+     * @return the new count
+     */
+    private static int sortUnique(int[] values, int count) {
+        if (count < 2) {
+            return count;
+        }
+
+        Arrays.sort(values, 0, count);
+        int unique = 1;
+        for (int i = 1; i < count; i++) {
+            if (values[i] != values[unique - 1]) {
+                values[unique++] = values[i];
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Orders BYDAY by weekday (SU..SA) & then by ordinal, removing duplicates.
+     * Insertion sort - BYDAY lists are short.
+     */
+    private void sortUniqueByDay() {
+        int count = bydayCount;
+        if (count < 2) {
+            return;
+        }
+
+        int[] days = byday;
+        int[] nums = bydayNum;
+        for (int i = 1; i < count; i++) {
+            int day = days[i];
+            int num = nums[i];
+            int j = i - 1;
+            while (j >= 0 && (days[j] > day || (days[j] == day && nums[j] > num))) {
+                days[j + 1] = days[j];
+                nums[j + 1] = nums[j];
+                j--;
+            }
+            days[j + 1] = day;
+            nums[j + 1] = num;
+        }
+
+        int unique = 1;
+        for (int i = 1; i < count; i++) {
+            if (days[i] != days[unique - 1] || nums[i] != nums[unique - 1]) {
+                days[unique] = days[i];
+                nums[unique] = nums[i];
+                unique++;
+            }
+        }
+        bydayCount = unique;
     }
 
     public boolean repeatsOnEveryWeekDay() {
@@ -493,10 +585,42 @@ public class EventRecurrence {
                 arraysEqual(bysetpos, bysetposCount, er.bysetpos, er.bysetposCount);
     }
 
+    /**
+     * Hashes the rule fields only. startDate is left out because Time has no hashCode();
+     * instances that are equal always have equal rule fields, so this stays consistent
+     * with equals(). Matches {@link EventRecurrenceSnapshot#hashCode()} for a snapshot
+     * of this instance.
+     */
     @Override
     public int hashCode() {
-        // We overrode equals, so we must override hashCode().  Nobody seems to need this though.
-        throw new UnsupportedOperationException();
+        int result = freq;
+        result = 31 * result + (until == null ? 0 : until.hashCode());
+        result = 31 * result + count;
+        result = 31 * result + interval;
+        result = 31 * result + wkst;
+        result = 31 * result + arrayHashCode(bysecond, bysecondCount);
+        result = 31 * result + arrayHashCode(byminute, byminuteCount);
+        result = 31 * result + arrayHashCode(byhour, byhourCount);
+        result = 31 * result + arrayHashCode(byday, bydayCount);
+        result = 31 * result + arrayHashCode(bydayNum, bydayCount);
+        result = 31 * result + arrayHashCode(bymonthday, bymonthdayCount);
+        result = 31 * result + arrayHashCode(byyearday, byyeardayCount);
+        result = 31 * result + arrayHashCode(byweekno, byweeknoCount);
+        result = 31 * result + arrayHashCode(bymonth, bymonthCount);
+        result = 31 * result + arrayHashCode(bysetpos, bysetposCount);
+        return result;
+    }
+
+    /**
+     * Same as Arrays.hashCode() over the first 'count' elements. A null array is
+     * hashed as if it held 'count' zeros.
+     */
+    static int arrayHashCode(int[] array, int count) {
+        int result = 1;
+        for (int i = 0; i < count; i++) {
+            result = 31 * result + (array == null ? 0 : array[i]);
+        }
+        return result;
     }
 
     /**
@@ -556,10 +680,14 @@ public class EventRecurrence {
          *   FREQ=YEARLY;INTERVAL=4;BYMONTH=11;BYDAY=TU;BYMONTHDAY=2,3,4,5,6,7,8
          *
          * Strategy:
-         * (1) Split the string at ';' boundaries to get an array of rule "parts".
-         * (2) For each part, find substrings for left/right sides of '=' (name/value).
-         * (3) Call a <name>-specific parsing function to parse the <value> into an
-         *     output field.
+         * (1) Scan the string once, finding part boundaries at ';' characters.
+         * (2) For each part, find the offsets of the left/right sides of '=' (name/value).
+         * (3) Dispatch on the length and characters of the name to a <name>-specific
+         *     parsing function that parses the <value> range into an output field.
+         *
+         * No substrings are created for names, values or list entries, and the BY* arrays
+         * are reused when they are large enough, so parsing a rule allocates nothing
+         * beyond the UNTIL string (and error messages).
          *
          * By keeping track of which names we've seen in a bit vector, we can verify the
          * constraints indicated above (FREQ appears first, none of them appear more than once --
@@ -569,8 +697,8 @@ public class EventRecurrence {
          * In general, RFC 2445 property names (e.g. "FREQ") and enumerations ("TU") must
          * be handled in a case-insensitive fashion, but case may be significant for other
          * properties.  We don't have any case-sensitive values in RRULE, except possibly
-         * for the custom "X-" properties, but we ignore those anyway.  Thus, we can trivially
-         * convert the entire string to upper case and then use simple comparisons.
+         * for the custom "X-" properties, but we ignore those anyway.  Thus, we can compare
+         * names and enumerations ignoring (ASCII) case.
          *
          * Differences from previous version:
          * - allows lower-case property and enumeration values [optional]
@@ -584,52 +712,33 @@ public class EventRecurrence {
          * in section 3.3.10.  For example, if FREQ=WEEKLY, we should reject a rule that
          * includes a BYMONTHDAY part.
          */
+        parse(recur, 0, recur.length());
+    }
 
+    /**
+     * Parses the rfc2445 recurrence rule held in recur[start, end) into its component
+     * pieces. See {@link #parse(String)}.
+     *
+     * @param recur The characters holding the recurrence rule (in un-folded form).
+     * @param start Offset of the first character of the rule.
+     * @param end   Offset after the last character of the rule.
+     */
+    public void parse(CharSequence recur, int start, int end) {
         /* TODO: replace with "if (freq != 0) throw" if nothing requires this */
         resetFields();
 
         int parseFlags = 0;
-        String[] parts;
-        if (ALLOW_LOWER_CASE) {
-            parts = recur.toUpperCase().split(";");
-        } else {
-            parts = recur.split(";");
-        }
-        for (String part : parts) {
-            // allow empty part (e.g., double semicolon ";;")
-            if (TextUtils.isEmpty(part)) {
-                continue;
-            }
-            int equalIndex = part.indexOf('=');
-            if (equalIndex <= 0) {
-                /* no '=' or no LHS */
-                throw new InvalidFormatException("Missing LHS in " + part);
-            }
-
-            String lhs = part.substring(0, equalIndex);
-            String rhs = part.substring(equalIndex + 1);
-            if (rhs.length() == 0) {
-                throw new InvalidFormatException("Missing RHS in " + part);
-            }
+        int partStart = start;
+        while (partStart < end) {
+            int partEnd = indexOf(recur, ';', partStart, end);
 
-            /*
-             * In lieu of a "switch" statement that allows string arguments, we use a
-             * map from strings to parsing functions.
-             */
-            PartParser parser = sParsePartMap.get(lhs);
-            if (parser == null) {
-                if (lhs.startsWith("X-")) {
-                    //Log.d(TAG, "Ignoring custom part " + lhs);
-                    continue;
-                }
-                throw new InvalidFormatException("Couldn't find parser for " + lhs);
-            } else {
-                int flag = parser.parsePart(rhs, this);
-                if ((parseFlags & flag) != 0) {
-                    throw new InvalidFormatException("Part " + lhs + " was specified twice");
-                }
+            // allow empty part (e.g., double semicolon ";;")
+            if (partEnd > partStart) {
+                int flag = parsePart(recur, partStart, partEnd, parseFlags);
                 parseFlags |= flag;
             }
+
+            partStart = partEnd + 1;
         }
 
         // If not specified, week starts on Monday.
@@ -645,318 +754,437 @@ public class EventRecurrence {
         // Can't have both UNTIL and COUNT.
         if ((parseFlags & (PARSED_UNTIL | PARSED_COUNT)) == (PARSED_UNTIL | PARSED_COUNT)) {
             if (ONLY_ONE_UNTIL_COUNT) {
-                throw new InvalidFormatException("Must not specify both UNTIL and COUNT: " + recur);
-            } else {
-                Log.w(TAG, "Warning: rrule has both UNTIL and COUNT: " + recur);
+                throw new InvalidFormatException("Must not specify both UNTIL and COUNT: "
+                        + recur.subSequence(start, end));
+            } else if (Config.DEBUG) {
+                Log.w(TAG, "Warning: rrule has both UNTIL and COUNT: "
+                        + recur.subSequence(start, end));
             }
         }
     }
 
     /**
-     * Base class for the RRULE part parsers.
+     * Parses a single "name=value" part.
+     *
+     * @param cs         The characters holding the rule.
+     * @param start      Offset of the first character of the part.
+     * @param end        Offset after the last character of the part.
+     * @param parseFlags The parts seen so far.
+     * @return A bit value indicating which part was parsed, or 0 if the part was ignored.
      */
-    abstract static class PartParser {
-        /**
-         * Parses a single part.
-         *
-         * @param value The right-hand-side of the part.
-         * @param er    The EventRecurrence into which the result is stored.
-         * @return A bit value indicating which part was parsed.
-         */
-        public abstract int parsePart(String value, EventRecurrence er);
+    private int parsePart(CharSequence cs, int start, int end, int parseFlags) {
+        int equalIndex = indexOf(cs, '=', start, end);
+        if (equalIndex == end || equalIndex == start) {
+            /* no '=' or no LHS */
+            throw new InvalidFormatException("Missing LHS in " + toRuleString(cs, start, end));
+        }
 
-        /**
-         * Parses an integer, with range-checking.
-         *
-         * @param str       The string to parse.
-         * @param minVal    Minimum allowed value.
-         * @param maxVal    Maximum allowed value.
-         * @param allowZero Is 0 allowed?
-         * @return The parsed value.
+        int valueStart = equalIndex + 1;
+        if (valueStart == end) {
+            throw new InvalidFormatException("Missing RHS in " + toRuleString(cs, start, end));
+        }
+
+        /*
+         * Dispatch on the length of the name first; at most a handful of names share
+         * a length, and those are told apart by comparing characters in place.
          */
-        public static int parseIntRange(String str, int minVal, int maxVal, boolean allowZero) {
-            try {
-                if (str.charAt(0) == '+') {
-                    // Integer.parseInt does not allow a leading '+', so skip it manually.
-                    str = str.substring(1);
+        int flag = 0;
+        switch (equalIndex - start) {
+            case 4:
+                if (regionMatches(cs, start, "FREQ")) {
+                    flag = PARSED_FREQ;
+                } else if (regionMatches(cs, start, "WKST")) {
+                    flag = PARSED_WKST;
+                }
+                break;
+            case 5:
+                if (regionMatches(cs, start, "UNTIL")) {
+                    flag = PARSED_UNTIL;
+                } else if (regionMatches(cs, start, "COUNT")) {
+                    flag = PARSED_COUNT;
+                } else if (regionMatches(cs, start, "BYDAY")) {
+                    flag = PARSED_BYDAY;
+                }
+                break;
+            case 6:
+                if (regionMatches(cs, start, "BYHOUR")) {
+                    flag = PARSED_BYHOUR;
+                }
+                break;
+            case 7:
+                if (regionMatches(cs, start, "BYMONTH")) {
+                    flag = PARSED_BYMONTH;
+                }
+                break;
+            case 8:
+                if (regionMatches(cs, start, "INTERVAL")) {
+                    flag = PARSED_INTERVAL;
+                } else if (regionMatches(cs, start, "BYSECOND")) {
+                    flag = PARSED_BYSECOND;
+                } else if (regionMatches(cs, start, "BYMINUTE")) {
+                    flag = PARSED_BYMINUTE;
+                } else if (regionMatches(cs, start, "BYWEEKNO")) {
+                    flag = PARSED_BYWEEKNO;
+                } else if (regionMatches(cs, start, "BYSETPOS")) {
+                    flag = PARSED_BYSETPOS;
+                }
+                break;
+            case 9:
+                if (regionMatches(cs, start, "BYYEARDAY")) {
+                    flag = PARSED_BYYEARDAY;
                 }
-                int val = Integer.parseInt(str);
-                if (val < minVal || val > maxVal || (val == 0 && !allowZero)) {
-                    throw new InvalidFormatException("Integer value out of range: " + str);
+                break;
+            case 10:
+                if (regionMatches(cs, start, "BYMONTHDAY")) {
+                    flag = PARSED_BYMONTHDAY;
                 }
-                return val;
-            } catch (NumberFormatException nfe) {
-                throw new InvalidFormatException("Invalid integer value: " + str);
+                break;
+        }
+
+        if (flag == 0) {
+            if (regionMatches(cs, start, "X-")) {
+                //Log.d(TAG, "Ignoring custom part " + lhs);
+                return 0;
             }
+            throw new InvalidFormatException("Couldn't find parser for "
+                    + toRuleString(cs, start, equalIndex));
         }
 
-        /**
-         * Parses a comma-separated list of integers, with range-checking.
-         *
-         * @param listStr   The string to parse.
-         * @param minVal    Minimum allowed value.
-         * @param maxVal    Maximum allowed value.
-         * @param allowZero Is 0 allowed?
-         * @return A new array with values, sized to hold the exact number of elements.
-         */
-        public static int[] parseNumberList(String listStr, int minVal, int maxVal,
-                                            boolean allowZero) {
-            int[] values;
-
-            if (listStr.indexOf(",") < 0) {
-                // Common case: only one entry, skip split() overhead.
-                values = new int[1];
-                values[0] = parseIntRange(listStr, minVal, maxVal, allowZero);
-            } else {
-                String[] valueStrs = listStr.split(",");
-                int len = valueStrs.length;
-                values = new int[len];
-                for (int i = 0; i < len; i++) {
-                    values[i] = parseIntRange(valueStrs[i], minVal, maxVal, allowZero);
+        if ((parseFlags & flag) != 0) {
+            throw new InvalidFormatException("Part " + toRuleString(cs, start, equalIndex)
+                    + " was specified twice");
+        }
+
+        switch (flag) {
+            case PARSED_FREQ:
+                parseFreq(cs, valueStart, end);
+                break;
+            case PARSED_UNTIL:
+                parseUntil(cs, valueStart, end);
+                break;
+            case PARSED_COUNT:
+                count = parseIntRange(cs, valueStart, end,
+                        Integer.MIN_VALUE, Integer.MAX_VALUE, true);
+                if (count < 0) {
+                    if (Config.DEBUG) {
+                        Log.d(TAG, "Invalid Count. Forcing COUNT to 1 from "
+                                + toRuleString(cs, valueStart, end));
+                    }
+                    count = 1; // invalid count. assume one time recurrence.
                 }
-            }
-            return values;
+                break;
+            case PARSED_INTERVAL:
+                interval = parseIntRange(cs, valueStart, end,
+                        Integer.MIN_VALUE, Integer.MAX_VALUE, true);
+                if (interval < 1) {
+                    if (Config.DEBUG) {
+                        Log.d(TAG, "Invalid Interval. Forcing INTERVAL to 1 from "
+                                + toRuleString(cs, valueStart, end));
+                    }
+                    interval = 1;
+                }
+                break;
+            case PARSED_BYSECOND:
+                bysecond = ensureCapacity(bysecond, countListEntries(cs, valueStart, end));
+                bysecondCount = parseNumberList(cs, valueStart, end, 0, 59, true, bysecond);
+                break;
+            case PARSED_BYMINUTE:
+                byminute = ensureCapacity(byminute, countListEntries(cs, valueStart, end));
+                byminuteCount = parseNumberList(cs, valueStart, end, 0, 59, true, byminute);
+                break;
+            case PARSED_BYHOUR:
+                byhour = ensureCapacity(byhour, countListEntries(cs, valueStart, end));
+                byhourCount = parseNumberList(cs, valueStart, end, 0, 23, true, byhour);
+                break;
+            case PARSED_BYDAY:
+                parseByDay(cs, valueStart, end);
+                break;
+            case PARSED_BYMONTHDAY:
+                bymonthday = ensureCapacity(bymonthday, countListEntries(cs, valueStart, end));
+                bymonthdayCount = parseNumberList(cs, valueStart, end, -31, 31, false,
+                        bymonthday);
+                break;
+            case PARSED_BYYEARDAY:
+                byyearday = ensureCapacity(byyearday, countListEntries(cs, valueStart, end));
+                byyeardayCount = parseNumberList(cs, valueStart, end, -366, 366, false,
+                        byyearday);
+                break;
+            case PARSED_BYWEEKNO:
+                byweekno = ensureCapacity(byweekno, countListEntries(cs, valueStart, end));
+                byweeknoCount = parseNumberList(cs, valueStart, end, -53, 53, false, byweekno);
+                break;
+            case PARSED_BYMONTH:
+                bymonth = ensureCapacity(bymonth, countListEntries(cs, valueStart, end));
+                bymonthCount = parseNumberList(cs, valueStart, end, 1, 12, false, bymonth);
+                break;
+            case PARSED_BYSETPOS:
+                bysetpos = ensureCapacity(bysetpos, countListEntries(cs, valueStart, end));
+                bysetposCount = parseNumberList(cs, valueStart, end,
+                        Integer.MIN_VALUE, Integer.MAX_VALUE, true, bysetpos);
+                break;
+            case PARSED_WKST:
+                wkst = parseWeekday(cs, valueStart, end);
+                if (wkst == 0) {
+                    throw new InvalidFormatException("Invalid WKST value: "
+                            + toRuleString(cs, valueStart, end));
+                }
+                break;
         }
+
+        return flag;
     }
 
     /**
      * parses FREQ={SECONDLY,MINUTELY,...}
      */
-    private static class ParseFreq extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            Integer freq = sParseFreqMap.get(value);
-            if (freq == null) {
-                throw new InvalidFormatException("Invalid FREQ value: " + value);
-            }
-            er.freq = freq;
-            return PARSED_FREQ;
+    private void parseFreq(CharSequence cs, int start, int end) {
+        int value = 0;
+        switch (end - start) {
+            case 5:
+                if (regionMatches(cs, start, "DAILY")) {
+                    value = DAILY;
+                }
+                break;
+            case 6:
+                if (regionMatches(cs, start, "HOURLY")) {
+                    value = HOURLY;
+                } else if (regionMatches(cs, start, "WEEKLY")) {
+                    value = WEEKLY;
+                } else if (regionMatches(cs, start, "YEARLY")) {
+                    value = YEARLY;
+                }
+                break;
+            case 7:
+                if (regionMatches(cs, start, "MONTHLY")) {
+                    value = MONTHLY;
+                }
+                break;
+            case 8:
+                if (regionMatches(cs, start, "SECONDLY")) {
+                    value = SECONDLY;
+                } else if (regionMatches(cs, start, "MINUTELY")) {
+                    value = MINUTELY;
+                }
+                break;
+        }
+
+        if (value == 0) {
+            throw new InvalidFormatException("Invalid FREQ value: "
+                    + toRuleString(cs, start, end));
         }
+        freq = value;
     }
 
     /**
      * parses UNTIL=enddate, e.g. "19970829T021400"
      */
-    private static class ParseUntil extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            if (VALIDATE_UNTIL) {
-                try {
-                    // Parse the time to validate it.  The result isn't retained.
-                    Time until = new Time();
-                    until.parse(value);
-                } catch (TimeFormatException tfe) {
-                    throw new InvalidFormatException("Invalid UNTIL value: " + value);
-                }
-            }
-            er.until = value;
-            return PARSED_UNTIL;
+    private void parseUntil(CharSequence cs, int start, int end) {
+        String value = toRuleString(cs, start, end);
+        if (VALIDATE_UNTIL && !UntilDate.isValid(cs, start, end)) {
+            throw new InvalidFormatException("Invalid UNTIL value: " + value);
         }
+        until = value;
     }
 
     /**
-     * parses COUNT=[non-negative-integer]
+     * parses BYDAY=bywdaylist, e.g. "1SU,-1SU"
      */
-    private static class ParseCount extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            er.count = parseIntRange(value, Integer.MIN_VALUE, Integer.MAX_VALUE, true);
-            if (er.count < 0) {
-                Log.d(TAG, "Invalid Count. Forcing COUNT to 1 from " + value);
-                er.count = 1; // invalid count. assume one time recurrence.
+    private void parseByDay(CharSequence cs, int start, int end) {
+        int len = countListEntries(cs, start, end);
+        byday = ensureCapacity(byday, len);
+        bydayNum = ensureCapacity(bydayNum, len);
+
+        int entryStart = start;
+        for (int i = 0; i < len; i++) {
+            int entryEnd = indexOf(cs, ',', entryStart, end);
+
+            /* parses [int]weekday, putting the pieces into parallel array entries */
+            int wdayStart = entryEnd - 2;
+            if (wdayStart > entryStart) {
+                /* number is included; parse it out and advance to weekday */
+                bydayNum[i] = parseIntRange(cs, entryStart, wdayStart, -53, 53, false);
+            } else {
+                bydayNum[i] = 0;
             }
-            return PARSED_COUNT;
-        }
-    }
 
-    /**
-     * parses INTERVAL=[non-negative-integer]
-     */
-    private static class ParseInterval extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            er.interval = parseIntRange(value, Integer.MIN_VALUE, Integer.MAX_VALUE, true);
-            if (er.interval < 1) {
-                Log.d(TAG, "Invalid Interval. Forcing INTERVAL to 1 from " + value);
-                er.interval = 1;
+            int wday = wdayStart >= entryStart ? parseWeekday(cs, wdayStart, entryEnd) : 0;
+            if (wday == 0) {
+                throw new InvalidFormatException("Invalid BYDAY value: "
+                        + toRuleString(cs, entryStart, entryEnd));
             }
-            return PARSED_INTERVAL;
-        }
-    }
+            byday[i] = wday;
 
-    /**
-     * parses BYSECOND=byseclist
-     */
-    private static class ParseBySecond extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            int[] bysecond = parseNumberList(value, 0, 59, true);
-            er.bysecond = bysecond;
-            er.bysecondCount = bysecond.length;
-            return PARSED_BYSECOND;
+            entryStart = entryEnd + 1;
         }
+        bydayCount = len;
     }
 
     /**
-     * parses BYMINUTE=byminlist
+     * Maps a two-character weekday in cs[start, end) to one of SU, MO, etc.
+     *
+     * @return the weekday constant, or 0 if the characters are not a weekday.
      */
-    private static class ParseByMinute extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            int[] byminute = parseNumberList(value, 0, 59, true);
-            er.byminute = byminute;
-            er.byminuteCount = byminute.length;
-            return PARSED_BYMINUTE;
+    private static int parseWeekday(CharSequence cs, int start, int end) {
+        if (end - start != 2) {
+            return 0;
         }
-    }
 
-    /**
-     * parses BYHOUR=byhrlist
-     */
-    private static class ParseByHour extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            int[] byhour = parseNumberList(value, 0, 23, true);
-            er.byhour = byhour;
-            er.byhourCount = byhour.length;
-            return PARSED_BYHOUR;
+        char c0 = toUpperCase(cs.charAt(start));
+        char c1 = toUpperCase(cs.charAt(start + 1));
+        switch (c0) {
+            case 'S':
+                return c1 == 'U' ? SU : c1 == 'A' ? SA : 0;
+            case 'M':
+                return c1 == 'O' ? MO : 0;
+            case 'T':
+                return c1 == 'U' ? TU : c1 == 'H' ? TH : 0;
+            case 'W':
+                return c1 == 'E' ? WE : 0;
+            case 'F':
+                return c1 == 'R' ? FR : 0;
+            default:
+                return 0;
         }
     }
 
     /**
-     * parses BYDAY=bywdaylist, e.g. "1SU,-1SU"
+     * Parses an integer in cs[start, end), with range-checking.
+     *
+     * @param minVal    Minimum allowed value.
+     * @param maxVal    Maximum allowed value.
+     * @param allowZero Is 0 allowed?
+     * @return The parsed value.
      */
-    private static class ParseByDay extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            int[] byday;
-            int[] bydayNum;
-            int bydayCount;
-
-            if (value.indexOf(",") < 0) {
-                /* only one entry, skip split() overhead */
-                bydayCount = 1;
-                byday = new int[1];
-                bydayNum = new int[1];
-                parseWday(value, byday, bydayNum, 0);
-            } else {
-                String[] wdays = value.split(",");
-                int len = wdays.length;
-                bydayCount = len;
-                byday = new int[len];
-                bydayNum = new int[len];
-                for (int i = 0; i < len; i++) {
-                    parseWday(wdays[i], byday, bydayNum, i);
-                }
+    private static int parseIntRange(CharSequence cs, int start, int end,
+                                     int minVal, int maxVal, boolean allowZero) {
+        int i = start;
+        boolean negative = false;
+        if (i < end) {
+            char sign = cs.charAt(i);
+            if (sign == '+') {
+                i++;
+            } else if (sign == '-') {
+                negative = true;
+                i++;
             }
-            er.byday = byday;
-            er.bydayNum = bydayNum;
-            er.bydayCount = bydayCount;
-            return PARSED_BYDAY;
         }
 
-        /**
-         * parses [int]weekday, putting the pieces into parallel array entries
-         */
-        private static void parseWday(String str, int[] byday, int[] bydayNum, int index) {
-            int wdayStrStart = str.length() - 2;
-            String wdayStr;
+        if (i == end) {
+            throw new InvalidFormatException("Invalid integer value: "
+                    + toRuleString(cs, start, end));
+        }
 
-            if (wdayStrStart > 0) {
-                /* number is included; parse it out and advance to weekday */
-                String numPart = str.substring(0, wdayStrStart);
-                int num = parseIntRange(numPart, -53, 53, false);
-                bydayNum[index] = num;
-                wdayStr = str.substring(wdayStrStart);
-            } else {
-                /* just the weekday string */
-                wdayStr = str;
+        long val = 0;
+        for (; i < end; i++) {
+            int digit = cs.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new InvalidFormatException("Invalid integer value: "
+                        + toRuleString(cs, start, end));
             }
-            Integer wday = sParseWeekdayMap.get(wdayStr);
-            if (wday == null) {
-                throw new InvalidFormatException("Invalid BYDAY value: " + str);
+            val = val * 10 + digit;
+            if (val > (long) Integer.MAX_VALUE + 1) {
+                throw new InvalidFormatException("Invalid integer value: "
+                        + toRuleString(cs, start, end));
             }
-            byday[index] = wday;
         }
+
+        if (negative) {
+            val = -val;
+        }
+        if (val < minVal || val > maxVal || (val == 0 && !allowZero)) {
+            throw new InvalidFormatException("Integer value out of range: "
+                    + toRuleString(cs, start, end));
+        }
+        return (int) val;
     }
 
     /**
-     * parses BYMONTHDAY=bymodaylist
+     * Parses a comma-separated list of integers in cs[start, end), with range-checking,
+     * into 'values'.
+     *
+     * @param minVal    Minimum allowed value.
+     * @param maxVal    Maximum allowed value.
+     * @param allowZero Is 0 allowed?
+     * @param values    Receives the values; must hold countListEntries() elements.
+     * @return The number of values parsed.
      */
-    private static class ParseByMonthDay extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            int[] bymonthday = parseNumberList(value, -31, 31, false);
-            er.bymonthday = bymonthday;
-            er.bymonthdayCount = bymonthday.length;
-            return PARSED_BYMONTHDAY;
+    private static int parseNumberList(CharSequence cs, int start, int end,
+                                       int minVal, int maxVal, boolean allowZero,
+                                       int[] values) {
+        int len = countListEntries(cs, start, end);
+        int entryStart = start;
+        for (int i = 0; i < len; i++) {
+            int entryEnd = indexOf(cs, ',', entryStart, end);
+            values[i] = parseIntRange(cs, entryStart, entryEnd, minVal, maxVal, allowZero);
+            entryStart = entryEnd + 1;
         }
+        return len;
     }
 
     /**
-     * parses BYYEARDAY=byyrdaylist
+     * Counts the entries of the comma-separated list in cs[start, end). Like
+     * String.split(), trailing empty entries are not counted.
      */
-    private static class ParseByYearDay extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            int[] byyearday = parseNumberList(value, -366, 366, false);
-            er.byyearday = byyearday;
-            er.byyeardayCount = byyearday.length;
-            return PARSED_BYYEARDAY;
+    private static int countListEntries(CharSequence cs, int start, int end) {
+        while (end > start && cs.charAt(end - 1) == ',') {
+            end--;
+        }
+        if (end == start) {
+            return 0;
         }
+
+        int len = 1;
+        for (int i = start; i < end; i++) {
+            if (cs.charAt(i) == ',') {
+                len++;
+            }
+        }
+        return len;
     }
 
-    /**
-     * parses BYWEEKNO=bywknolist
-     */
-    private static class ParseByWeekNo extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            int[] byweekno = parseNumberList(value, -53, 53, false);
-            er.byweekno = byweekno;
-            er.byweeknoCount = byweekno.length;
-            return PARSED_BYWEEKNO;
+    static int[] ensureCapacity(int[] array, int capacity) {
+        return array != null && array.length >= capacity ? array : new int[capacity];
+    }
+
+    private static int indexOf(CharSequence cs, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (cs.charAt(i) == c) {
+                return i;
+            }
         }
+        return end;
     }
 
     /**
-     * parses BYMONTH=bymolist
+     * Compares cs[start, start + upperCase.length()) against 'upperCase', ignoring case
+     * if ALLOW_LOWER_CASE is set. The caller guarantees the range is in bounds.
      */
-    private static class ParseByMonth extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            int[] bymonth = parseNumberList(value, 1, 12, false);
-            er.bymonth = bymonth;
-            er.bymonthCount = bymonth.length;
-            return PARSED_BYMONTH;
+    private static boolean regionMatches(CharSequence cs, int start, String upperCase) {
+        int len = upperCase.length();
+        for (int i = 0; i < len; i++) {
+            if (toUpperCase(cs.charAt(start + i)) != upperCase.charAt(i)) {
+                return false;
+            }
         }
+        return true;
     }
 
-    /**
-     * parses BYSETPOS=bysplist
-     */
-    private static class ParseBySetPos extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            int[] bysetpos = parseNumberList(value, Integer.MIN_VALUE, Integer.MAX_VALUE, true);
-            er.bysetpos = bysetpos;
-            er.bysetposCount = bysetpos.length;
-            return PARSED_BYSETPOS;
+    private static char toUpperCase(char c) {
+        if (ALLOW_LOWER_CASE && c >= 'a' && c <= 'z') {
+            return (char) (c - ('a' - 'A'));
         }
+        return c;
     }
 
     /**
-     * parses WKST={SU,MO,...}
+     * Copies cs[start, end) into a String, upper-casing it if ALLOW_LOWER_CASE
+     * is set. Only used for values we retain (UNTIL) and for messages.
      */
-    private static class ParseWkst extends PartParser {
-        @Override
-        public int parsePart(String value, EventRecurrence er) {
-            Integer wkst = sParseWeekdayMap.get(value);
-            if (wkst == null) {
-                throw new InvalidFormatException("Invalid WKST value: " + value);
-            }
-            er.wkst = wkst;
-            return PARSED_WKST;
+    private static String toRuleString(CharSequence cs, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = toUpperCase(cs.charAt(i));
         }
+        return new String(chars);
     }
 }
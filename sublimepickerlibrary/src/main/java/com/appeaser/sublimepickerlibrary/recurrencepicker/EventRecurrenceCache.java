@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import android.support.v4.util.LruCache;
+
+/**
+ * Bounded, thread-safe cache of parsed recurrence rules, keyed by the
+ * rule string. Each distinct rule is parsed once; repeated rules cost a
+ * single hash lookup.
+ * <p/>
+ * Rules are held as immutable {@link EventRecurrenceSnapshot}s which may be
+ * shared freely - see {@link #get(String)}. {@link #parse(String, EventRecurrence)}
+ * copies a snapshot into the caller's (mutable) EventRecurrence.
+ */
+public final class EventRecurrenceCache {
+
+    public static final int DEFAULT_MAX_SIZE = 64;
+
+    private static EventRecurrenceCache sDefault;
+
+    private final LruCache<String, EventRecurrenceSnapshot> mCache;
+
+    public EventRecurrenceCache(int maxSize) {
+        mCache = new LruCache<String, EventRecurrenceSnapshot>(maxSize) {
+            @Override
+            protected EventRecurrenceSnapshot create(String rule) {
+                // Invoked without the cache lock held. Failures propagate
+                // to the caller & nothing is cached.
+                EventRecurrence er = new EventRecurrence();
+                er.parse(rule);
+                return new EventRecurrenceSnapshot(er);
+            }
+        };
+    }
+
+    /**
+     * @return the process-wide cache used by the recurrence picker
+     */
+    public static synchronized EventRecurrenceCache getDefault() {
+        if (sDefault == null) {
+            sDefault = new EventRecurrenceCache(DEFAULT_MAX_SIZE);
+        }
+        return sDefault;
+    }
+
+    /**
+     * @param rule The recurrence rule to parse (in un-folded form).
+     * @return the parsed rule
+     * @throws EventRecurrence.InvalidFormatException if 'rule' is malformed
+     */
+    public EventRecurrenceSnapshot get(String rule) {
+        if (rule == null) {
+            throw new IllegalArgumentException("rule cannot be null");
+        }
+        return mCache.get(rule);
+    }
+
+    /**
+     * Equivalent to out.parse(rule), using the cached result when available.
+     * out.startDate is left untouched.
+     *
+     * @param rule The recurrence rule to parse (in un-folded form).
+     * @param out  Receives the parsed rule.
+     * @throws EventRecurrence.InvalidFormatException if 'rule' is malformed
+     */
+    public void parse(String rule, EventRecurrence out) {
+        get(rule).copyTo(out);
+    }
+
+    /**
+     * Adds a rule that was obtained without parsing 'rule', e.g. from saved state.
+     *
+     * @param rule The recurrence rule, as returned by er.toString().
+     * @param er   The parsed form of 'rule'. Copied, so later changes are not seen.
+     */
+    public void put(String rule, EventRecurrence er) {
+        if (rule == null) {
+            throw new IllegalArgumentException("rule cannot be null");
+        }
+        mCache.put(rule, new EventRecurrenceSnapshot(er));
+    }
+
+    public int hitCount() {
+        return mCache.hitCount();
+    }
+
+    public int missCount() {
+        return mCache.missCount();
+    }
+
+    public int evictionCount() {
+        return mCache.evictionCount();
+    }
+
+    public int size() {
+        return mCache.size();
+    }
+
+    public int maxSize() {
+        return mCache.maxSize();
+    }
+
+    public void evictAll() {
+        mCache.evictAll();
+    }
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import android.os.Parcel;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary encoding of the fields set by {@link EventRecurrence#parse(String)}.
+ * <p/>
+ * Layout: a version byte, a varint with one bit per field that is present,
+ * the FREQ byte, then each present field in order. Integers are zig-zag
+ * varints, so small values - which is almost all of them - take one byte.
+ * A BYDAY list without ordinals, in SU..SA order, is stored as a single
+ * weekday bitmask byte; other BYDAY lists store one varint per entry
+ * holding the ordinal & the weekday.
+ * <p/>
+ * {@link #writeRule(Parcel, String)} & {@link #readRule(Parcel)} use this
+ * encoding for rule strings held in saved state. A decoded rule is added
+ * to {@link EventRecurrenceCache#getDefault()}, so the picker does not parse
+ * the restored string again.
+ */
+public final class EventRecurrenceCodec {
+
+    private static final byte VERSION = 1;
+
+    // Field bits
+    private static final int HAS_UNTIL = 1;
+    private static final int HAS_COUNT = 1 << 1;
+    private static final int HAS_INTERVAL = 1 << 2;
+    private static final int HAS_WKST = 1 << 3;
+    private static final int HAS_BYSECOND = 1 << 4;
+    private static final int HAS_BYMINUTE = 1 << 5;
+    private static final int HAS_BYHOUR = 1 << 6;
+    private static final int HAS_BYDAY_MASK = 1 << 7;
+    private static final int HAS_BYDAY_LIST = 1 << 8;
+    private static final int HAS_BYMONTHDAY = 1 << 9;
+    private static final int HAS_BYYEARDAY = 1 << 10;
+    private static final int HAS_BYWEEKNO = 1 << 11;
+    private static final int HAS_BYMONTH = 1 << 12;
+    private static final int HAS_BYSETPOS = 1 << 13;
+
+    // Parcel forms of a rule string
+    private static final int PARCEL_NULL = 0;
+    private static final int PARCEL_STRING = 1;
+    private static final int PARCEL_BINARY = 2;
+
+    // Max bytes per varint
+    private static final int MAX_VARINT_SIZE = 5;
+
+    private EventRecurrenceCodec() {
+        // no instances
+    }
+
+    /**
+     * @return an upper bound on the number of bytes {@link #encode(EventRecurrence, ByteBuffer)}
+     * writes for 'er'
+     */
+    public static int maxEncodedSize(EventRecurrence er) {
+        int values = 3 + er.bysecondCount + er.byminuteCount + er.byhourCount
+                + er.bydayCount + er.bymonthdayCount + er.byyeardayCount
+                + er.byweeknoCount + er.bymonthCount + er.bysetposCount;
+        if (er.until != null) {
+            values += 1 + er.until.length();
+        }
+        // version, FREQ & WKST bytes, the BY* list sizes & the field bits
+        return 3 + 9 * MAX_VARINT_SIZE + values * MAX_VARINT_SIZE;
+    }
+
+    /**
+     * Writes 'er' to 'out', starting at its position.
+     *
+     * @throws java.nio.BufferOverflowException if 'out' does not have enough room;
+     *                                          see {@link #maxEncodedSize(EventRecurrence)}
+     */
+    public static void encode(EventRecurrence er, ByteBuffer out) {
+        final boolean byDayMask = isByDayMask(er);
+
+        int fields = 0;
+        if (er.until != null) {
+            fields |= HAS_UNTIL;
+        }
+        if (er.count != 0) {
+            fields |= HAS_COUNT;
+        }
+        if (er.interval != 0) {
+            fields |= HAS_INTERVAL;
+        }
+        if (er.wkst != 0) {
+            fields |= HAS_WKST;
+        }
+        if (er.bysecondCount > 0) {
+            fields |= HAS_BYSECOND;
+        }
+        if (er.byminuteCount > 0) {
+            fields |= HAS_BYMINUTE;
+        }
+        if (er.byhourCount > 0) {
+            fields |= HAS_BYHOUR;
+        }
+        if (er.bydayCount > 0) {
+            fields |= byDayMask ? HAS_BYDAY_MASK : HAS_BYDAY_LIST;
+        }
+        if (er.bymonthdayCount > 0) {
+            fields |= HAS_BYMONTHDAY;
+        }
+        if (er.byyeardayCount > 0) {
+            fields |= HAS_BYYEARDAY;
+        }
+        if (er.byweeknoCount > 0) {
+            fields |= HAS_BYWEEKNO;
+        }
+        if (er.bymonthCount > 0) {
+            fields |= HAS_BYMONTH;
+        }
+        if (er.bysetposCount > 0) {
+            fields |= HAS_BYSETPOS;
+        }
+
+        out.put(VERSION);
+        writeVarint(out, fields);
+        out.put((byte) er.freq);
+
+        if ((fields & HAS_UNTIL) != 0) {
+            final String until = er.until;
+            final int length = until.length();
+            writeVarint(out, length);
+            for (int i = 0; i < length; i++) {
+                writeVarint(out, until.charAt(i));
+            }
+        }
+        if ((fields & HAS_COUNT) != 0) {
+            writeZigZag(out, er.count);
+        }
+        if ((fields & HAS_INTERVAL) != 0) {
+            writeZigZag(out, er.interval);
+        }
+        if ((fields & HAS_WKST) != 0) {
+            out.put((byte) dayIndex(er.wkst));
+        }
+
+        writeList(out, er.bysecond, er.bysecondCount);
+        writeList(out, er.byminute, er.byminuteCount);
+        writeList(out, er.byhour, er.byhourCount);
+
+        if ((fields & HAS_BYDAY_MASK) != 0) {
+            int mask = 0;
+            for (int i = 0; i < er.bydayCount; i++) {
+                mask |= 1 << dayIndex(er.byday[i]);
+            }
+            out.put((byte) mask);
+        } else if ((fields & HAS_BYDAY_LIST) != 0) {
+            writeVarint(out, er.bydayCount);
+            for (int i = 0; i < er.bydayCount; i++) {
+                // The weekday takes the low 3 bits
+                writeVarint(out, (zigZag(er.bydayNum[i]) << 3) | dayIndex(er.byday[i]));
+            }
+        }
+
+        writeList(out, er.bymonthday, er.bymonthdayCount);
+        writeList(out, er.byyearday, er.byyeardayCount);
+        writeList(out, er.byweekno, er.byweeknoCount);
+        writeList(out, er.bymonth, er.bymonthCount);
+        writeList(out, er.bysetpos, er.bysetposCount);
+    }
+
+    /**
+     * @return the encoding of 'er'
+     */
+    public static byte[] encode(EventRecurrence er) {
+        final ByteBuffer out = ByteBuffer.allocate(maxEncodedSize(er));
+        encode(er, out);
+
+        final byte[] bytes = new byte[out.position()];
+        out.flip();
+        out.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Reads a rule written by {@link #encode(EventRecurrence, ByteBuffer)} into 'out',
+     * leaving it in the same state as if it had parsed the rule.
+     * out.startDate is left untouched.
+     *
+     * @throws EventRecurrence.InvalidFormatException if 'in' does not hold an encoded rule
+     */
+    public static void decode(ByteBuffer in, EventRecurrence out) {
+        try {
+            if (in.get() != VERSION) {
+                throw new EventRecurrence.InvalidFormatException("Unknown encoding version");
+            }
+
+            final int fields = readVarint(in);
+            out.freq = in.get();
+            if (out.freq < EventRecurrence.SECONDLY || out.freq > EventRecurrence.YEARLY) {
+                throw new EventRecurrence.InvalidFormatException("Invalid FREQ: " + out.freq);
+            }
+
+            if ((fields & HAS_UNTIL) != 0) {
+                final int length = readVarint(in);
+                if (length < 0 || length > in.remaining()) {
+                    throw new EventRecurrence.InvalidFormatException("Invalid UNTIL length");
+                }
+                final char[] chars = new char[length];
+                for (int i = 0; i < length; i++) {
+                    chars[i] = (char) readVarint(in);
+                }
+                out.until = new String(chars);
+            } else {
+                out.until = null;
+            }
+
+            out.count = (fields & HAS_COUNT) != 0 ? readZigZag(in) : 0;
+            out.interval = (fields & HAS_INTERVAL) != 0 ? readZigZag(in) : 0;
+            out.wkst = (fields & HAS_WKST) != 0 ? indexToDay(in.get()) : 0;
+
+            out.bysecondCount = readCount(in, fields, HAS_BYSECOND);
+            out.bysecond = readValues(in, out.bysecond, out.bysecondCount);
+            out.byminuteCount = readCount(in, fields, HAS_BYMINUTE);
+            out.byminute = readValues(in, out.byminute, out.byminuteCount);
+            out.byhourCount = readCount(in, fields, HAS_BYHOUR);
+            out.byhour = readValues(in, out.byhour, out.byhourCount);
+
+            if ((fields & HAS_BYDAY_MASK) != 0) {
+                readByDayMask(in, out);
+            } else {
+                out.bydayCount = readCount(in, fields, HAS_BYDAY_LIST);
+                readByDayList(in, out);
+            }
+
+            out.bymonthdayCount = readCount(in, fields, HAS_BYMONTHDAY);
+            out.bymonthday = readValues(in, out.bymonthday, out.bymonthdayCount);
+            out.byyeardayCount = readCount(in, fields, HAS_BYYEARDAY);
+            out.byyearday = readValues(in, out.byyearday, out.byyeardayCount);
+            out.byweeknoCount = readCount(in, fields, HAS_BYWEEKNO);
+            out.byweekno = readValues(in, out.byweekno, out.byweeknoCount);
+            out.bymonthCount = readCount(in, fields, HAS_BYMONTH);
+            out.bymonth = readValues(in, out.bymonth, out.bymonthCount);
+            out.bysetposCount = readCount(in, fields, HAS_BYSETPOS);
+            out.bysetpos = readValues(in, out.bysetpos, out.bysetposCount);
+        } catch (BufferUnderflowException bue) {
+            throw new EventRecurrence.InvalidFormatException("Truncated encoding");
+        }
+    }
+
+    /**
+     * @return the decoded rule
+     * @throws EventRecurrence.InvalidFormatException if 'bytes' do not hold an encoded rule
+     */
+    public static EventRecurrence decode(byte[] bytes) {
+        final EventRecurrence er = new EventRecurrence();
+        decode(ByteBuffer.wrap(bytes), er);
+        return er;
+    }
+
+    /**
+     * Writes a rule string to 'dest'. Rules that survive a parse & toString()
+     * round trip unchanged - such as the ones built by the recurrence picker -
+     * are written in binary form. Others are written as strings, so that
+     * {@link #readRule(Parcel)} always returns the exact string written.
+     *
+     * @param rule the rule, may be null or empty
+     */
+    public static void writeRule(Parcel dest, String rule) {
+        if (rule == null) {
+            dest.writeInt(PARCEL_NULL);
+            return;
+        }
+
+        EventRecurrence er = null;
+        if (rule.length() > 0) {
+            try {
+                er = EventRecurrenceCache.getDefault().get(rule).toEventRecurrence();
+            } catch (EventRecurrence.InvalidFormatException ife) {
+                // Written as a string
+            }
+        }
+
+        if (er != null && rule.equals(er.toString())) {
+            dest.writeInt(PARCEL_BINARY);
+            dest.writeByteArray(encode(er));
+        } else {
+            dest.writeInt(PARCEL_STRING);
+            dest.writeString(rule);
+        }
+    }
+
+    /**
+     * Reads a rule string written by {@link #writeRule(Parcel, String)}.
+     */
+    public static String readRule(Parcel in) {
+        switch (in.readInt()) {
+            case PARCEL_NULL:
+                return null;
+            case PARCEL_BINARY: {
+                final EventRecurrence er = decode(in.createByteArray());
+                final String rule = er.toString();
+                EventRecurrenceCache.getDefault().put(rule, er);
+                return rule;
+            }
+            default:
+                return in.readString();
+        }
+    }
+
+    // A BYDAY list fits a mask if it has no ordinals & is in SU..SA order
+    private static boolean isByDayMask(EventRecurrence er) {
+        int previous = -1;
+        for (int i = 0; i < er.bydayCount; i++) {
+            final int index = dayIndex(er.byday[i]);
+            if (er.bydayNum[i] != 0 || index <= previous) {
+                return false;
+            }
+            previous = index;
+        }
+        return true;
+    }
+
+    private static void readByDayMask(ByteBuffer in, EventRecurrence out) {
+        final int mask = in.get() & 0x7f;
+        final int count = Integer.bitCount(mask);
+        out.bydayCount = count;
+        out.byday = EventRecurrence.ensureCapacity(out.byday, count);
+        out.bydayNum = EventRecurrence.ensureCapacity(out.bydayNum, count);
+
+        int j = 0;
+        for (int i = 0; i < 7; i++) {
+            if ((mask & (1 << i)) != 0) {
+                out.byday[j] = indexToDay(i);
+                out.bydayNum[j] = 0;
+                j++;
+            }
+        }
+    }
+
+    private static void readByDayList(ByteBuffer in, EventRecurrence out) {
+        final int count = out.bydayCount;
+        if (count == 0) {
+            return;
+        }
+
+        out.byday = EventRecurrence.ensureCapacity(out.byday, count);
+        out.bydayNum = EventRecurrence.ensureCapacity(out.bydayNum, count);
+        for (int i = 0; i < count; i++) {
+            final int value = readVarint(in);
+            out.byday[i] = indexToDay(value & 7);
+            out.bydayNum[i] = unZigZag(value >>> 3);
+        }
+    }
+
+    private static void writeList(ByteBuffer out, int[] values, int count) {
+        if (count > 0) {
+            writeVarint(out, count);
+            for (int i = 0; i < count; i++) {
+                writeZigZag(out, values[i]);
+            }
+        }
+    }
+
+    private static int readCount(ByteBuffer in, int fields, int field) {
+        if ((fields & field) == 0) {
+            return 0;
+        }
+
+        // Every value takes at least one byte
+        final int count = readVarint(in);
+        if (count <= 0 || count > in.remaining()) {
+            throw new EventRecurrence.InvalidFormatException("Invalid list size: " + count);
+        }
+        return count;
+    }
+
+    // Like the parser, leaves the array alone if the list is empty
+    private static int[] readValues(ByteBuffer in, int[] values, int count) {
+        if (count == 0) {
+            return values;
+        }
+
+        values = EventRecurrence.ensureCapacity(values, count);
+        for (int i = 0; i < count; i++) {
+            values[i] = readZigZag(in);
+        }
+        return values;
+    }
+
+    /**
+     * @return 0 for SU ... 6 for SA
+     */
+    private static int dayIndex(int day) {
+        final int index = Integer.numberOfTrailingZeros(day) - 16;
+        if (index < 0 || index > 6 || Integer.bitCount(day) != 1) {
+            throw new IllegalArgumentException("bad day argument: " + day);
+        }
+        return index;
+    }
+
+    private static int indexToDay(int index) {
+        if (index < 0 || index > 6) {
+            throw new EventRecurrence.InvalidFormatException("Invalid weekday: " + index);
+        }
+        return EventRecurrence.SU << index;
+    }
+
+    private static void writeVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new EventRecurrence.InvalidFormatException("Malformed varint");
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeZigZag(ByteBuffer out, int value) {
+        writeVarint(out, zigZag(value));
+    }
+
+    private static int readZigZag(ByteBuffer in) {
+        return unZigZag(readVarint(in));
+    }
+}
@@ -17,7 +17,10 @@
 package com.appeaser.sublimepickerlibrary.recurrencepicker;
 
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.Resources;
+import android.provider.Settings;
+import android.support.v4.util.LruCache;
 import android.text.format.DateUtils;
 import android.text.format.Time;
 import android.util.TimeFormatException;
@@ -25,14 +28,137 @@ import android.util.TimeFormatException;
 import com.appeaser.sublimepickerlibrary.R;
 
 import java.util.Calendar;
+import java.util.TimeZone;
 
 public class EventRecurrenceFormatter {
 
-    private static int[] mMonthRepeatByDayOfWeekIds;
-    private static String[][] mMonthRepeatByDayOfWeekStrs;
+    private static final int REPEAT_STRING_CACHE_SIZE = 128;
 
-    public static String getRepeatString(Context context, Resources r, EventRecurrence recurrence,
+    private static final int[] MONTH_REPEAT_BY_DAY_OF_WEEK_IDS = {
+            R.array.repeat_by_nth_sun,
+            R.array.repeat_by_nth_mon,
+            R.array.repeat_by_nth_tues,
+            R.array.repeat_by_nth_wed,
+            R.array.repeat_by_nth_thurs,
+            R.array.repeat_by_nth_fri,
+            R.array.repeat_by_nth_sat
+    };
+
+    // Strings for the current configuration. Replaced when it changes.
+    private static volatile ConfigStrings sStrings;
+
+    /**
+     * Resources & formatted repeat strings for a single configuration.
+     */
+    private static final class ConfigStrings {
+        // A copy; the Resources' own instance is updated in place
+        final Configuration configuration;
+
+        // Loaded per weekday, on first use
+        final String[][] monthRepeatByDayOfWeekStrs = new String[7][];
+
+        // Keyed by rule, start date & timezone (where they matter) &
+        // includeEndString
+        final LruCache<String, String> repeatStrings =
+                new LruCache<>(REPEAT_STRING_CACHE_SIZE);
+
+        ConfigStrings(Configuration configuration) {
+            this.configuration = new Configuration(configuration);
+        }
+    }
+
+    /**
+     * Describes 'recurrence' in words, e.g. "Weekly on Mon, Wed".
+     * <p/>
+     * Results are cached, so repeated calls for the same rule (e.g. while
+     * scrolling a list of events) return the cached string. The cache is
+     * dropped whenever the configuration of 'r' changes (locale, font scale,
+     * orientation...). Strings showing an UNTIL date also key on the default
+     * timezone & the system date format setting.
+     *
+     * @return the description, or null if the rule cannot be described
+     */
+    public static String getRepeatString(Context context, Resources r,
+                                         EventRecurrence recurrence,
                                          boolean includeEndString) {
+        final LruCache<String, String> cache = getStrings(r).repeatStrings;
+        final String key = getCacheKey(context, recurrence, includeEndString);
+
+        String repeatString = cache.get(key);
+        if (repeatString == null) {
+            repeatString = formatRepeatString(context, r, recurrence, includeEndString);
+            if (repeatString != null) {
+                cache.put(key, repeatString);
+            }
+        }
+        return repeatString;
+    }
+
+    /**
+     * Drops all cached strings, e.g. to free memory. Not needed for
+     * correctness.
+     */
+    public static void invalidateCache() {
+        sStrings = null;
+    }
+
+    /**
+     * @return number of {@link #getRepeatString(Context, Resources, EventRecurrence, boolean)}
+     * calls answered from the cache, since the configuration last changed
+     */
+    public static int getCacheHitCount() {
+        final ConfigStrings strings = sStrings;
+        return strings == null ? 0 : strings.repeatStrings.hitCount();
+    }
+
+    /**
+     * @return number of {@link #getRepeatString(Context, Resources, EventRecurrence, boolean)}
+     * calls that had to format the string, since the configuration last changed
+     */
+    public static int getCacheMissCount() {
+        final ConfigStrings strings = sStrings;
+        return strings == null ? 0 : strings.repeatStrings.missCount();
+    }
+
+    private static ConfigStrings getStrings(Resources r) {
+        final Configuration configuration = r.getConfiguration();
+        ConfigStrings strings = sStrings;
+        // diff() covers everything resources are selected by
+        if (strings == null || strings.configuration.diff(configuration) != 0) {
+            strings = new ConfigStrings(configuration);
+            sStrings = strings;
+        }
+        return strings;
+    }
+
+    private static String getCacheKey(Context context, EventRecurrence recurrence,
+                                      boolean includeEndString) {
+        final StringBuilder key = new StringBuilder(64);
+        recurrence.writeTo(key);
+        key.append(includeEndString ? "|E" : "|-");
+
+        // UNTIL is shown as a date in the default timezone. Older releases
+        // format it by the user's date format setting.
+        if (includeEndString && recurrence.until != null) {
+            key.append('|').append(TimeZone.getDefault().getID())
+                    .append('|').append(Settings.System.getString(context.getContentResolver(),
+                    Settings.System.DATE_FORMAT));
+        }
+
+        // The start date is only used for these
+        final Time startDate = recurrence.startDate;
+        if (startDate != null
+                && ((recurrence.freq == EventRecurrence.WEEKLY && recurrence.bydayCount == 0)
+                || (recurrence.freq == EventRecurrence.MONTHLY && recurrence.bydayCount == 1))) {
+            key.append('|').append(startDate.weekDay)
+                    .append('|').append((startDate.monthDay - 1) / 7);
+        }
+        return key.toString();
+    }
+
+    private static String formatRepeatString(Context context, Resources r,
+                                             EventRecurrence recurrence,
+                                             boolean includeEndString) {
         String endString = "";
         if (includeEndString) {
             StringBuilder sb = new StringBuilder();
@@ -106,13 +232,11 @@ public class EventRecurrenceFormatter {
                         interval, interval);
                 if (recurrence.bydayCount == 1) {
                     int weekday = recurrence.startDate.weekDay;
-                    // Cache this stuff so we won't have to redo work again later.
-                    cacheMonthRepeatStrings(r, weekday);
                     int dayNumber = (recurrence.startDate.monthDay - 1) / 7;
                     StringBuilder sb = new StringBuilder();
                     sb.append(monthlyStart);
                     sb.append(" (");
-                    sb.append(mMonthRepeatByDayOfWeekStrs[weekday][dayNumber]);
+                    sb.append(getMonthRepeatStrings(r, weekday)[dayNumber]);
                     sb.append(")");
                     sb.append(endString);
                     return sb.toString();
@@ -132,24 +256,13 @@ public class EventRecurrenceFormatter {
         return null;
     }
 
-    private static void cacheMonthRepeatStrings(Resources r, int weekday) {
-        if (mMonthRepeatByDayOfWeekIds == null) {
-            mMonthRepeatByDayOfWeekIds = new int[7];
-            mMonthRepeatByDayOfWeekIds[0] = R.array.repeat_by_nth_sun;
-            mMonthRepeatByDayOfWeekIds[1] = R.array.repeat_by_nth_mon;
-            mMonthRepeatByDayOfWeekIds[2] = R.array.repeat_by_nth_tues;
-            mMonthRepeatByDayOfWeekIds[3] = R.array.repeat_by_nth_wed;
-            mMonthRepeatByDayOfWeekIds[4] = R.array.repeat_by_nth_thurs;
-            mMonthRepeatByDayOfWeekIds[5] = R.array.repeat_by_nth_fri;
-            mMonthRepeatByDayOfWeekIds[6] = R.array.repeat_by_nth_sat;
-        }
-        if (mMonthRepeatByDayOfWeekStrs == null) {
-            mMonthRepeatByDayOfWeekStrs = new String[7][];
-        }
-        if (mMonthRepeatByDayOfWeekStrs[weekday] == null) {
-            mMonthRepeatByDayOfWeekStrs[weekday] =
-                    r.getStringArray(mMonthRepeatByDayOfWeekIds[weekday]);
+    private static String[] getMonthRepeatStrings(Resources r, int weekday) {
+        // Cache this stuff so we won't have to redo work again later.
+        final String[][] strs = getStrings(r).monthRepeatByDayOfWeekStrs;
+        if (strs[weekday] == null) {
+            strs[weekday] = r.getStringArray(MONTH_REPEAT_BY_DAY_OF_WEEK_IDS[weekday]);
         }
+        return strs[weekday];
     }
 
     /**
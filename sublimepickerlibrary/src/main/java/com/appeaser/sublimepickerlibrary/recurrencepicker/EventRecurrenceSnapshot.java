@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import java.util.Arrays;
+
+/**
+ * Immutable copy of the rule fields of an {@link EventRecurrence} - i.e.
+ * everything set by {@link EventRecurrence#parse(String)}. startDate is
+ * not part of the snapshot.
+ * <p/>
+ * The hash is computed once, and BY* lists are trimmed to their counts,
+ * so snapshots are cheap to use as HashMap/HashSet keys.
+ */
+public final class EventRecurrenceSnapshot {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final int mFreq;
+    private final String mUntil;
+    private final int mCount;
+    private final int mInterval;
+    private final int mWkst;
+
+    private final int[] mBySecond;
+    private final int[] mByMinute;
+    private final int[] mByHour;
+    private final int[] mByDay;
+    private final int[] mByDayNum;
+    private final int[] mByMonthDay;
+    private final int[] mByYearDay;
+    private final int[] mByWeekNo;
+    private final int[] mByMonth;
+    private final int[] mBySetPos;
+
+    private final int mHashCode;
+
+    public EventRecurrenceSnapshot(EventRecurrence er) {
+        mFreq = er.freq;
+        mUntil = er.until;
+        mCount = er.count;
+        mInterval = er.interval;
+        mWkst = er.wkst;
+
+        mBySecond = trim(er.bysecond, er.bysecondCount);
+        mByMinute = trim(er.byminute, er.byminuteCount);
+        mByHour = trim(er.byhour, er.byhourCount);
+        mByDay = trim(er.byday, er.bydayCount);
+        mByDayNum = trim(er.bydayNum, er.bydayCount);
+        mByMonthDay = trim(er.bymonthday, er.bymonthdayCount);
+        mByYearDay = trim(er.byyearday, er.byyeardayCount);
+        mByWeekNo = trim(er.byweekno, er.byweeknoCount);
+        mByMonth = trim(er.bymonth, er.bymonthCount);
+        mBySetPos = trim(er.bysetpos, er.bysetposCount);
+
+        mHashCode = er.hashCode();
+    }
+
+    public int getFreq() {
+        return mFreq;
+    }
+
+    public String getUntil() {
+        return mUntil;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public int getInterval() {
+        return mInterval;
+    }
+
+    public int getWkst() {
+        return mWkst;
+    }
+
+    /**
+     * Copies the snapshot into 'out', leaving it in the same state as if it had
+     * parsed the original rule. out.startDate is left untouched.
+     */
+    public void copyTo(EventRecurrence out) {
+        out.freq = mFreq;
+        out.until = mUntil;
+        out.count = mCount;
+        out.interval = mInterval;
+        out.wkst = mWkst;
+
+        out.bysecondCount = mBySecond.length;
+        out.bysecond = copy(mBySecond, out.bysecond);
+        out.byminuteCount = mByMinute.length;
+        out.byminute = copy(mByMinute, out.byminute);
+        out.byhourCount = mByHour.length;
+        out.byhour = copy(mByHour, out.byhour);
+        out.bydayCount = mByDay.length;
+        out.byday = copy(mByDay, out.byday);
+        out.bydayNum = copy(mByDayNum, out.bydayNum);
+        out.bymonthdayCount = mByMonthDay.length;
+        out.bymonthday = copy(mByMonthDay, out.bymonthday);
+        out.byyeardayCount = mByYearDay.length;
+        out.byyearday = copy(mByYearDay, out.byyearday);
+        out.byweeknoCount = mByWeekNo.length;
+        out.byweekno = copy(mByWeekNo, out.byweekno);
+        out.bymonthCount = mByMonth.length;
+        out.bymonth = copy(mByMonth, out.bymonth);
+        out.bysetposCount = mBySetPos.length;
+        out.bysetpos = copy(mBySetPos, out.bysetpos);
+    }
+
+    /**
+     * @return a new EventRecurrence holding this rule, with no startDate
+     */
+    public EventRecurrence toEventRecurrence() {
+        EventRecurrence er = new EventRecurrence();
+        copyTo(er);
+        return er;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof EventRecurrenceSnapshot)) {
+            return false;
+        }
+
+        EventRecurrenceSnapshot other = (EventRecurrenceSnapshot) obj;
+        return mHashCode == other.mHashCode &&
+                mFreq == other.mFreq &&
+                mCount == other.mCount &&
+                mInterval == other.mInterval &&
+                mWkst == other.mWkst &&
+                (mUntil == null ? other.mUntil == null : mUntil.equals(other.mUntil)) &&
+                Arrays.equals(mByDay, other.mByDay) &&
+                Arrays.equals(mByDayNum, other.mByDayNum) &&
+                Arrays.equals(mByMonthDay, other.mByMonthDay) &&
+                Arrays.equals(mByMonth, other.mByMonth) &&
+                Arrays.equals(mBySetPos, other.mBySetPos) &&
+                Arrays.equals(mByYearDay, other.mByYearDay) &&
+                Arrays.equals(mByWeekNo, other.mByWeekNo) &&
+                Arrays.equals(mByHour, other.mByHour) &&
+                Arrays.equals(mByMinute, other.mByMinute) &&
+                Arrays.equals(mBySecond, other.mBySecond);
+    }
+
+    /**
+     * Same value as {@link EventRecurrence#hashCode()} of the instance
+     * this snapshot was taken from.
+     */
+    @Override
+    public int hashCode() {
+        return mHashCode;
+    }
+
+    @Override
+    public String toString() {
+        return toEventRecurrence().toString();
+    }
+
+    private static int[] trim(int[] array, int count) {
+        if (count == 0) {
+            return EMPTY;
+        }
+        // Lists with entries may still lack the parallel bydayNum array
+        return array == null ? new int[count] : Arrays.copyOf(array, count);
+    }
+
+    private static int[] copy(int[] src, int[] dst) {
+        if (src.length == 0) {
+            return dst;
+        }
+        if (dst == null || dst.length < src.length) {
+            dst = new int[src.length];
+        }
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return dst;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Streams the recurrence properties of VEVENTs out of an iCalendar (RFC 5545)
+ * file - BEGIN/END:VEVENT, DTSTART, RRULE, RDATE & EXDATE. Other properties
+ * are skipped.
+ * <p/>
+ * Input is read in chunks from a channel, or straight from a ByteBuffer
+ * (e.g. a memory-mapped file), so memory use is bounded by the longest
+ * line, not the file. Folded lines are unfolded into a reusable char
+ * buffer, and RRULEs are parsed from that buffer into a single reusable
+ * {@link EventRecurrence} - no String is created per line.
+ * <p/>
+ * Dates are reported as epoch days (see {@link EpochDayUtils}), taken
+ * from the value as written; UTC & TZID values are not converted. RDATE
+ * periods are reported by their start.
+ * <p/>
+ * Not thread-safe.
+ */
+public class ICalendarRecurrenceReader {
+
+    /**
+     * Receives the recurrence properties, in file order.
+     */
+    public interface Handler {
+        void onEventStart();
+
+        /**
+         * @param epochDay    the date of DTSTART
+         * @param secondOfDay its time as seconds since midnight, or -1 for a DATE value
+         */
+        void onStartDate(int epochDay, int secondOfDay);
+
+        /**
+         * @param rule the parsed RRULE. Reused for the next rule - copy it to keep it.
+         */
+        void onRule(EventRecurrence rule);
+
+        /**
+         * Called for each date of an RDATE (exclude == false) or EXDATE (exclude == true).
+         */
+        void onDate(boolean exclude, int epochDay);
+
+        void onEventEnd();
+
+        /**
+         * A recurrence property could not be parsed & was skipped.
+         *
+         * @param line the (1-based) line it started on
+         */
+        void onError(int line, String message);
+    }
+
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    // Longer logical lines are skipped
+    public static final int DEFAULT_MAX_LINE_LENGTH = 64 * 1024;
+
+    private static final int STATE_LINE_START = 0;
+    private static final int STATE_IN_LINE = 1;
+    private static final int STATE_LINE_END = 2;
+
+    private final Handler mHandler;
+    private final int mMaxLineLength;
+
+    private final EventRecurrence mRule = new EventRecurrence();
+
+    // The current logical line. mLineView wraps mLine, for the parser.
+    private char[] mLine = new char[256];
+    private CharBuffer mLineView = CharBuffer.wrap(mLine);
+    private int mLineLength;
+    private boolean mLineOverflow;
+    private int mLineNumber;
+    private int mPhysicalLine;
+
+    private int mState = STATE_LINE_START;
+
+    public ICalendarRecurrenceReader(Handler handler) {
+        this(handler, DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    public ICalendarRecurrenceReader(Handler handler, int maxLineLength) {
+        if (handler == null) {
+            throw new IllegalArgumentException("handler cannot be null");
+        }
+        if (maxLineLength <= 0) {
+            throw new IllegalArgumentException("maxLineLength must be positive");
+        }
+        mHandler = handler;
+        mMaxLineLength = maxLineLength;
+    }
+
+    /**
+     * Reads 'channel' to its end, reporting to the handler as it goes.
+     * The channel is not closed.
+     */
+    public void read(ReadableByteChannel channel) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            feed(buffer);
+            buffer.clear();
+        }
+        finish();
+    }
+
+    /**
+     * Reads the remaining bytes of 'data', e.g. a memory-mapped file, as a
+     * complete file.
+     */
+    public void read(ByteBuffer data) {
+        feed(data);
+        finish();
+    }
+
+    /**
+     * Consumes the remaining bytes of 'data'. Input may be split anywhere;
+     * call {@link #finish()} after the last chunk.
+     */
+    public void feed(ByteBuffer data) {
+        while (data.hasRemaining()) {
+            final byte b = data.get();
+            switch (mState) {
+                case STATE_LINE_END:
+                    if (b == ' ' || b == '\t') {
+                        // Folded: the line continues, minus this whitespace
+                        mPhysicalLine++;
+                        mState = STATE_IN_LINE;
+                        continue;
+                    }
+                    dispatchLine();
+                    // Fall through - 'b' starts a new line
+                case STATE_LINE_START:
+                    mPhysicalLine++;
+                    mLineNumber = mPhysicalLine;
+                    mLineLength = 0;
+                    mLineOverflow = false;
+                    mState = STATE_IN_LINE;
+                    // Fall through
+                case STATE_IN_LINE:
+                    if (b == '\n') {
+                        mState = STATE_LINE_END;
+                    } else if (b != '\r') {
+                        append(b);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Ends the input, reporting the last line.
+     */
+    public void finish() {
+        if (mState != STATE_LINE_START) {
+            dispatchLine();
+        }
+        mState = STATE_LINE_START;
+        mPhysicalLine = 0;
+    }
+
+    private void append(byte b) {
+        if (mLineLength == mMaxLineLength) {
+            mLineOverflow = true;
+            return;
+        }
+        if (mLineLength == mLine.length) {
+            final char[] grown = new char[Math.min(mLineLength * 2, mMaxLineLength)];
+            System.arraycopy(mLine, 0, grown, 0, mLineLength);
+            mLine = grown;
+            mLineView = CharBuffer.wrap(grown);
+        }
+        // Recurrence properties are ASCII. Other bytes only appear in
+        // properties that are skipped, so need not be decoded.
+        mLine[mLineLength++] = (char) (b & 0xff);
+    }
+
+    private void dispatchLine() {
+        final char[] line = mLine;
+        final int length = mLineLength;
+
+        // The name ends at the first ';' (parameters) or ':' (value)
+        int nameEnd = 0;
+        while (nameEnd < length && line[nameEnd] != ';' && line[nameEnd] != ':') {
+            nameEnd++;
+        }
+
+        final int property = getProperty(line, nameEnd);
+        if (property == PROPERTY_OTHER) {
+            return;
+        }
+        if (mLineOverflow) {
+            mHandler.onError(mLineNumber, "Line longer than " + mMaxLineLength + " characters");
+            return;
+        }
+
+        final int valueStart = findValue(line, nameEnd, length);
+        if (valueStart < 0) {
+            mHandler.onError(mLineNumber, "Missing value");
+            return;
+        }
+
+        switch (property) {
+            case PROPERTY_BEGIN:
+                if (equalsIgnoreCase(line, valueStart, length, "VEVENT")) {
+                    mHandler.onEventStart();
+                }
+                break;
+            case PROPERTY_END:
+                if (equalsIgnoreCase(line, valueStart, length, "VEVENT")) {
+                    mHandler.onEventEnd();
+                }
+                break;
+            case PROPERTY_RRULE:
+                try {
+                    mRule.parse(mLineView, valueStart, length);
+                } catch (EventRecurrence.InvalidFormatException ife) {
+                    mHandler.onError(mLineNumber, ife.getMessage());
+                    return;
+                }
+                mHandler.onRule(mRule);
+                break;
+            default:
+                parseDates(property, valueStart, length);
+                break;
+        }
+    }
+
+    private void parseDates(int property, int start, int end) {
+        final char[] line = mLine;
+        int valueStart = start;
+        while (valueStart < end) {
+            int valueEnd = valueStart;
+            while (valueEnd < end && line[valueEnd] != ',') {
+                valueEnd++;
+            }
+
+            // A PERIOD is "start/end" or "start/duration"
+            int dateEnd = valueStart;
+            while (dateEnd < valueEnd && line[dateEnd] != '/') {
+                dateEnd++;
+            }
+
+            if (!UntilDate.isValid(mLineView, valueStart, dateEnd)) {
+                mHandler.onError(mLineNumber, "Invalid date: "
+                        + new String(line, valueStart, valueEnd - valueStart));
+            } else {
+                final int epochDay = UntilDate.parseEpochDay(mLineView, valueStart);
+                if (property == PROPERTY_DTSTART) {
+                    final int secondOfDay = UntilDate.hasTime(valueStart, dateEnd) ?
+                            UntilDate.parseSecondOfDay(mLineView, valueStart) : -1;
+                    mHandler.onStartDate(epochDay, secondOfDay);
+                    return;
+                }
+                mHandler.onDate(property == PROPERTY_EXDATE, epochDay);
+            }
+            valueStart = valueEnd + 1;
+        }
+    }
+
+    /**
+     * @return index of the first value character after the ':' that ends the
+     * name & parameters, or -1 if there is none
+     */
+    private static int findValue(char[] line, int from, int end) {
+        boolean quoted = false;
+        for (int i = from; i < end; i++) {
+            final char c = line[i];
+            if (c == '"') {
+                // Parameter values may be quoted, & may then hold ':'
+                quoted = !quoted;
+            } else if (c == ':' && !quoted) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static final int PROPERTY_OTHER = 0;
+    private static final int PROPERTY_BEGIN = 1;
+    private static final int PROPERTY_END = 2;
+    private static final int PROPERTY_DTSTART = 3;
+    private static final int PROPERTY_RRULE = 4;
+    private static final int PROPERTY_RDATE = 5;
+    private static final int PROPERTY_EXDATE = 6;
+
+    private static int getProperty(char[] line, int nameEnd) {
+        switch (nameEnd) {
+            case 3:
+                return equalsIgnoreCase(line, 0, 3, "END") ? PROPERTY_END : PROPERTY_OTHER;
+            case 5:
+                if (equalsIgnoreCase(line, 0, 5, "BEGIN")) {
+                    return PROPERTY_BEGIN;
+                } else if (equalsIgnoreCase(line, 0, 5, "RRULE")) {
+                    return PROPERTY_RRULE;
+                } else if (equalsIgnoreCase(line, 0, 5, "RDATE")) {
+                    return PROPERTY_RDATE;
+                }
+                return PROPERTY_OTHER;
+            case 6:
+                return equalsIgnoreCase(line, 0, 6, "EXDATE") ? PROPERTY_EXDATE : PROPERTY_OTHER;
+            case 7:
+                return equalsIgnoreCase(line, 0, 7, "DTSTART") ? PROPERTY_DTSTART : PROPERTY_OTHER;
+            default:
+                return PROPERTY_OTHER;
+        }
+    }
+
+    // 'upper' must be upper-case
+    private static boolean equalsIgnoreCase(char[] line, int start, int end, String upper) {
+        if (end - start != upper.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = line[i];
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            }
+            if (c != upper.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
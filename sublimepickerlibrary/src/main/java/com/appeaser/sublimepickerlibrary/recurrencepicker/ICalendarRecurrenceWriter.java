@@ -0,0 +1,373 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streams recurring VEVENTs out as iCalendar (RFC 5545) - the counterpart
+ * of {@link ICalendarRecurrenceReader}.
+ * <p/>
+ * Output goes through one fixed-size buffer straight to a channel; rules
+ * are written with {@link EventRecurrence#writeTo(Appendable)}, so no
+ * String is created per event. Lines are folded at 75 octets.
+ * <p/>
+ * DTSTART may be a DATE, or a DATE-TIME in floating (local) time or UTC.
+ * As RFC 5545 requires, the UNTIL of a rule & EXDATE/RDATE values are
+ * written with the same value type as the event's DTSTART, so write
+ * DTSTART first.
+ * <p/>
+ * Only the recurrence properties are written: callers needing a complete
+ * VEVENT (UID, DTSTAMP, ...) add them with {@link #writeProperty}.
+ * Not thread-safe.
+ */
+public class ICalendarRecurrenceWriter implements Flushable {
+
+    // Octets per line, excluding CRLF
+    private static final int MAX_LINE_LENGTH = 75;
+
+    // Value types of the current event's DTSTART
+    private static final int START_NONE = 0;
+    private static final int START_DATE = 1;
+    private static final int START_LOCAL = 2;
+    private static final int START_UTC = 3;
+
+    private final WritableByteChannel mChannel;
+    private final ByteBuffer mBuffer;
+
+    // Octets on the current line
+    private int mColumn;
+
+    private int mStartType = START_NONE;
+    private int mStartSecondOfDay;
+
+    // The UNTIL value of the rule being written, if it has one
+    private String mUntil;
+
+    // Folds lines as EventRecurrence.writeTo() appends to them
+    private final Appendable mLineAppender = new Appendable() {
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            // writeTo() appends the rule's own 'until' String
+            if (csq == mUntil && csq != null) {
+                writeUntil(mUntil);
+                return this;
+            }
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            for (int i = start; i < end; i++) {
+                append(csq.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            write(c);
+            return this;
+        }
+    };
+
+    public ICalendarRecurrenceWriter(WritableByteChannel channel) {
+        this(channel, ICalendarRecurrenceReader.DEFAULT_BUFFER_SIZE);
+    }
+
+    public ICalendarRecurrenceWriter(WritableByteChannel channel, int bufferSize) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel cannot be null");
+        }
+        if (bufferSize < MAX_LINE_LENGTH + 3) {
+            throw new IllegalArgumentException("bufferSize too small: " + bufferSize);
+        }
+        mChannel = channel;
+        mBuffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    public void beginEvent() throws IOException {
+        writeProperty("BEGIN", "VEVENT");
+        mStartType = START_NONE;
+    }
+
+    public void endEvent() throws IOException {
+        writeProperty("END", "VEVENT");
+        mStartType = START_NONE;
+    }
+
+    /**
+     * Writes DTSTART as a DATE value.
+     */
+    public void writeStartDate(int epochDay) throws IOException {
+        writeText("DTSTART;VALUE=DATE:");
+        writeDate(epochDay);
+        endLine();
+        mStartType = START_DATE;
+    }
+
+    /**
+     * Writes DTSTART as a DATE-TIME value in floating (local) time.
+     *
+     * @param secondOfDay seconds since midnight, or -1 for a DATE value
+     */
+    public void writeStartDate(int epochDay, int secondOfDay) throws IOException {
+        writeStartDate(epochDay, secondOfDay, false);
+    }
+
+    /**
+     * Writes DTSTART as a DATE-TIME value, in UTC or floating (local) time.
+     *
+     * @param secondOfDay seconds since midnight, or -1 for a DATE value
+     */
+    public void writeStartDate(int epochDay, int secondOfDay, boolean utc) throws IOException {
+        if (secondOfDay == -1) {
+            writeStartDate(epochDay);
+            return;
+        }
+        checkSecondOfDay(secondOfDay);
+
+        writeText("DTSTART:");
+        writeDateTime(epochDay, secondOfDay, utc);
+        endLine();
+        mStartType = utc ? START_UTC : START_LOCAL;
+        mStartSecondOfDay = secondOfDay;
+    }
+
+    /**
+     * Writes 'er' as an RRULE. Its UNTIL is written with the value type of
+     * DTSTART: the date of a DATE-TIME is taken for a DATE DTSTART, & a DATE
+     * is taken to end at 23:59:59 for a DATE-TIME DTSTART.
+     *
+     * @throws IllegalArgumentException if UNTIL is malformed, or is in floating
+     *                                  time for a UTC DTSTART or vice versa
+     */
+    public void writeRule(EventRecurrence er) throws IOException {
+        final String until = er.until;
+        if (until != null && until.length() > 0) {
+            checkUntil(until);
+            mUntil = until;
+        }
+
+        try {
+            writeText("RRULE:");
+            er.writeTo(mLineAppender);
+        } finally {
+            mUntil = null;
+        }
+        endLine();
+    }
+
+    /**
+     * Writes days[0 .. count - 1] as one EXDATE (exclude == true) or
+     * RDATE (exclude == false). They are DATE values, or - if DTSTART is a
+     * DATE-TIME - DATE-TIME values at the time of DTSTART.
+     */
+    public void writeDates(boolean exclude, int[] days, int count) throws IOException {
+        if (count <= 0) {
+            return;
+        }
+
+        final boolean timed = mStartType == START_LOCAL || mStartType == START_UTC;
+        if (timed) {
+            writeText(exclude ? "EXDATE:" : "RDATE:");
+        } else {
+            writeText(exclude ? "EXDATE;VALUE=DATE:" : "RDATE;VALUE=DATE:");
+        }
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                write(',');
+            }
+            if (timed) {
+                writeDateTime(days[i], mStartSecondOfDay, mStartType == START_UTC);
+            } else {
+                writeDate(days[i]);
+            }
+        }
+        endLine();
+    }
+
+    /**
+     * Writes days[i] at secondsOfDay[i], for i in [0, count), as one EXDATE
+     * (exclude == true) or RDATE (exclude == false) of DATE-TIME values, in
+     * the same time (floating or UTC) as DTSTART.
+     *
+     * @throws IllegalArgumentException if DTSTART was written as a DATE
+     */
+    public void writeDateTimes(boolean exclude, int[] days, int[] secondsOfDay, int count)
+            throws IOException {
+        if (mStartType == START_DATE) {
+            throw new IllegalArgumentException("DTSTART is a DATE; write DATE values");
+        }
+        if (count <= 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            checkSecondOfDay(secondsOfDay[i]);
+        }
+
+        writeText(exclude ? "EXDATE:" : "RDATE:");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                write(',');
+            }
+            writeDateTime(days[i], secondsOfDay[i], mStartType == START_UTC);
+        }
+        endLine();
+    }
+
+    /**
+     * Writes any other property. 'name' & 'value' must be ASCII, with the
+     * value already escaped as RFC 5545 requires.
+     */
+    public void writeProperty(String name, String value) throws IOException {
+        writeText(name);
+        write(':');
+        writeText(value);
+        endLine();
+    }
+
+    /**
+     * Writes out buffered output. The channel is not closed.
+     */
+    @Override
+    public void flush() throws IOException {
+        mBuffer.flip();
+        while (mBuffer.hasRemaining()) {
+            mChannel.write(mBuffer);
+        }
+        mBuffer.clear();
+    }
+
+    private static void checkSecondOfDay(int secondOfDay) {
+        if (secondOfDay < 0 || secondOfDay >= EpochDayUtils.SECONDS_PER_DAY) {
+            throw new IllegalArgumentException("secondOfDay out of range: " + secondOfDay);
+        }
+    }
+
+    private void checkUntil(String until) {
+        final int length = until.length();
+        if (!UntilDate.isValid(until, 0, length)) {
+            throw new IllegalArgumentException("Invalid UNTIL value: " + until);
+        }
+
+        final boolean utc = until.charAt(length - 1) == 'Z';
+        if (mStartType == START_LOCAL && utc) {
+            throw new IllegalArgumentException("UNTIL must be in floating time, "
+                    + "like DTSTART: " + until);
+        }
+        if (mStartType == START_UTC && UntilDate.hasTime(0, length) && !utc) {
+            throw new IllegalArgumentException("UNTIL must be in UTC, like DTSTART: " + until);
+        }
+    }
+
+    // 'until' has been through checkUntil()
+    private void writeUntil(String until) throws IOException {
+        final boolean hasTime = UntilDate.hasTime(0, until.length());
+        switch (mStartType) {
+            case START_DATE:
+                // The date only
+                for (int i = 0; i < 8; i++) {
+                    write(until.charAt(i));
+                }
+                break;
+            case START_LOCAL:
+            case START_UTC:
+                writeText(until);
+                if (!hasTime) {
+                    // The whole day
+                    writeText(mStartType == START_UTC ? "T235959Z" : "T235959");
+                }
+                break;
+            default:
+                // Nothing to match
+                writeText(until);
+                break;
+        }
+    }
+
+    private void writeDateTime(int epochDay, int secondOfDay, boolean utc) throws IOException {
+        writeDate(epochDay);
+        write('T');
+        writeDigits(secondOfDay / 3600, 2);
+        writeDigits(secondOfDay / 60 % 60, 2);
+        writeDigits(secondOfDay % 60, 2);
+        if (utc) {
+            write('Z');
+        }
+    }
+
+    private void writeDate(int epochDay) throws IOException {
+        final int packed = EpochDayUtils.toPackedDate(epochDay);
+        final int year = EpochDayUtils.packedYear(packed);
+        if (year < 0 || year > 9999) {
+            throw new IllegalArgumentException("Year out of range: " + year);
+        }
+        writeDigits(year, 4);
+        writeDigits(EpochDayUtils.packedMonth(packed) + 1, 2);
+        writeDigits(EpochDayUtils.packedMonthDay(packed), 2);
+    }
+
+    private void writeDigits(int value, int digits) throws IOException {
+        int divisor = 1;
+        for (int i = 1; i < digits; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            write((char) ('0' + value / divisor % 10));
+        }
+    }
+
+    private void writeText(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            write(text.charAt(i));
+        }
+    }
+
+    private void write(char c) throws IOException {
+        if (c > 0x7f) {
+            throw new IllegalArgumentException("Not ASCII: " + c);
+        }
+        if (mColumn == MAX_LINE_LENGTH) {
+            // Fold: the reader drops the CRLF & the space
+            put((byte) '\r');
+            put((byte) '\n');
+            put((byte) ' ');
+            mColumn = 1;
+        }
+        put((byte) c);
+        mColumn++;
+    }
+
+    private void endLine() throws IOException {
+        put((byte) '\r');
+        put((byte) '\n');
+        mColumn = 0;
+    }
+
+    private void put(byte b) throws IOException {
+        if (!mBuffer.hasRemaining()) {
+            flush();
+        }
+        mBuffer.put(b);
+    }
+}
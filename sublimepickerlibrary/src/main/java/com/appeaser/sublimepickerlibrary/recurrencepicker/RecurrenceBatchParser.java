@@ -0,0 +1,611 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import android.text.format.Time;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses - and optionally expands - large numbers of recurrence rules in
+ * parallel, e.g. during an initial sync.
+ * <p/>
+ * The input is split into contiguous chunks, one task per chunk. Each task
+ * reuses a single EventRecurrence & RecurrenceIterator for all of its rules.
+ * Results are stored column-wise in a {@link Result}: one array per field,
+ * indexed like the input, & one {@link IntListColumn} per list (BY* parts &
+ * occurrences). A malformed rule does not abort the batch - its error
+ * message is recorded at its index instead. A rule that parses but can't
+ * be expanded (e.g. FREQ=HOURLY, or an UNTIL that doesn't resolve) keeps
+ * its parsed fields; the expansion error is recorded separately.
+ * <p/>
+ * Tasks run on a plain ExecutorService, since ForkJoinPool is not available
+ * below API 21.
+ */
+public final class RecurrenceBatchParser {
+
+    // Chunks per thread, so that a slow chunk does not hold up the batch
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final int MIN_CHUNK_SIZE = 256;
+
+    // Indices of the list columns, in Result & in each chunk
+    private static final int COLUMN_BYSECOND = 0;
+    private static final int COLUMN_BYMINUTE = 1;
+    private static final int COLUMN_BYHOUR = 2;
+    private static final int COLUMN_BYDAY = 3;
+    private static final int COLUMN_BYDAYNUM = 4;
+    private static final int COLUMN_BYMONTHDAY = 5;
+    private static final int COLUMN_BYYEARDAY = 6;
+    private static final int COLUMN_BYWEEKNO = 7;
+    private static final int COLUMN_BYMONTH = 8;
+    private static final int COLUMN_BYSETPOS = 9;
+    private static final int COLUMN_OCCURRENCES = 10;
+
+    private RecurrenceBatchParser() {
+        // no instances
+    }
+
+    /**
+     * A list of ints per rule, flattened: the values of rule 'i' are
+     * values[offsets[i] ... offsets[i + 1] - 1].
+     */
+    public static final class IntListColumn {
+
+        public final int[] offsets;
+        public final int[] values;
+
+        IntListColumn(int[] offsets, int[] values) {
+            this.offsets = offsets;
+            this.values = values;
+        }
+
+        /**
+         * @return the number of values of rule 'index'
+         */
+        public int getCount(int index) {
+            return offsets[index + 1] - offsets[index];
+        }
+
+        /**
+         * @return value 'position' of rule 'index'
+         */
+        public int get(int index, int position) {
+            return values[offsets[index] + position];
+        }
+
+        /**
+         * Copies the values of rule 'index' into 'dst', growing it if needed.
+         *
+         * @return 'dst', or the array that replaced it
+         */
+        int[] copyTo(int index, int[] dst) {
+            final int count = getCount(index);
+            dst = EventRecurrence.ensureCapacity(dst, count);
+            System.arraycopy(values, offsets[index], dst, 0, count);
+            return dst;
+        }
+    }
+
+    /**
+     * Column-oriented results of a batch. Index 'i' of every array refers
+     * to rule 'i' of the input.
+     */
+    public static final class Result {
+
+        public final int size;
+
+        // Parsed fields. Undefined where errors[i] != null; the lists of
+        // such rules are empty.
+        public final int[] freq;
+        public final int[] interval;
+        public final int[] count;
+        public final int[] wkst;
+        public final String[] until;
+        public final IntListColumn bysecond;
+        public final IntListColumn byminute;
+        public final IntListColumn byhour;
+        public final IntListColumn byday;
+        public final IntListColumn bydayNum;
+        public final IntListColumn bymonthday;
+        public final IntListColumn byyearday;
+        public final IntListColumn byweekno;
+        public final IntListColumn bymonth;
+        public final IntListColumn bysetpos;
+
+        // Null where the rule was parsed successfully
+        public final String[] errors;
+
+        // Expansion only: null where the rule was expanded successfully,
+        // or was not expanded (a parse error, or a null start). Null if
+        // the batch was not expanded.
+        public final String[] expansionErrors;
+
+        // Expansion only: the occurrences of rule 'i' are
+        // occurrences[occurrenceStart[i] ... occurrenceStart[i + 1] - 1],
+        // as epoch days; none where expansionErrors[i] != null. Both are
+        // null if the batch was not expanded.
+        public final int[] occurrenceStart;
+        public final int[] occurrences;
+
+        private final int mErrorCount;
+        private final int mExpansionErrorCount;
+
+        private Result(Fields fields, IntListColumn[] lists, int errorCount,
+                       int expansionErrorCount) {
+            size = fields.freq.length;
+            freq = fields.freq;
+            interval = fields.interval;
+            count = fields.count;
+            wkst = fields.wkst;
+            until = fields.until;
+            errors = fields.errors;
+            expansionErrors = fields.expansionErrors;
+
+            bysecond = lists[COLUMN_BYSECOND];
+            byminute = lists[COLUMN_BYMINUTE];
+            byhour = lists[COLUMN_BYHOUR];
+            byday = lists[COLUMN_BYDAY];
+            bydayNum = lists[COLUMN_BYDAYNUM];
+            bymonthday = lists[COLUMN_BYMONTHDAY];
+            byyearday = lists[COLUMN_BYYEARDAY];
+            byweekno = lists[COLUMN_BYWEEKNO];
+            bymonth = lists[COLUMN_BYMONTH];
+            bysetpos = lists[COLUMN_BYSETPOS];
+
+            final IntListColumn occurrenceColumn = lists[COLUMN_OCCURRENCES];
+            occurrenceStart = occurrenceColumn == null ? null : occurrenceColumn.offsets;
+            occurrences = occurrenceColumn == null ? null : occurrenceColumn.values;
+
+            mErrorCount = errorCount;
+            mExpansionErrorCount = expansionErrorCount;
+        }
+
+        /**
+         * @return true if rule 'index' was parsed successfully
+         */
+        public boolean isValid(int index) {
+            return errors[index] == null;
+        }
+
+        /**
+         * @return the number of rules that could not be parsed
+         */
+        public int getErrorCount() {
+            return mErrorCount;
+        }
+
+        /**
+         * @return the number of parsed rules that could not be expanded
+         */
+        public int getExpansionErrorCount() {
+            return mExpansionErrorCount;
+        }
+
+        /**
+         * Loads rule 'index' into 'er', as if 'er' had parsed it. The BY*
+         * arrays of 'er' are reused when large enough.
+         *
+         * @throws IllegalArgumentException if the rule could not be parsed
+         */
+        public void getRule(int index, EventRecurrence er) {
+            if (!isValid(index)) {
+                throw new IllegalArgumentException("Rule " + index + " is invalid: "
+                        + errors[index]);
+            }
+
+            er.freq = freq[index];
+            er.interval = interval[index];
+            er.count = count[index];
+            er.wkst = wkst[index];
+            er.until = until[index];
+
+            er.bysecond = bysecond.copyTo(index, er.bysecond);
+            er.bysecondCount = bysecond.getCount(index);
+            er.byminute = byminute.copyTo(index, er.byminute);
+            er.byminuteCount = byminute.getCount(index);
+            er.byhour = byhour.copyTo(index, er.byhour);
+            er.byhourCount = byhour.getCount(index);
+            er.byday = byday.copyTo(index, er.byday);
+            er.bydayNum = bydayNum.copyTo(index, er.bydayNum);
+            er.bydayCount = byday.getCount(index);
+            er.bymonthday = bymonthday.copyTo(index, er.bymonthday);
+            er.bymonthdayCount = bymonthday.getCount(index);
+            er.byyearday = byyearday.copyTo(index, er.byyearday);
+            er.byyeardayCount = byyearday.getCount(index);
+            er.byweekno = byweekno.copyTo(index, er.byweekno);
+            er.byweeknoCount = byweekno.getCount(index);
+            er.bymonth = bymonth.copyTo(index, er.bymonth);
+            er.bymonthCount = bymonth.getCount(index);
+            er.bysetpos = bysetpos.copyTo(index, er.bysetpos);
+            er.bysetposCount = bysetpos.getCount(index);
+        }
+    }
+
+    /**
+     * Parses 'rules' using a temporary thread pool sized to the number of cores.
+     */
+    public static Result parse(String[] rules) throws InterruptedException {
+        return parseAndExpand(rules, null, 0, 0, 0);
+    }
+
+    public static Result parse(List<String> rules) throws InterruptedException {
+        return parse(rules.toArray(new String[rules.size()]));
+    }
+
+    /**
+     * Parses 'rules' on 'executor'.
+     */
+    public static Result parse(String[] rules, ExecutorService executor)
+            throws InterruptedException {
+        return parseAndExpand(rules, null, 0, 0, 0, executor);
+    }
+
+    public static Result parse(List<String> rules, ExecutorService executor)
+            throws InterruptedException {
+        return parse(rules.toArray(new String[rules.size()]), executor);
+    }
+
+    /**
+     * Parses 'rules' & expands them using a temporary thread pool sized to
+     * the number of cores. See
+     * {@link #parseAndExpand(String[], Time[], int, int, int, ExecutorService)}.
+     */
+    public static Result parseAndExpand(String[] rules, Time[] starts,
+                                        int fromDay, int toDay, int maxPerRule)
+            throws InterruptedException {
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return parseAndExpand(rules, starts, fromDay, toDay, maxPerRule, executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Parses 'rules' & expands each into its occurrences falling in
+     * [fromDay, toDay] (epoch days), keeping at most 'maxPerRule' per rule.
+     *
+     * @param starts   the DTSTART of each rule, or null to skip expansion.
+     *                 Rules with a null start are parsed but not expanded.
+     * @param executor runs the chunks; it is not shut down
+     */
+    public static Result parseAndExpand(String[] rules, Time[] starts,
+                                        int fromDay, int toDay, int maxPerRule,
+                                        ExecutorService executor)
+            throws InterruptedException {
+        if (starts != null && starts.length != rules.length) {
+            throw new IllegalArgumentException("Expected " + rules.length
+                    + " start dates, got " + starts.length);
+        }
+        return run(rules, starts, null, null, fromDay, toDay, maxPerRule, executor);
+    }
+
+    /**
+     * Same as {@link #parseAndExpand(String[], Time[], int, int, int, ExecutorService)},
+     * with start dates given as epoch milliseconds. Does not use
+     * android.text.format.Time, so it also runs on a plain JVM.
+     *
+     * @param startMillis the DTSTART of each rule
+     * @param timezone    the timezone of every event, or null for UTC
+     * @param executor    runs the chunks; it is not shut down
+     */
+    public static Result parseAndExpand(String[] rules, long[] startMillis, TimeZone timezone,
+                                        int fromDay, int toDay, int maxPerRule,
+                                        ExecutorService executor)
+            throws InterruptedException {
+        if (startMillis.length != rules.length) {
+            throw new IllegalArgumentException("Expected " + rules.length
+                    + " start dates, got " + startMillis.length);
+        }
+        return run(rules, null, startMillis, timezone, fromDay, toDay, maxPerRule, executor);
+    }
+
+    private static Result run(String[] rules, Time[] starts, long[] startMillis,
+                              TimeZone timezone, int fromDay, int toDay, int maxPerRule,
+                              ExecutorService executor)
+            throws InterruptedException {
+
+        final boolean expand = starts != null || startMillis != null;
+        final Fields fields = new Fields(rules.length, expand);
+        if (rules.length == 0) {
+            return new Result(fields, concatAll(0, new ArrayList<Chunk>(), expand), 0, 0);
+        }
+
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final int chunkSize = Math.max(MIN_CHUNK_SIZE,
+                (rules.length + threads * CHUNKS_PER_THREAD - 1) / (threads * CHUNKS_PER_THREAD));
+
+        final List<Future<Chunk>> futures = new ArrayList<>();
+        for (int start = 0; start < rules.length; start += chunkSize) {
+            final Chunk chunk = new Chunk(rules, starts, startMillis, timezone, fields, start,
+                    Math.min(start + chunkSize, rules.length), fromDay, toDay, maxPerRule);
+            futures.add(executor.submit(chunk));
+        }
+
+        final List<Chunk> chunks = new ArrayList<>(futures.size());
+        try {
+            for (Future<Chunk> future : futures) {
+                chunks.add(future.get());
+            }
+        } catch (ExecutionException ee) {
+            // Chunks record per-rule failures, so this is a bug or an Error
+            final Throwable cause = ee.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Batch task failed", cause);
+        } finally {
+            for (Future<Chunk> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        int errorCount = 0;
+        int expansionErrorCount = 0;
+        for (Chunk chunk : chunks) {
+            errorCount += chunk.mErrorCount;
+            expansionErrorCount += chunk.mExpansionErrorCount;
+        }
+
+        return new Result(fields, concatAll(rules.length, chunks, expand), errorCount,
+                expansionErrorCount);
+    }
+
+    /**
+     * @return every list column, indexed by COLUMN_*. The occurrence column
+     * is null unless expanding.
+     */
+    private static IntListColumn[] concatAll(int size, List<Chunk> chunks, boolean expand) {
+        final IntListColumn[] lists = new IntListColumn[COLUMN_OCCURRENCES + 1];
+        for (int column = 0; column < COLUMN_OCCURRENCES; column++) {
+            lists[column] = concat(size, chunks, column);
+        }
+        if (expand) {
+            lists[COLUMN_OCCURRENCES] = concat(size, chunks, COLUMN_OCCURRENCES);
+        }
+        return lists;
+    }
+
+    /**
+     * The per-rule fields of a Result, filled in by the chunks.
+     */
+    private static class Fields {
+
+        final int[] freq;
+        final int[] interval;
+        final int[] count;
+        final int[] wkst;
+        final String[] until;
+        final String[] errors;
+        final String[] expansionErrors;
+
+        Fields(int size, boolean expand) {
+            freq = new int[size];
+            interval = new int[size];
+            count = new int[size];
+            wkst = new int[size];
+            until = new String[size];
+            errors = new String[size];
+            expansionErrors = expand ? new String[size] : null;
+        }
+    }
+
+    /**
+     * Joins column 'column' of every chunk into a single flat column.
+     */
+    private static IntListColumn concat(int size, List<Chunk> chunks, int column) {
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.mColumns[column].mSize;
+        }
+
+        final int[] offsets = new int[size + 1];
+        final int[] values = new int[total];
+        int offset = 0;
+        for (Chunk chunk : chunks) {
+            final IntListBuffer buffer = chunk.mColumns[column];
+            for (int i = chunk.mFrom; i < chunk.mTo; i++) {
+                offsets[i] = offset + buffer.mOffsets[i - chunk.mFrom];
+            }
+            System.arraycopy(buffer.mValues, 0, values, offset, buffer.mSize);
+            offset += buffer.mSize;
+        }
+        offsets[size] = total;
+
+        return new IntListColumn(offsets, values);
+    }
+
+    /**
+     * One list column of a chunk, with offsets relative to the chunk.
+     */
+    private static class IntListBuffer {
+
+        final int[] mOffsets;
+        int[] mValues = new int[16];
+        int mSize;
+
+        IntListBuffer(int rules) {
+            mOffsets = new int[rules];
+        }
+
+        // Starts the list of the chunk's rule 'index'
+        void begin(int index) {
+            mOffsets[index] = mSize;
+        }
+
+        // Drops the values added to the list of rule 'index'
+        void clear(int index) {
+            mSize = mOffsets[index];
+        }
+
+        void add(int value) {
+            if (mSize == mValues.length) {
+                final int[] grown = new int[mValues.length * 2];
+                System.arraycopy(mValues, 0, grown, 0, mSize);
+                mValues = grown;
+            }
+            mValues[mSize++] = value;
+        }
+
+        void addAll(int[] values, int count) {
+            for (int i = 0; i < count; i++) {
+                add(values[i]);
+            }
+        }
+    }
+
+    private static class Chunk implements Callable<Chunk> {
+
+        private final String[] mRules;
+        private final Time[] mStarts;
+        private final long[] mStartMillis;
+        private final TimeZone mTimeZone;
+        private final Fields mFields;
+        private final int mFrom;
+        private final int mTo;
+        private final int mFromDay;
+        private final int mToDay;
+        private final int mMaxPerRule;
+
+        int mErrorCount;
+        int mExpansionErrorCount;
+
+        // Indexed by COLUMN_*. The occurrence column is only filled when
+        // expanding.
+        final IntListBuffer[] mColumns = new IntListBuffer[COLUMN_OCCURRENCES + 1];
+
+        Chunk(String[] rules, Time[] starts, long[] startMillis, TimeZone timezone,
+              Fields fields, int from, int to, int fromDay, int toDay, int maxPerRule) {
+            mRules = rules;
+            mStarts = starts;
+            mStartMillis = startMillis;
+            mTimeZone = timezone;
+            mFields = fields;
+            mFrom = from;
+            mTo = to;
+            mFromDay = fromDay;
+            mToDay = toDay;
+            mMaxPerRule = maxPerRule;
+
+            for (int i = 0; i < mColumns.length; i++) {
+                mColumns[i] = new IntListBuffer(to - from);
+            }
+        }
+
+        @Override
+        public Chunk call() {
+            final Fields fields = mFields;
+            final IntListBuffer[] columns = mColumns;
+            final IntListBuffer occurrences = columns[COLUMN_OCCURRENCES];
+            final EventRecurrence er = new EventRecurrence();
+            RecurrenceIterator iterator = null;
+
+            for (int i = mFrom; i < mTo; i++) {
+                for (IntListBuffer column : columns) {
+                    column.begin(i - mFrom);
+                }
+
+                final String rule = mRules[i];
+                if (rule == null) {
+                    setError(i, "Missing rule");
+                    continue;
+                }
+
+                try {
+                    er.parse(rule);
+                } catch (EventRecurrence.InvalidFormatException ife) {
+                    setError(i, ife.getMessage());
+                    continue;
+                }
+
+                fields.freq[i] = er.freq;
+                fields.interval[i] = er.interval;
+                fields.count[i] = er.count;
+                fields.wkst[i] = er.wkst;
+                fields.until[i] = er.until;
+                columns[COLUMN_BYSECOND].addAll(er.bysecond, er.bysecondCount);
+                columns[COLUMN_BYMINUTE].addAll(er.byminute, er.byminuteCount);
+                columns[COLUMN_BYHOUR].addAll(er.byhour, er.byhourCount);
+                columns[COLUMN_BYDAY].addAll(er.byday, er.bydayCount);
+                columns[COLUMN_BYDAYNUM].addAll(er.bydayNum, er.bydayCount);
+                columns[COLUMN_BYMONTHDAY].addAll(er.bymonthday, er.bymonthdayCount);
+                columns[COLUMN_BYYEARDAY].addAll(er.byyearday, er.byyeardayCount);
+                columns[COLUMN_BYWEEKNO].addAll(er.byweekno, er.byweeknoCount);
+                columns[COLUMN_BYMONTH].addAll(er.bymonth, er.bymonthCount);
+                columns[COLUMN_BYSETPOS].addAll(er.bysetpos, er.bysetposCount);
+
+                final Time start = mStarts == null ? null : mStarts[i];
+                if (start == null && mStartMillis == null) {
+                    continue;
+                }
+
+                try {
+                    if (iterator == null) {
+                        iterator = start != null ? new RecurrenceIterator(er, start)
+                                : new RecurrenceIterator(er, mStartMillis[i], mTimeZone);
+                    } else if (start != null) {
+                        iterator.reset(er, start);
+                    } else {
+                        iterator.reset(er, mStartMillis[i], mTimeZone);
+                    }
+                    expand(iterator, occurrences);
+                } catch (EventRecurrence.InvalidFormatException ife) {
+                    // Malformed UNTIL
+                    occurrences.clear(i - mFrom);
+                    setExpansionError(i, ife.getMessage());
+                } catch (IllegalArgumentException iae) {
+                    // FREQ the iterator does not support
+                    occurrences.clear(i - mFrom);
+                    setExpansionError(i, iae.getMessage());
+                }
+            }
+            return this;
+        }
+
+        private void expand(RecurrenceIterator iterator, IntListBuffer occurrences) {
+            iterator.advanceTo(mFromDay);
+            int emitted = 0;
+            while (emitted < mMaxPerRule && iterator.hasNext()) {
+                final int day = iterator.nextEpochDay();
+                if (day > mToDay) {
+                    break;
+                }
+                occurrences.add(day);
+                emitted++;
+            }
+        }
+
+        private void setError(int index, String message) {
+            mFields.errors[index] = message;
+            mErrorCount++;
+        }
+
+        private void setExpansionError(int index, String message) {
+            mFields.expansionErrors[index] = message;
+            mExpansionErrorCount++;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+/**
+ * Decides in a single pass over a rule whether {@link RecurrenceOptionCreator}
+ * can edit it, and what its editor model would be.
+ * <p/>
+ * The result is a descriptor packed into an int; use the static accessors
+ * to read it. Classification is a pure function of the rule - it holds no
+ * state & touches no Android classes - so it may be used from any thread,
+ * e.g. to check thousands of rules for a list screen.
+ */
+public final class RecurrenceClassifier {
+
+    // Descriptor values for getFreq(). Same as RecurrenceModel.FREQ_*
+    public static final int FREQ_DAILY = 0;
+    public static final int FREQ_WEEKLY = 1;
+    public static final int FREQ_MONTHLY = 2;
+    public static final int FREQ_YEARLY = 3;
+
+    // Descriptor values for getEnd(). Same as RecurrenceModel.END_*
+    public static final int END_NEVER = 0;
+    public static final int END_BY_DATE = 1;
+    public static final int END_BY_COUNT = 2;
+
+    // Descriptor values for getMonthlyRepeat()
+    public static final int MONTHLY_NONE = 0;
+    public static final int MONTHLY_BY_DATE = 1;
+    public static final int MONTHLY_BY_NTH_DAY_OF_WEEK = 2;
+
+    private static final int FIFTH_WEEK_IN_A_MONTH = 5;
+    private static final int LAST_NTH_DAY_OF_WEEK = -1;
+
+    // Descriptor layout
+    private static final int FLAG_SUPPORTED = 1;
+    private static final int FLAG_CONVERTIBLE = 1 << 1;
+    private static final int FREQ_SHIFT = 2;            // 2 bits
+    private static final int END_SHIFT = 4;             // 2 bits
+    private static final int WEEKDAYS_SHIFT = 6;        // 7 bits, SUNDAY = bit 0
+    private static final int MONTHLY_SHIFT = 13;        // 2 bits
+    private static final int MONTHLY_DAY_SHIFT = 15;    // 3 bits, Time day of week
+    private static final int MONTHLY_NTH_SHIFT = 18;    // 3 bits, nth + 1
+    private static final int MONTH_DAY_SHIFT = 21;      // 6 bits, day of month + 32
+
+    private RecurrenceClassifier() {
+        // no instances
+    }
+
+    /**
+     * @return the descriptor of 'er'
+     */
+    public static int classify(EventRecurrence er) {
+        int freq;
+        switch (er.freq) {
+            case EventRecurrence.DAILY:
+                freq = FREQ_DAILY;
+                break;
+            case EventRecurrence.WEEKLY:
+                freq = FREQ_WEEKLY;
+                break;
+            case EventRecurrence.MONTHLY:
+                freq = FREQ_MONTHLY;
+                break;
+            case EventRecurrence.YEARLY:
+                freq = FREQ_YEARLY;
+                break;
+            default:
+                // Neither supported nor convertible
+                return 0;
+        }
+        final boolean monthly = freq == FREQ_MONTHLY;
+        final boolean hasUntil = er.until != null && er.until.length() > 0;
+
+        int end = END_NEVER;
+        if (hasUntil) {
+            end = END_BY_DATE;
+        } else if (er.count > 0) {
+            end = END_BY_COUNT;
+        }
+
+        int descriptor = (freq << FREQ_SHIFT) | (end << END_SHIFT);
+
+        // Weekly: the days of week to repeat on are in er.byday[].
+        // Monthly: for "repeat by nth day of week", the day of week is in
+        // er.byday[] & the "nth" in er.bydayNum[]. Only one is supported.
+        int weekDays = 0;
+        int nthCount = 0;
+        for (int i = 0; i < er.bydayCount; i++) {
+            final int weekDay = EventRecurrence.day2TimeDay(er.byday[i]);
+            weekDays |= 1 << weekDay;
+
+            final int nth = er.bydayNum[i];
+            if (isSupportedMonthlyByNthDayOfWeek(nth)) {
+                nthCount++;
+                if (monthly) {
+                    descriptor = (descriptor & ~(0x3f << MONTHLY_DAY_SHIFT))
+                            | (weekDay << MONTHLY_DAY_SHIFT)
+                            | ((nth + 1) << MONTHLY_NTH_SHIFT);
+                }
+            }
+        }
+        descriptor |= weekDays << WEEKDAYS_SHIFT;
+
+        int monthlyRepeat = MONTHLY_NONE;
+        if (monthly) {
+            if (nthCount > 0) {
+                monthlyRepeat = MONTHLY_BY_NTH_DAY_OF_WEEK;
+            }
+            if (er.bymonthdayCount == 1) {
+                if (monthlyRepeat == MONTHLY_NONE) {
+                    monthlyRepeat = MONTHLY_BY_DATE;
+                }
+                descriptor |= (er.bymonthday[0] + 32) << MONTH_DAY_SHIFT;
+            }
+        }
+        descriptor |= monthlyRepeat << MONTHLY_SHIFT;
+
+        // The UI can only end by date or by count, handles the nth day of
+        // week only for monthly rules & only one day of the month. It has
+        // no options for BYSETPOS, BYYEARDAY or BYWEEKNO.
+        final boolean supported = !(er.count > 0 && hasUntil)
+                && er.bysetposCount == 0
+                && er.byyeardayCount == 0
+                && er.byweeknoCount == 0
+                && nthCount <= 1
+                && (nthCount == 0 || monthly)
+                && er.bymonthdayCount <= 1
+                && !(monthly && (er.bydayCount > 1
+                || (er.bydayCount > 0 && er.bymonthdayCount > 0)));
+
+        // Rules the model can't represent even partially
+        final boolean convertible = !(er.count > 0 && hasUntil)
+                && !(monthly && er.bydayCount > 0 && (er.bydayCount != 1 || nthCount != 1))
+                && !(monthly && er.bymonthdayCount == 1 && nthCount > 0)
+                && !(monthly && er.bymonthdayCount != 1 && er.bymonthCount > 1);
+
+        if (supported) {
+            descriptor |= FLAG_SUPPORTED;
+        }
+        if (convertible) {
+            descriptor |= FLAG_CONVERTIBLE;
+        }
+        return descriptor;
+    }
+
+    /**
+     * @param rule The recurrence rule to parse (in un-folded form).
+     * @return the descriptor of 'rule', or 0 (unsupported) if it is malformed
+     */
+    public static int classify(String rule) {
+        final EventRecurrence er = new EventRecurrence();
+        try {
+            er.parse(rule);
+        } catch (EventRecurrence.InvalidFormatException ife) {
+            return 0;
+        }
+        return classify(er);
+    }
+
+    /**
+     * @return true if the picker can edit the rule without losing any of it
+     */
+    public static boolean isEditable(int descriptor) {
+        return (descriptor & (FLAG_SUPPORTED | FLAG_CONVERTIBLE))
+                == (FLAG_SUPPORTED | FLAG_CONVERTIBLE);
+    }
+
+    /**
+     * Same as {@link RecurrenceOptionCreator#canHandleRecurrenceRule(EventRecurrence)}.
+     */
+    public static boolean isSupported(int descriptor) {
+        return (descriptor & FLAG_SUPPORTED) != 0;
+    }
+
+    /**
+     * @return true if the rule can be loaded into the picker's model, although
+     * parts of it may be lost if it is not {@link #isSupported(int)}
+     */
+    public static boolean isConvertible(int descriptor) {
+        return (descriptor & FLAG_CONVERTIBLE) != 0;
+    }
+
+    /**
+     * @return one of FREQ_DAILY, etc. Undefined unless the rule is convertible
+     */
+    public static int getFreq(int descriptor) {
+        return (descriptor >>> FREQ_SHIFT) & 0x3;
+    }
+
+    /**
+     * @return one of END_NEVER, END_BY_DATE or END_BY_COUNT
+     */
+    public static int getEnd(int descriptor) {
+        return (descriptor >>> END_SHIFT) & 0x3;
+    }
+
+    /**
+     * @return the BYDAY days of week, as a mask with bit 'i' set for
+     * android.text.format.Time day of week 'i' (SUNDAY = 0)
+     */
+    public static int getWeekDays(int descriptor) {
+        return (descriptor >>> WEEKDAYS_SHIFT) & 0x7f;
+    }
+
+    /**
+     * @return one of MONTHLY_NONE, MONTHLY_BY_DATE or MONTHLY_BY_NTH_DAY_OF_WEEK
+     */
+    public static int getMonthlyRepeat(int descriptor) {
+        return (descriptor >>> MONTHLY_SHIFT) & 0x3;
+    }
+
+    /**
+     * @return for MONTHLY_BY_NTH_DAY_OF_WEEK, the day of week (SUNDAY = 0)
+     */
+    public static int getMonthlyByDayOfWeek(int descriptor) {
+        return (descriptor >>> MONTHLY_DAY_SHIFT) & 0x7;
+    }
+
+    /**
+     * @return for MONTHLY_BY_NTH_DAY_OF_WEEK, the nth (1 to 5, or -1 for the last)
+     */
+    public static int getMonthlyByNthDayOfWeek(int descriptor) {
+        return ((descriptor >>> MONTHLY_NTH_SHIFT) & 0x7) - 1;
+    }
+
+    /**
+     * @return the BYMONTHDAY of a monthly rule with one, or 0
+     */
+    public static int getMonthlyByMonthDay(int descriptor) {
+        final int encoded = (descriptor >>> MONTH_DAY_SHIFT) & 0x3f;
+        return encoded == 0 ? 0 : encoded - 32;
+    }
+
+    static boolean isSupportedMonthlyByNthDayOfWeek(int num) {
+        // We only support monthlyByNthDayOfWeek when it is greater then 0 but less then 5.
+        // Or if -1 when it is the last monthly day of the week.
+        return (num > 0 && num <= FIFTH_WEEK_IN_A_MONTH) || num == LAST_NTH_DAY_OF_WEEK;
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import android.text.format.Time;
+
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Locates the Nth occurrence of a rule & counts occurrences in a range of
+ * days - e.g. to translate between "ends after N events" (COUNT) and
+ * "ends on date" (UNTIL).
+ * <p/>
+ * Simple rules - those whose every period holds the same set of candidate
+ * slots - are answered arithmetically:
+ * <ul>
+ * <li>DAILY without BY* parts</li>
+ * <li>WEEKLY with (at most) un-numbered BYDAY</li>
+ * <li>MONTHLY with (at most) BYMONTHDAY in 1..28</li>
+ * <li>YEARLY with (at most) BYMONTH & BYMONTHDAY in 1..28</li>
+ * </ul>
+ * Other rules fall back to a {@link RecurrenceIterator}, which skips whole
+ * periods when advancing to the start of a range.
+ * <p/>
+ * Dates are epoch days (see {@link EpochDayUtils}). Not thread-safe.
+ */
+public class RecurrenceCounter {
+
+    /**
+     * Returned when the requested occurrence does not exist.
+     */
+    public static final int NO_OCCURRENCE = Integer.MIN_VALUE;
+
+    private final CompiledRecurrence mRule = new CompiledRecurrence();
+    private final RecurrenceIterator mIterator;
+
+    private boolean mClosedForm;
+
+    // Closed form: the key of the first period (epoch day for DAILY & WEEKLY,
+    // epoch month for MONTHLY, year for YEARLY), the distance between
+    // consecutive periods & the key of the last period that gets expanded.
+    private int mFirstPeriod;
+    private int mPeriodStep;
+    private int mLastPeriod;
+
+    // Closed form: candidate slots of each period, in ascending order.
+    // DAILY & WEEKLY: day offset from the period start
+    // MONTHLY: day of the month
+    // YEARLY: (month << 5) | day of the month
+    private int[] mSlots;
+
+    // Closed form: slots of the first period preceding DTSTART
+    private int mSkippedSlots;
+
+    // Closed form: total number of slots & the day of the last one
+    private int mTotalSlots;
+    private int mLastSlotDay;
+
+    // Last day an occurrence may fall on, after applying UNTIL & COUNT
+    private int mLastDay;
+
+    /**
+     * Counts 'er' starting at {@link EventRecurrence#startDate}, which must be set.
+     */
+    public RecurrenceCounter(EventRecurrence er) {
+        this(er, er.startDate);
+    }
+
+    /**
+     * @param er    the recurrence rule. Its FREQ must be one of DAILY,
+     *              WEEKLY, MONTHLY or YEARLY
+     * @param start the first instance of the event (DTSTART)
+     */
+    public RecurrenceCounter(EventRecurrence er, Time start) {
+        RecurrenceIterator.compile(mRule, er, start);
+        mIterator = new RecurrenceIterator(mRule);
+        init();
+    }
+
+    /**
+     * @param er          the recurrence rule. Its FREQ must be one of DAILY,
+     *                    WEEKLY, MONTHLY or YEARLY
+     * @param startMillis the first instance of the event (DTSTART)
+     * @param timezone    the event's timezone, or null for UTC
+     */
+    public RecurrenceCounter(EventRecurrence er, long startMillis, TimeZone timezone) {
+        RecurrenceIterator.compile(mRule, er, startMillis, timezone);
+        mIterator = new RecurrenceIterator(mRule);
+        init();
+    }
+
+    private void init() {
+        final CompiledRecurrence rule = mRule;
+        mClosedForm = compileSlots();
+        mLastDay = rule.untilDay;
+
+        if (mClosedForm && rule.count > 0) {
+            final int countDay = getNthOccurrence(rule.count);
+            if (countDay != NO_OCCURRENCE) {
+                mLastDay = countDay;
+            }
+        }
+    }
+
+    /**
+     * @return true if queries are answered arithmetically, false if the
+     * rule is expanded
+     */
+    boolean isClosedForm() {
+        return mClosedForm;
+    }
+
+    /**
+     * @param n 1 for the first occurrence (DTSTART, if it matches the rule), etc.
+     * @return the epoch day of the nth occurrence, or {@link #NO_OCCURRENCE}
+     * if the rule ends before producing it
+     */
+    public int getNthOccurrence(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("n must be >= 1, was " + n);
+        }
+
+        if (!mClosedForm) {
+            final RecurrenceIterator iterator = mIterator;
+            iterator.restart();
+            int day = NO_OCCURRENCE;
+            for (int i = 0; i < n; i++) {
+                if (!iterator.hasNext()) {
+                    return NO_OCCURRENCE;
+                }
+                day = iterator.nextEpochDay();
+            }
+            return day;
+        }
+
+        final long index = (long) n - 1 + mSkippedSlots;
+        final long period = index / mSlots.length;
+        if (period > (mLastPeriod - mFirstPeriod) / mPeriodStep) {
+            return NO_OCCURRENCE;
+        }
+
+        final int day = getSlotDay((int) period, (int) (index % mSlots.length));
+        return day <= mLastDay ? day : NO_OCCURRENCE;
+    }
+
+    /**
+     * @return the epoch day of the last occurrence, or {@link #NO_OCCURRENCE}
+     * if there are none or the rule is bounded by neither COUNT nor UNTIL
+     */
+    public int getLastOccurrence() {
+        final CompiledRecurrence rule = mRule;
+        if (rule.count == 0 && rule.untilDay == Integer.MAX_VALUE) {
+            return NO_OCCURRENCE;
+        }
+
+        if (mClosedForm) {
+            final int count = countUpTo(mLastDay) - mSkippedSlots;
+            return count > 0 ? getNthOccurrence(count) : NO_OCCURRENCE;
+        }
+
+        final RecurrenceIterator iterator = mIterator;
+        iterator.restart();
+        int day = NO_OCCURRENCE;
+        while (iterator.hasNext()) {
+            day = iterator.nextEpochDay();
+        }
+        return day;
+    }
+
+    /**
+     * @param untilDay epoch day of the last allowed occurrence
+     * @return the COUNT equivalent of ending the rule on 'untilDay'
+     */
+    public int countUntil(int untilDay) {
+        return countOccurrences(mRule.startDay, untilDay);
+    }
+
+    /**
+     * @param fromDay first epoch day of the range, inclusive
+     * @param toDay   last epoch day of the range, inclusive
+     * @return the number of occurrences falling in the range
+     */
+    public int countOccurrences(int fromDay, int toDay) {
+        final int from = Math.max(fromDay, mRule.startDay);
+        final int to = Math.min(toDay, mLastDay);
+        if (from > to) {
+            return 0;
+        }
+
+        if (mClosedForm) {
+            return countUpTo(to) - countUpTo(from - 1);
+        }
+
+        final RecurrenceIterator iterator = mIterator;
+        iterator.restart();
+        iterator.advanceTo(from);
+        int count = 0;
+        while (iterator.hasNext() && iterator.nextEpochDay() <= to) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of slots - including those of the first period that
+     * precede DTSTART - on or before 'day'
+     */
+    private int countUpTo(int day) {
+        if (day >= mLastSlotDay) {
+            return mTotalSlots;
+        }
+
+        final int periodKey;
+        switch (mRule.freq) {
+            case EventRecurrence.DAILY:
+            case EventRecurrence.WEEKLY:
+                periodKey = day;
+                break;
+            case EventRecurrence.MONTHLY: {
+                final int packed = EpochDayUtils.toPackedDate(day);
+                periodKey = EpochDayUtils.toEpochMonth(EpochDayUtils.packedYear(packed),
+                        EpochDayUtils.packedMonth(packed));
+                break;
+            }
+            default:
+                periodKey = EpochDayUtils.getYear(day);
+                break;
+        }
+
+        if (periodKey < mFirstPeriod) {
+            return 0;
+        }
+
+        final int slotCount = mSlots.length;
+        final int period = (periodKey - mFirstPeriod) / mPeriodStep;
+        int count = period * slotCount;
+        for (int i = 0; i < slotCount && getSlotDay(period, i) <= day; i++) {
+            count++;
+        }
+        return count;
+    }
+
+    private int getSlotDay(int period, int slot) {
+        final int key = mFirstPeriod + period * mPeriodStep;
+        switch (mRule.freq) {
+            case EventRecurrence.DAILY:
+            case EventRecurrence.WEEKLY:
+                return key + mSlots[slot];
+            case EventRecurrence.MONTHLY:
+                return EpochDayUtils.toEpochDay(key / 12, key % 12, mSlots[slot]);
+            default:
+                return EpochDayUtils.toEpochDay(key, mSlots[slot] >> 5, mSlots[slot] & 0x1F);
+        }
+    }
+
+    /**
+     * Sets up the closed form, if the rule has one.
+     */
+    private boolean compileSlots() {
+        final CompiledRecurrence rule = mRule;
+        if (rule.hasSetPos() || rule.hasYearParts()) {
+            return false;
+        }
+
+        final int startPacked = EpochDayUtils.toPackedDate(rule.startDay);
+        final int maxDay = EpochDayUtils.toEpochDay(RecurrenceIterator.MAX_YEAR, 11, 31);
+
+        switch (rule.freq) {
+            case EventRecurrence.DAILY:
+                if (rule.hasByDay || rule.hasByMonth || rule.monthDayCount > 0) {
+                    return false;
+                }
+                mFirstPeriod = rule.startDay;
+                mPeriodStep = rule.interval;
+                mLastPeriod = maxDay;
+                mSlots = new int[]{0};
+                break;
+            case EventRecurrence.WEEKLY: {
+                if (rule.hasByMonth || rule.monthDayCount > 0) {
+                    return false;
+                }
+                mFirstPeriod = EpochDayUtils.getWeekStartEpochDay(rule.startDay, rule.wkst);
+                mPeriodStep = 7 * rule.interval;
+                mLastPeriod = maxDay;
+                mSlots = new int[Integer.bitCount(rule.weekDayMask)];
+                int size = 0;
+                for (int offset = 0; offset < 7; offset++) {
+                    if ((rule.weekDayMask & (1 << ((rule.wkst + offset) % 7))) != 0) {
+                        mSlots[size++] = offset;
+                    }
+                }
+                break;
+            }
+            case EventRecurrence.MONTHLY: {
+                if (rule.hasByDay || rule.hasByMonth) {
+                    return false;
+                }
+                final int[] monthDays = getSimpleMonthDays();
+                if (monthDays == null) {
+                    return false;
+                }
+                mFirstPeriod = EpochDayUtils.toEpochMonth(EpochDayUtils.packedYear(startPacked),
+                        EpochDayUtils.packedMonth(startPacked));
+                mPeriodStep = rule.interval;
+                mLastPeriod = EpochDayUtils.toEpochMonth(RecurrenceIterator.MAX_YEAR, 11);
+                mSlots = monthDays;
+                break;
+            }
+            case EventRecurrence.YEARLY: {
+                if (rule.hasByDay) {
+                    return false;
+                }
+                final int[] monthDays = getSimpleMonthDays();
+                if (monthDays == null) {
+                    return false;
+                }
+                mFirstPeriod = EpochDayUtils.packedYear(startPacked);
+                mPeriodStep = rule.interval;
+                mLastPeriod = RecurrenceIterator.MAX_YEAR;
+                mSlots = new int[Integer.bitCount(rule.monthMask) * monthDays.length];
+                int size = 0;
+                for (int month = 0; month < 12; month++) {
+                    if (rule.isMonthAllowed(month)) {
+                        for (int monthDay : monthDays) {
+                            mSlots[size++] = (month << 5) | monthDay;
+                        }
+                    }
+                }
+                break;
+            }
+            default:
+                return false;
+        }
+
+        if (mFirstPeriod > mLastPeriod) {
+            return false;
+        }
+
+        final int lastPeriod = (mLastPeriod - mFirstPeriod) / mPeriodStep;
+        mTotalSlots = (lastPeriod + 1) * mSlots.length;
+        mLastSlotDay = getSlotDay(lastPeriod, mSlots.length - 1);
+
+        mSkippedSlots = 0;
+        while (mSkippedSlots < mSlots.length && getSlotDay(0, mSkippedSlots) < rule.startDay) {
+            mSkippedSlots++;
+        }
+        return true;
+    }
+
+    /**
+     * @return the sorted, distinct BYMONTHDAY values if each of them exists in
+     * every month (1..28), null otherwise
+     */
+    private int[] getSimpleMonthDays() {
+        final CompiledRecurrence rule = mRule;
+        if (rule.monthDayCount == 0) {
+            return null;
+        }
+
+        final int[] monthDays = Arrays.copyOf(rule.monthDays, rule.monthDayCount);
+        Arrays.sort(monthDays);
+        if (monthDays[0] < 1 || monthDays[monthDays.length - 1] > 28) {
+            return null;
+        }
+
+        int size = 1;
+        for (int i = 1; i < monthDays.length; i++) {
+            if (monthDays[i] != monthDays[size - 1]) {
+                monthDays[size++] = monthDays[i];
+            }
+        }
+        return size == monthDays.length ? monthDays : Arrays.copyOf(monthDays, size);
+    }
+}
@@ -0,0 +1,498 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import android.text.format.Time;
+
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
+
+import java.util.NoSuchElementException;
+import java.util.TimeZone;
+
+/**
+ * Lazily expands an {@link EventRecurrence} into the dates it produces.
+ * <p/>
+ * Occurrences are reported as epoch days (see {@link EpochDayUtils}) and
+ * come out in ascending order. Expansion works a period (day, week, month
+ * or year) at a time: each period's candidates are computed from bitmasks
+ * into a reusable buffer, so no objects are created per occurrence. Call
+ * {@link #reset(EventRecurrence, Time)} to reuse one iterator across many
+ * rules.
+ * <p/>
+ * The start date may be given as an android.text.format.Time, or as epoch
+ * milliseconds & a java.util.TimeZone. The latter path does not touch the
+ * Android framework, so rules can be expanded on a plain JVM.
+ * <p/>
+ * FREQ, INTERVAL, COUNT, UNTIL, WKST, BYMONTH, BYWEEKNO, BYYEARDAY,
+ * BYMONTHDAY, BYDAY and BYSETPOS are honored. BYWEEKNO & BYYEARDAY select
+ * days within YEARLY periods; with other frequencies they only filter
+ * candidates. Only DAILY, WEEKLY, MONTHLY & YEARLY rules can be expanded.
+ */
+public class RecurrenceIterator {
+
+    // Upper bound for expansion. Rules that never end stop here.
+    static final int MAX_YEAR = 9999;
+
+    // Results of hasNextWithin()
+    static final int HAS_NEXT = 0;
+    static final int NO_NEXT = 1;
+    static final int UNDECIDED = 2;
+
+    // The Gregorian calendar repeats itself every 400 years. If a rule
+    // produces nothing over a full cycle, it never will.
+    private static final int CYCLE_DAYS = 146097;
+    private static final int CYCLE_WEEKS = CYCLE_DAYS / 7;
+    private static final int CYCLE_MONTHS = 400 * 12;
+    private static final int CYCLE_YEARS = 400;
+
+    private final CompiledRecurrence mRule;
+
+    // Candidates for the current period, as epoch days
+    private final int[] mBuffer = new int[366];
+    private int mBufferSize;
+    private int mBufferIndex;
+
+    // BYSETPOS scratch: bit 'i' set if mBuffer[i] is selected
+    private final long[] mSelected = new long[6];
+
+    // DAILY & WEEKLY: epoch day the next period starts on
+    // MONTHLY: year * 12 + month of the next period
+    // YEARLY: year of the next period
+    private int mNextPeriod;
+
+    // Cache for DAILY rules: the candidate mask for one month
+    private int mCachedMonth = -1;
+    private int mCachedMonthMask;
+
+    private int mMaxEmptyPeriods;
+    // Empty periods in a row, up to the current one
+    private int mEmptyPeriods;
+    private int mEmittedCount;
+    private boolean mDone;
+
+    /**
+     * Expands 'er' starting at {@link EventRecurrence#startDate}, which must be set.
+     */
+    public RecurrenceIterator(EventRecurrence er) {
+        this(er, er.startDate);
+    }
+
+    public RecurrenceIterator(EventRecurrence er, Time start) {
+        mRule = new CompiledRecurrence();
+        reset(er, start);
+    }
+
+    /**
+     * @param startMillis the first instance of the event (DTSTART)
+     * @param timezone    the event's timezone, or null for UTC
+     */
+    public RecurrenceIterator(EventRecurrence er, long startMillis, TimeZone timezone) {
+        mRule = new CompiledRecurrence();
+        reset(er, startMillis, timezone);
+    }
+
+    /**
+     * Expands an already compiled rule. The rule is shared, not copied.
+     */
+    RecurrenceIterator(CompiledRecurrence rule) {
+        mRule = rule;
+        restart();
+    }
+
+    /**
+     * Re-initializes this iterator to expand 'er' from 'start'.
+     *
+     * @param er    the recurrence rule. Its FREQ must be one of DAILY,
+     *              WEEKLY, MONTHLY or YEARLY
+     * @param start the first instance of the event (DTSTART)
+     */
+    public void reset(EventRecurrence er, Time start) {
+        compile(mRule, er, start);
+        restart();
+    }
+
+    /**
+     * Re-initializes this iterator to expand 'er' from 'startMillis'.
+     *
+     * @param er          the recurrence rule. Its FREQ must be one of DAILY,
+     *                    WEEKLY, MONTHLY or YEARLY
+     * @param startMillis the first instance of the event (DTSTART)
+     * @param timezone    the event's timezone, or null for UTC
+     */
+    public void reset(EventRecurrence er, long startMillis, TimeZone timezone) {
+        compile(mRule, er, startMillis, timezone);
+        restart();
+    }
+
+    /**
+     * Rewinds to the first occurrence.
+     */
+    public void restart() {
+        final CompiledRecurrence rule = mRule;
+        final int startPacked = EpochDayUtils.toPackedDate(rule.startDay);
+
+        switch (rule.freq) {
+            case EventRecurrence.DAILY:
+                mNextPeriod = rule.startDay;
+                mMaxEmptyPeriods = cycleLength(CYCLE_DAYS, rule.interval);
+                break;
+            case EventRecurrence.WEEKLY:
+                mNextPeriod = EpochDayUtils.getWeekStartEpochDay(rule.startDay, rule.wkst);
+                mMaxEmptyPeriods = cycleLength(CYCLE_WEEKS, rule.interval);
+                break;
+            case EventRecurrence.MONTHLY:
+                mNextPeriod = EpochDayUtils.toEpochMonth(EpochDayUtils.packedYear(startPacked),
+                        EpochDayUtils.packedMonth(startPacked));
+                mMaxEmptyPeriods = cycleLength(CYCLE_MONTHS, rule.interval);
+                break;
+            case EventRecurrence.YEARLY:
+                mNextPeriod = EpochDayUtils.packedYear(startPacked);
+                mMaxEmptyPeriods = cycleLength(CYCLE_YEARS, rule.interval);
+                break;
+        }
+
+        mCachedMonth = -1;
+        mBufferSize = mBufferIndex = 0;
+        mEmptyPeriods = 0;
+        mEmittedCount = 0;
+        mDone = false;
+    }
+
+    public boolean hasNext() {
+        return hasNextWithin(Integer.MAX_VALUE) == HAS_NEXT;
+    }
+
+    /**
+     * Same as {@link #hasNext()}, but expands at most 'maxPeriods' periods.
+     * A rule may go a long way between occurrences (up to a 400 year cycle);
+     * this lets a caller scan it in slices, e.g. to check for cancellation.
+     *
+     * @return HAS_NEXT, NO_NEXT, or UNDECIDED if the periods ran out first.
+     * Calling again carries on where the scan stopped.
+     */
+    int hasNextWithin(int maxPeriods) {
+        if (mDone) {
+            return NO_NEXT;
+        }
+
+        if (mRule.count > 0 && mEmittedCount >= mRule.count) {
+            mDone = true;
+            return NO_NEXT;
+        }
+
+        if (mBufferIndex >= mBufferSize) {
+            final int filled = fillNextPeriod(maxPeriods);
+            if (filled != HAS_NEXT) {
+                mDone = filled == NO_NEXT;
+                return filled;
+            }
+        }
+
+        if (mBuffer[mBufferIndex] > mRule.untilDay) {
+            mDone = true;
+            return NO_NEXT;
+        }
+
+        return HAS_NEXT;
+    }
+
+    /**
+     * @return the next occurrence as an epoch day
+     * @throws NoSuchElementException if there are no more occurrences
+     */
+    public int nextEpochDay() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        mEmittedCount++;
+        return mBuffer[mBufferIndex++];
+    }
+
+    /**
+     * @return the occurrence {@link #nextEpochDay()} would return, without
+     * consuming it
+     * @throws NoSuchElementException if there are no more occurrences
+     */
+    int peekEpochDay() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return mBuffer[mBufferIndex];
+    }
+
+    /**
+     * Skips all occurrences before 'epochDay'. Whole periods, and the rest
+     * of a partly consumed one, are skipped without being expanded unless
+     * the rule is bounded by COUNT (in which case every earlier occurrence
+     * still has to be counted).
+     */
+    public void advanceTo(int epochDay) {
+        if (mRule.count == 0 && !mDone) {
+            if (mBufferIndex < mBufferSize && mBuffer[mBufferSize - 1] < epochDay) {
+                // The rest of the current period is all before the target
+                mBufferIndex = mBufferSize;
+            }
+            if (mBufferIndex >= mBufferSize) {
+                skipPeriodsBefore(epochDay);
+            }
+        }
+
+        while (hasNext() && mBuffer[mBufferIndex] < epochDay) {
+            mEmittedCount++;
+            mBufferIndex++;
+        }
+    }
+
+    private void skipPeriodsBefore(int epochDay) {
+        final CompiledRecurrence rule = mRule;
+        final int target;
+        final int step;
+
+        switch (rule.freq) {
+            case EventRecurrence.DAILY:
+                target = epochDay;
+                step = rule.interval;
+                break;
+            case EventRecurrence.WEEKLY:
+                target = EpochDayUtils.getWeekStartEpochDay(epochDay, rule.wkst);
+                step = 7 * rule.interval;
+                break;
+            case EventRecurrence.MONTHLY: {
+                final int packed = EpochDayUtils.toPackedDate(epochDay);
+                target = EpochDayUtils.toEpochMonth(EpochDayUtils.packedYear(packed),
+                        EpochDayUtils.packedMonth(packed));
+                step = rule.interval;
+                break;
+            }
+            default:
+                target = EpochDayUtils.getYear(epochDay);
+                step = rule.interval;
+                break;
+        }
+
+        if (target > mNextPeriod) {
+            // Latest aligned period that does not pass the target
+            mNextPeriod += ((target - mNextPeriod) / step) * step;
+            mEmptyPeriods = 0;
+        }
+    }
+
+    /**
+     * Expands the next non-empty period, trying at most 'maxPeriods', into mBuffer.
+     *
+     * @return HAS_NEXT, NO_NEXT if the rule is exhausted, or UNDECIDED
+     */
+    private int fillNextPeriod(int maxPeriods) {
+        final CompiledRecurrence rule = mRule;
+        int periods = 0;
+
+        while (mEmptyPeriods <= mMaxEmptyPeriods) {
+            if (periods++ == maxPeriods) {
+                return UNDECIDED;
+            }
+            mBufferSize = mBufferIndex = 0;
+
+            final int periodStart;
+            switch (rule.freq) {
+                case EventRecurrence.DAILY:
+                    periodStart = mNextPeriod;
+                    if (EpochDayUtils.getYear(periodStart) > MAX_YEAR) {
+                        return NO_NEXT;
+                    }
+                    fillDaily();
+                    break;
+                case EventRecurrence.WEEKLY:
+                    periodStart = mNextPeriod;
+                    if (EpochDayUtils.getYear(periodStart) > MAX_YEAR) {
+                        return NO_NEXT;
+                    }
+                    fillWeekly();
+                    mNextPeriod += 7 * rule.interval;
+                    break;
+                case EventRecurrence.MONTHLY:
+                    if (mNextPeriod / 12 > MAX_YEAR) {
+                        return NO_NEXT;
+                    }
+                    periodStart = EpochDayUtils.toEpochDay(mNextPeriod / 12, mNextPeriod % 12, 1);
+                    fillMonth(mNextPeriod / 12, mNextPeriod % 12);
+                    mNextPeriod += rule.interval;
+                    break;
+                default:
+                    if (mNextPeriod > MAX_YEAR) {
+                        return NO_NEXT;
+                    }
+                    periodStart = EpochDayUtils.toEpochDay(mNextPeriod, 0, 1);
+                    for (int month = 0; month < 12; month++) {
+                        fillMonth(mNextPeriod, month);
+                    }
+                    mNextPeriod += rule.interval;
+                    break;
+            }
+
+            if (periodStart > rule.untilDay) {
+                return NO_NEXT;
+            }
+
+            if (mBufferSize > 0 && rule.hasSetPos()) {
+                applySetPos();
+            }
+
+            // Drop candidates preceding DTSTART
+            while (mBufferIndex < mBufferSize && mBuffer[mBufferIndex] < rule.startDay) {
+                mBufferIndex++;
+            }
+
+            if (mBufferIndex < mBufferSize) {
+                mEmptyPeriods = 0;
+                return HAS_NEXT;
+            }
+
+            mEmptyPeriods++;
+        }
+
+        return NO_NEXT;
+    }
+
+    private void fillDaily() {
+        final CompiledRecurrence rule = mRule;
+        final int day = mNextPeriod;
+        final int packed = EpochDayUtils.toPackedDate(day);
+        final int year = EpochDayUtils.packedYear(packed);
+        final int month = EpochDayUtils.packedMonth(packed);
+
+        final int epochMonth = EpochDayUtils.toEpochMonth(year, month);
+        if (epochMonth != mCachedMonth) {
+            mCachedMonth = epochMonth;
+            mCachedMonthMask = rule.isMonthAllowed(month) ?
+                    rule.getMonthDayMask(year, month) : 0;
+        }
+
+        final int monthDay = EpochDayUtils.packedMonthDay(packed);
+        if ((mCachedMonthMask >>> monthDay) == 0) {
+            // Nothing left in this month: jump to the first aligned day of the next one
+            final int nextMonthStart = day - monthDay + 1
+                    + EpochDayUtils.getDaysInMonth(year, month);
+            final int gap = nextMonthStart - day;
+            mNextPeriod = day + ((gap + rule.interval - 1) / rule.interval) * rule.interval;
+            return;
+        }
+
+        if ((mCachedMonthMask & (1 << monthDay)) != 0) {
+            mBuffer[mBufferSize++] = day;
+        }
+        mNextPeriod = day + rule.interval;
+    }
+
+    private void fillWeekly() {
+        final CompiledRecurrence rule = mRule;
+        for (int day = mNextPeriod, end = mNextPeriod + 7; day < end; day++) {
+            if (rule.isDayAllowed(day)) {
+                mBuffer[mBufferSize++] = day;
+            }
+        }
+    }
+
+    private void fillMonth(int year, int month) {
+        final CompiledRecurrence rule = mRule;
+        if (!rule.isMonthAllowed(month)) {
+            return;
+        }
+
+        int mask = rule.getMonthDayMask(year, month);
+        if (mask == 0) {
+            return;
+        }
+
+        final int dayZero = EpochDayUtils.toEpochDay(year, month, 1) - 1;
+        while (mask != 0) {
+            final int monthDay = Integer.numberOfTrailingZeros(mask);
+            mBuffer[mBufferSize++] = dayZero + monthDay;
+            mask &= mask - 1;
+        }
+    }
+
+    /**
+     * Keeps only the candidates selected by BYSETPOS, preserving order.
+     */
+    private void applySetPos() {
+        final CompiledRecurrence rule = mRule;
+        final long[] selected = mSelected;
+        final int size = mBufferSize;
+
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = 0;
+        }
+
+        for (int i = 0; i < rule.setPosCount; i++) {
+            final int pos = rule.setPos[i];
+            final int index = pos > 0 ? pos - 1 : size + pos;
+            if (pos != 0 && index >= 0 && index < size) {
+                selected[index >> 6] |= 1L << index;
+            }
+        }
+
+        int newSize = 0;
+        for (int i = 0; i < size; i++) {
+            if ((selected[i >> 6] & (1L << i)) != 0) {
+                mBuffer[newSize++] = mBuffer[i];
+            }
+        }
+        mBufferSize = newSize;
+    }
+
+    private static int cycleLength(int cycle, int interval) {
+        return cycle / gcd(cycle, interval);
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            final int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    /**
+     * Compiles 'er' into 'rule', starting on the date of 'start'.
+     */
+    static void compile(CompiledRecurrence rule, EventRecurrence er, Time start) {
+        if (start == null) {
+            throw new IllegalArgumentException("A start date is required");
+        }
+
+        // Only needed to move a UTC UNTIL into the event's timezone
+        final TimeZone timezone = er.until == null || start.timezone == null ?
+                null : TimeZone.getTimeZone(start.timezone);
+
+        rule.compile(er, EpochDayUtils.toEpochDay(start.year, start.month, start.monthDay),
+                UntilDate.resolve(er.until, timezone,
+                        start.hour * 3600 + start.minute * 60 + start.second));
+    }
+
+    /**
+     * Compiles 'er' into 'rule', starting on the date 'startMillis' falls on in 'timezone'.
+     */
+    static void compile(CompiledRecurrence rule, EventRecurrence er,
+                        long startMillis, TimeZone timezone) {
+        rule.compile(er, EpochDayUtils.fromMillis(startMillis, timezone),
+                UntilDate.resolve(er.until, timezone,
+                        EpochDayUtils.getSecondOfDay(startMillis, timezone)));
+    }
+}
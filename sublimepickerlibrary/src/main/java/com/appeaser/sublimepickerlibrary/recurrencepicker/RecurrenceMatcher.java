@@ -0,0 +1,237 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import android.text.format.Time;
+
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Answers "is this day an occurrence of the rule?" without expanding the
+ * rule from its start.
+ * <p/>
+ * The rule is compiled once into bitmasks; a query checks the day against
+ * the start/end bounds, the INTERVAL alignment of its period (modulus
+ * arithmetic on days, weeks, months or years) and the BY* masks. For
+ * MONTHLY & YEARLY rules, the day mask of the last month queried is cached,
+ * so checking all days of a month grid costs a few bit operations per day.
+ * <p/>
+ * COUNT is resolved up-front into the date of the last occurrence, which
+ * expands the rule once. Rules with BYSETPOS need a period's full candidate
+ * set, so those queries expand the single period containing the day. The
+ * days selected in the last expanded period are cached, & expansion carries
+ * on from there for later periods; only a query before that period rewinds
+ * to the start.
+ * <p/>
+ * Not thread-safe.
+ */
+public class RecurrenceMatcher {
+
+    private final CompiledRecurrence mRule = new CompiledRecurrence();
+
+    // Used for COUNT resolution & BYSETPOS rules. Shares mRule.
+    private final RecurrenceIterator mIterator;
+
+    // Period of DTSTART: the first day of its week for WEEKLY rules, its
+    // epoch month for MONTHLY rules & its year for YEARLY rules
+    private int mStartPeriod;
+
+    private int mCachedMonth = -1;
+    private int mCachedMonthMask;
+
+    // BYSETPOS: the last expanded period, as epoch days, & a bitset of its
+    // occurrences (bit 'i' set if the period's i-th day is one)
+    private int mSetPosPeriodStart = Integer.MAX_VALUE;
+    private int mSetPosPeriodEnd;
+    private final long[] mSetPosDays = new long[6];
+
+    /**
+     * Matches against 'er' starting at {@link EventRecurrence#startDate}, which must be set.
+     */
+    public RecurrenceMatcher(EventRecurrence er) {
+        this(er, er.startDate);
+    }
+
+    /**
+     * @param er    the recurrence rule. Its FREQ must be one of DAILY,
+     *              WEEKLY, MONTHLY or YEARLY
+     * @param start the first instance of the event (DTSTART)
+     */
+    public RecurrenceMatcher(EventRecurrence er, Time start) {
+        RecurrenceIterator.compile(mRule, er, start);
+        mIterator = new RecurrenceIterator(mRule);
+        init();
+    }
+
+    /**
+     * @param er          the recurrence rule. Its FREQ must be one of DAILY,
+     *                    WEEKLY, MONTHLY or YEARLY
+     * @param startMillis the first instance of the event (DTSTART)
+     * @param timezone    the event's timezone, or null for UTC
+     */
+    public RecurrenceMatcher(EventRecurrence er, long startMillis, TimeZone timezone) {
+        RecurrenceIterator.compile(mRule, er, startMillis, timezone);
+        mIterator = new RecurrenceIterator(mRule);
+        init();
+    }
+
+    private void init() {
+        final CompiledRecurrence rule = mRule;
+        if (rule.count > 0) {
+            // Replace COUNT with the date of the last occurrence it allows
+            int lastDay = rule.startDay - 1;
+            while (mIterator.hasNext()) {
+                lastDay = mIterator.nextEpochDay();
+            }
+            rule.count = 0;
+            rule.untilDay = lastDay;
+        }
+
+        final int startPacked = EpochDayUtils.toPackedDate(rule.startDay);
+        switch (rule.freq) {
+            case EventRecurrence.DAILY:
+                mStartPeriod = rule.startDay;
+                break;
+            case EventRecurrence.WEEKLY:
+                mStartPeriod = EpochDayUtils.getWeekStartEpochDay(rule.startDay, rule.wkst);
+                break;
+            case EventRecurrence.MONTHLY:
+                mStartPeriod = EpochDayUtils.toEpochMonth(EpochDayUtils.packedYear(startPacked),
+                        EpochDayUtils.packedMonth(startPacked));
+                break;
+            case EventRecurrence.YEARLY:
+                mStartPeriod = EpochDayUtils.packedYear(startPacked);
+                break;
+        }
+    }
+
+    /**
+     * @param year     the year
+     * @param month    the month, 0-based
+     * @param monthDay the day of the month, 1-based
+     * @return true if the rule produces an instance on the given date
+     */
+    public boolean matches(int year, int month, int monthDay) {
+        return matches(EpochDayUtils.toEpochDay(year, month, monthDay));
+    }
+
+    /**
+     * @param epochDay the day to check (see {@link EpochDayUtils})
+     * @return true if the rule produces an instance on 'epochDay'
+     */
+    public boolean matches(int epochDay) {
+        final CompiledRecurrence rule = mRule;
+        if (epochDay < rule.startDay || epochDay > rule.untilDay) {
+            return false;
+        }
+
+        if (rule.hasSetPos()) {
+            return matchesBySetPos(epochDay);
+        }
+
+        switch (rule.freq) {
+            case EventRecurrence.DAILY:
+                return (epochDay - mStartPeriod) % rule.interval == 0
+                        && rule.isDayAllowed(epochDay);
+            case EventRecurrence.WEEKLY: {
+                final int weeks = (EpochDayUtils.getWeekStartEpochDay(epochDay, rule.wkst)
+                        - mStartPeriod) / 7;
+                return weeks % rule.interval == 0 && rule.isDayAllowed(epochDay);
+            }
+            default: {
+                final int packed = EpochDayUtils.toPackedDate(epochDay);
+                final int year = EpochDayUtils.packedYear(packed);
+                final int month = EpochDayUtils.packedMonth(packed);
+                final int period = rule.freq == EventRecurrence.MONTHLY ?
+                        EpochDayUtils.toEpochMonth(year, month) : year;
+                if ((period - mStartPeriod) % rule.interval != 0) {
+                    return false;
+                }
+                return (getMonthMask(year, month) & (1 << EpochDayUtils.packedMonthDay(packed)))
+                        != 0;
+            }
+        }
+    }
+
+    private int getMonthMask(int year, int month) {
+        final int epochMonth = EpochDayUtils.toEpochMonth(year, month);
+        if (epochMonth != mCachedMonth) {
+            mCachedMonth = epochMonth;
+            mCachedMonthMask = mRule.isMonthAllowed(month) ?
+                    mRule.getMonthDayMask(year, month) : 0;
+        }
+        return mCachedMonthMask;
+    }
+
+    // BYSETPOS selects from a period's candidates, so the period has to be expanded
+    private boolean matchesBySetPos(int epochDay) {
+        if (epochDay < mSetPosPeriodStart || epochDay > mSetPosPeriodEnd) {
+            expandPeriodOf(epochDay);
+        }
+
+        final int index = epochDay - mSetPosPeriodStart;
+        return (mSetPosDays[index >> 6] & (1L << index)) != 0;
+    }
+
+    private void expandPeriodOf(int epochDay) {
+        final CompiledRecurrence rule = mRule;
+        final int start;
+        final int end;
+        switch (rule.freq) {
+            case EventRecurrence.DAILY:
+                start = end = epochDay;
+                break;
+            case EventRecurrence.WEEKLY:
+                start = EpochDayUtils.getWeekStartEpochDay(epochDay, rule.wkst);
+                end = start + 6;
+                break;
+            case EventRecurrence.MONTHLY: {
+                final int packed = EpochDayUtils.toPackedDate(epochDay);
+                start = epochDay - EpochDayUtils.packedMonthDay(packed) + 1;
+                end = start + EpochDayUtils.getDaysInMonth(EpochDayUtils.packedYear(packed),
+                        EpochDayUtils.packedMonth(packed)) - 1;
+                break;
+            }
+            default: {
+                final int year = EpochDayUtils.getYear(epochDay);
+                start = EpochDayUtils.toEpochDay(year, 0, 1);
+                end = start + EpochDayUtils.getDaysInYear(year) - 1;
+                break;
+            }
+        }
+
+        final RecurrenceIterator iterator = mIterator;
+        if (start < mSetPosPeriodStart) {
+            // The iterator only moves forward
+            iterator.restart();
+        }
+        iterator.advanceTo(start);
+
+        final long[] days = mSetPosDays;
+        Arrays.fill(days, 0);
+        while (iterator.hasNext() && iterator.peekEpochDay() <= end) {
+            final int index = iterator.nextEpochDay() - start;
+            days[index >> 6] |= 1L << index;
+        }
+
+        mSetPosPeriodStart = start;
+        mSetPosPeriodEnd = end;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import android.text.format.Time;
+
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Tells which days of a month a rule lands on, as a bit mask: bit
+ * (monthDay - 1) is set for each day with an occurrence. Used to mark
+ * occurrences in a month grid.
+ * <p/>
+ * Masks are cached per month. Paging forward picks up expansion where the
+ * previous month ended, so a month costs only its own occurrences. Paging
+ * back rewinds the rule & skips ahead to the month, which is cheap unless
+ * the rule is bounded by COUNT.
+ * <p/>
+ * Not thread-safe.
+ */
+public class RecurrenceMonthMask {
+
+    // Months held in the cache. Consecutive months never evict each other.
+    private static final int CACHE_SIZE = 64;
+
+    private static final int NO_MONTH = Integer.MIN_VALUE;
+
+    // mPendingDay values
+    private static final int NONE = Integer.MIN_VALUE;
+    private static final int EXHAUSTED = Integer.MAX_VALUE;
+
+    private final RecurrenceIterator mIterator;
+
+    // Direct-mapped on epoch month
+    private final int[] mCachedMonths = new int[CACHE_SIZE];
+    private final int[] mCachedMasks = new int[CACHE_SIZE];
+
+    // Every occurrence before mFloorDay has been taken from mIterator.
+    // mPendingDay is the first occurrence at or after it, if already taken.
+    private int mFloorDay;
+    private int mPendingDay;
+
+    /**
+     * @param er    the recurrence rule. Its FREQ must be one of DAILY,
+     *              WEEKLY, MONTHLY or YEARLY
+     * @param start the first instance of the event (DTSTART)
+     */
+    public RecurrenceMonthMask(EventRecurrence er, Time start) {
+        mIterator = new RecurrenceIterator(er, start);
+        invalidate();
+    }
+
+    /**
+     * @param startMillis the first instance of the event (DTSTART)
+     * @param timezone    the event's timezone, or null for UTC
+     */
+    public RecurrenceMonthMask(EventRecurrence er, long startMillis, TimeZone timezone) {
+        mIterator = new RecurrenceIterator(er, startMillis, timezone);
+        invalidate();
+    }
+
+    /**
+     * Switches to another rule, e.g. as it is being edited.
+     */
+    public void reset(EventRecurrence er, Time start) {
+        mIterator.reset(er, start);
+        invalidate();
+    }
+
+    public void reset(EventRecurrence er, long startMillis, TimeZone timezone) {
+        mIterator.reset(er, startMillis, timezone);
+        invalidate();
+    }
+
+    /**
+     * @param month 0-11
+     * @return the mask of days in 'month' that the rule lands on. Bit 0 is
+     * the 1st of the month.
+     */
+    public int getMask(int year, int month) {
+        final int epochMonth = EpochDayUtils.toEpochMonth(year, month);
+        final int slot = epochMonth & (CACHE_SIZE - 1);
+        if (mCachedMonths[slot] == epochMonth) {
+            return mCachedMasks[slot];
+        }
+
+        final int firstDay = EpochDayUtils.toEpochDay(year, month, 1);
+        final int mask = computeMask(firstDay,
+                firstDay + EpochDayUtils.getDaysInMonth(year, month) - 1);
+        mCachedMonths[slot] = epochMonth;
+        mCachedMasks[slot] = mask;
+        return mask;
+    }
+
+    /**
+     * @param monthDay 1-31
+     * @return true if 'mask' has an occurrence on 'monthDay'
+     */
+    public static boolean hasOccurrence(int mask, int monthDay) {
+        return (mask & (1 << (monthDay - 1))) != 0;
+    }
+
+    private void invalidate() {
+        Arrays.fill(mCachedMonths, NO_MONTH);
+        mFloorDay = Integer.MIN_VALUE;
+        mPendingDay = NONE;
+    }
+
+    private int computeMask(int firstDay, int lastDay) {
+        final RecurrenceIterator iterator = mIterator;
+        if (firstDay < mFloorDay) {
+            // Paging back: the iterator only moves forward
+            iterator.restart();
+            mPendingDay = NONE;
+        }
+        if (mPendingDay != EXHAUSTED && mPendingDay < firstDay) {
+            mPendingDay = NONE;
+            iterator.advanceTo(firstDay);
+        }
+
+        int mask = 0;
+        while (true) {
+            if (mPendingDay == NONE) {
+                mPendingDay = iterator.hasNext() ? iterator.nextEpochDay() : EXHAUSTED;
+            }
+            if (mPendingDay > lastDay) {
+                break;
+            }
+            mask |= 1 << (mPendingDay - firstDay);
+            mPendingDay = NONE;
+        }
+        mFloorDay = lastDay + 1;
+        return mask;
+    }
+}
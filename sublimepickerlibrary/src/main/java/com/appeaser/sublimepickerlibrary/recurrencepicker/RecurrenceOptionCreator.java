@@ -58,6 +58,7 @@ import com.appeaser.sublimepickerlibrary.R;
 import com.appeaser.sublimepickerlibrary.common.DecisionButtonLayout;
 import com.appeaser.sublimepickerlibrary.datepicker.RecurrenceEndDatePicker;
 import com.appeaser.sublimepickerlibrary.drawables.CheckableDrawable;
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
 import com.appeaser.sublimepickerlibrary.utilities.RecurrenceUtils;
 import com.appeaser.sublimepickerlibrary.utilities.SUtils;
 
@@ -96,6 +97,9 @@ public class RecurrenceOptionCreator extends FrameLayout
     private static final int FIFTH_WEEK_IN_A_MONTH = 5;
     private static final int LAST_NTH_DAY_OF_WEEK = -1;
 
+    // Number of upcoming occurrences listed below the options
+    private static final int PREVIEW_COUNT = 5;
+
     // Stripped down version of 'SublimeMaterialDatePicker'
     //private DatePickerView mDateOnlyPicker;
     private RecurrenceEndDatePicker mDateOnlyPicker;
@@ -115,6 +119,15 @@ public class RecurrenceOptionCreator extends FrameLayout
     private RecurrenceModel mModel = new RecurrenceModel();
     private Toast mToast;
 
+    private TextView mPreviewTextView;
+    private RecurrencePreviewer mPreviewer;
+    private final EventRecurrence mPreviewRecurrence = new EventRecurrence();
+    private final Calendar mPreviewCalendar = Calendar.getInstance();
+
+    // Occurrences marked on the end date picker
+    private final EventRecurrence mOccurrenceRecurrence = new EventRecurrence();
+    private RecurrenceMonthMask mOccurrences;
+
     private final int[] TIME_DAY_TO_CALENDAR_DAY = new int[]{
             Calendar.SUNDAY,
             Calendar.MONDAY,
@@ -428,88 +441,24 @@ public class RecurrenceOptionCreator extends FrameLayout
     }
 
     static public boolean isSupportedMonthlyByNthDayOfWeek(int num) {
-        // We only support monthlyByNthDayOfWeek when it is greater then 0 but less then 5.
-        // Or if -1 when it is the last monthly day of the week.
-        return (num > 0 && num <= FIFTH_WEEK_IN_A_MONTH) || num == LAST_NTH_DAY_OF_WEEK;
+        return RecurrenceClassifier.isSupportedMonthlyByNthDayOfWeek(num);
     }
 
     static public boolean canHandleRecurrenceRule(EventRecurrence er) {
-        switch (er.freq) {
-            case EventRecurrence.DAILY:
-            case EventRecurrence.MONTHLY:
-            case EventRecurrence.YEARLY:
-            case EventRecurrence.WEEKLY:
-                break;
-            default:
-                return false;
-        }
-
-        if (er.count > 0 && !TextUtils.isEmpty(er.until)) {
-            return false;
-        }
-
-        // Weekly: For "repeat by day of week", the day of week to repeat is in
-        // er.byday[]
-
-        /*
-         * Monthly: For "repeat by nth day of week" the day of week to repeat is
-         * in er.byday[] and the "nth" is stored in er.bydayNum[]. Currently we
-         * can handle only one and only in monthly
-         */
-        int numOfByDayNum = 0;
-        for (int i = 0; i < er.bydayCount; i++) {
-            if (isSupportedMonthlyByNthDayOfWeek(er.bydayNum[i])) {
-                ++numOfByDayNum;
-            }
-        }
-
-        if (numOfByDayNum > 1) {
-            return false;
-        }
-
-        if (numOfByDayNum > 0 && er.freq != EventRecurrence.MONTHLY) {
-            return false;
-        }
-
-        // The UI only handle repeat by one day of month i.e. not 9th and 10th
-        // of every month
-        if (er.bymonthdayCount > 1) {
-            return false;
-        }
-
-        if (er.freq == EventRecurrence.MONTHLY) {
-            if (er.bydayCount > 1) {
-                return false;
-            }
-            if (er.bydayCount > 0 && er.bymonthdayCount > 0) {
-                return false;
-            }
-        }
-
-        return true;
+        return RecurrenceClassifier.isSupported(RecurrenceClassifier.classify(er));
     }
 
     // TODO don't lose data when getting data that our UI can't handle
     static private void copyEventRecurrenceToModel(final EventRecurrence er,
                                                    RecurrenceModel model) {
-        // Freq:
-        switch (er.freq) {
-            case EventRecurrence.DAILY:
-                model.freq = RecurrenceModel.FREQ_DAILY;
-                break;
-            case EventRecurrence.MONTHLY:
-                model.freq = RecurrenceModel.FREQ_MONTHLY;
-                break;
-            case EventRecurrence.YEARLY:
-                model.freq = RecurrenceModel.FREQ_YEARLY;
-                break;
-            case EventRecurrence.WEEKLY:
-                model.freq = RecurrenceModel.FREQ_WEEKLY;
-                break;
-            default:
-                throw new IllegalStateException("freq=" + er.freq);
+        final int descriptor = RecurrenceClassifier.classify(er);
+        if (!RecurrenceClassifier.isConvertible(descriptor)) {
+            throw new IllegalStateException("Can't convert recurrence: " + er.toString());
         }
 
+        // Freq: RecurrenceModel.FREQ_* match RecurrenceClassifier.FREQ_*
+        model.freq = RecurrenceClassifier.getFreq(descriptor);
+
         // Interval:
         if (er.interval > 0) {
             model.interval = er.interval;
@@ -523,7 +472,7 @@ public class RecurrenceOptionCreator extends FrameLayout
         }
 
         // End by date:
-        if (!TextUtils.isEmpty(er.until)) {
+        if (RecurrenceClassifier.getEnd(descriptor) == RecurrenceClassifier.END_BY_DATE) {
             if (model.endDate == null) {
                 model.endDate = new Time();
             }
@@ -534,60 +483,27 @@ public class RecurrenceOptionCreator extends FrameLayout
                 model.endDate = null;
             }
 
-            // LIMITATION: The UI can only handle END_BY_DATE or END_BY_COUNT
-            if (model.end == RecurrenceModel.END_BY_COUNT && model.endDate != null) {
-                throw new IllegalStateException("freq=" + er.freq);
-            }
-
             model.end = RecurrenceModel.END_BY_DATE;
         }
 
-        // Weekly: repeat by day of week or Monthly: repeat by nth day of week
-        // in the month
-        Arrays.fill(model.weeklyByDayOfWeek, false);
-        if (er.bydayCount > 0) {
-            int count = 0;
-            for (int i = 0; i < er.bydayCount; i++) {
-                int dayOfWeek = EventRecurrence.day2TimeDay(er.byday[i]);
-                model.weeklyByDayOfWeek[dayOfWeek] = true;
-
-                if (model.freq == RecurrenceModel.FREQ_MONTHLY &&
-                        isSupportedMonthlyByNthDayOfWeek(er.bydayNum[i])) {
-                    // LIMITATION: Can handle only (one) weekDayNum in nth or last and only
-                    // when
-                    // monthly
-                    model.monthlyByDayOfWeek = dayOfWeek;
-                    model.monthlyByNthDayOfWeek = er.bydayNum[i];
-                    model.monthlyRepeat = RecurrenceModel.MONTHLY_BY_NTH_DAY_OF_WEEK;
-                    count++;
-                }
-            }
-
-            if (model.freq == RecurrenceModel.FREQ_MONTHLY) {
-                if (er.bydayCount != 1) {
-                    // Can't handle 1st Monday and 2nd Wed
-                    throw new IllegalStateException("Can handle only 1 byDayOfWeek in monthly");
-                }
-                if (count != 1) {
-                    throw new IllegalStateException(
-                            "Didn't specify which nth day of week to repeat for a monthly");
-                }
-            }
+        // Weekly: repeat by day of week
+        final int weekDays = RecurrenceClassifier.getWeekDays(descriptor);
+        for (int i = 0; i < 7; i++) {
+            model.weeklyByDayOfWeek[i] = (weekDays & (1 << i)) != 0;
         }
 
-        // Monthly by day of month
-        if (model.freq == RecurrenceModel.FREQ_MONTHLY) {
-            if (er.bymonthdayCount == 1) {
-                if (model.monthlyRepeat == RecurrenceModel.MONTHLY_BY_NTH_DAY_OF_WEEK) {
-                    throw new IllegalStateException(
-                            "Can handle only by monthday or by nth day of week, not both");
-                }
-                model.monthlyByMonthDay = er.bymonthday[0];
+        // Monthly: repeat by nth day of week in the month, or by day of month
+        switch (RecurrenceClassifier.getMonthlyRepeat(descriptor)) {
+            case RecurrenceClassifier.MONTHLY_BY_NTH_DAY_OF_WEEK:
+                model.monthlyByDayOfWeek = RecurrenceClassifier.getMonthlyByDayOfWeek(descriptor);
+                model.monthlyByNthDayOfWeek =
+                        RecurrenceClassifier.getMonthlyByNthDayOfWeek(descriptor);
+                model.monthlyRepeat = RecurrenceModel.MONTHLY_BY_NTH_DAY_OF_WEEK;
+                break;
+            case RecurrenceClassifier.MONTHLY_BY_DATE:
+                model.monthlyByMonthDay = RecurrenceClassifier.getMonthlyByMonthDay(descriptor);
                 model.monthlyRepeat = RecurrenceModel.MONTHLY_BY_DATE;
-            } else if (er.bymonthCount > 1) {
-                // LIMITATION: Can handle only one month day
-                throw new IllegalStateException("Can handle only one bymonthday");
-            }
+                break;
         }
     }
 
@@ -824,6 +740,14 @@ public class RecurrenceOptionCreator extends FrameLayout
         mEndDateTextView = (TextView) findViewById(R.id.endDate);
         mEndDateTextView.setOnClickListener(this);
 
+        mPreviewTextView = (TextView) findViewById(R.id.occurrencePreview);
+        mPreviewer = new RecurrencePreviewer(new RecurrencePreviewer.Listener() {
+            @Override
+            public void onPreview(int[] epochDays) {
+                showPreview(epochDays);
+            }
+        });
+
         SUtils.setViewBackground(mEndDateTextView,
                 SUtils.createButtonBg(getContext(), SUtils.COLOR_BUTTON_NORMAL,
                         SUtils.COLOR_CONTROL_HIGHLIGHT));
@@ -918,7 +842,7 @@ public class RecurrenceOptionCreator extends FrameLayout
 
         if (!TextUtils.isEmpty(recurrenceRule)) {
             mModel.recurrenceState = RecurrenceModel.STATE_RECURRENCE;
-            mRecurrence.parse(recurrenceRule);
+            EventRecurrenceCache.getDefault().parse(recurrenceRule, mRecurrence);
             copyEventRecurrenceToModel(mRecurrence, mModel);
             // Leave today's day of week as checked by default in weekly view.
             if (mRecurrence.bydayCount == 0) {
@@ -988,33 +912,36 @@ public class RecurrenceOptionCreator extends FrameLayout
     }
 
     private void updateDoneButtonState() {
+        mButtonLayout.updateValidity(isModelComplete());
+    }
+
+    /**
+     * @return false if the options are incomplete, e.g. a weekly rule
+     * without any days
+     */
+    private boolean isModelComplete() {
         if (mModel.recurrenceState == RecurrenceModel.STATE_NO_RECURRENCE) {
-            mButtonLayout.updateValidity(true);
-            return;
+            return true;
         }
 
         if (mInterval.getText().toString().length() == 0) {
-            mButtonLayout.updateValidity(false);
-            return;
+            return false;
         }
 
         if (mEndCount.getVisibility() == View.VISIBLE &&
                 mEndCount.getText().toString().length() == 0) {
-            mButtonLayout.updateValidity(false);
-            return;
+            return false;
         }
 
         if (mModel.freq == RecurrenceModel.FREQ_WEEKLY) {
             for (CompoundButton b : mWeekByDayButtons) {
                 if (b.isChecked()) {
-                    mButtonLayout.updateValidity(true);
-                    return;
+                    return true;
                 }
             }
-            mButtonLayout.updateValidity(false);
-            return;
+            return false;
         }
-        mButtonLayout.updateValidity(true);
+        return true;
     }
 
     @Override
@@ -1206,6 +1133,74 @@ public class RecurrenceOptionCreator extends FrameLayout
                 }
             }
         }
+
+        updatePreview();
+    }
+
+    /**
+     * Schedules a preview of the next occurrences of the rule being edited.
+     * The preview is computed in the background, once editing pauses.
+     */
+    private void updatePreview() {
+        if (mPreviewer == null) {
+            // Still inflating
+            return;
+        }
+
+        if (mModel.recurrenceState == RecurrenceModel.STATE_NO_RECURRENCE
+                || !isModelComplete()) {
+            mPreviewer.cancel();
+            mPreviewTextView.setVisibility(View.GONE);
+            return;
+        }
+
+        // copyModelToEventRecurrence() moves the end date to UTC. Leave
+        // the model's own alone, the end date picker reads its fields.
+        final Time endDate = mModel.endDate;
+        if (endDate != null) {
+            mModel.endDate = new Time(endDate);
+        }
+        try {
+            copyModelToEventRecurrence(mModel, mPreviewRecurrence);
+        } catch (IllegalStateException ise) {
+            // Incomplete, e.g. while the count is being typed
+            mPreviewer.cancel();
+            mPreviewTextView.setVisibility(View.GONE);
+            return;
+        } finally {
+            mModel.endDate = endDate;
+        }
+        mPreviewRecurrence.wkst = mRecurrence.wkst;
+        mPreviewer.request(mPreviewRecurrence, mTime, PREVIEW_COUNT);
+    }
+
+    private void showPreview(int[] epochDays) {
+        if (epochDays.length == 0) {
+            mPreviewTextView.setVisibility(View.GONE);
+            return;
+        }
+
+        final StringBuilder dates = new StringBuilder();
+        for (int i = 0; i < epochDays.length; i++) {
+            if (i > 0) {
+                dates.append(", ");
+            }
+            final int packed = EpochDayUtils.toPackedDate(epochDays[i]);
+            mPreviewCalendar.clear();
+            mPreviewCalendar.set(EpochDayUtils.packedYear(packed),
+                    EpochDayUtils.packedMonth(packed), EpochDayUtils.packedMonthDay(packed));
+            dates.append(mEndDateFormatter.format(mPreviewCalendar.getTime()));
+        }
+
+        mPreviewTextView.setText(mResources.getString(R.string.recurrence_next_occurrences,
+                dates.toString()));
+        mPreviewTextView.setVisibility(View.VISIBLE);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mPreviewer.cancel();
     }
 
     /**
@@ -1384,11 +1379,39 @@ public class RecurrenceOptionCreator extends FrameLayout
         mDateOnlyPicker.init(mModel.endDate.year,
                 mModel.endDate.month, mModel.endDate.monthDay, this);
         mDateOnlyPicker.setFirstDayOfWeek(RecurrenceUtils.getFirstDayOfWeekAsCalendar());
+        mDateOnlyPicker.setOccurrences(getOccurrences());
 
         mRecurrencePicker.setVisibility(View.GONE);
         mDateOnlyPicker.setVisibility(View.VISIBLE);
     }
 
+    /**
+     * @return occurrences of the rule being edited, ignoring its end - so that
+     * all the instances an end date would cut off are shown. Null if the event
+     * doesn't repeat.
+     */
+    private RecurrenceMonthMask getOccurrences() {
+        if (mModel.recurrenceState == RecurrenceModel.STATE_NO_RECURRENCE) {
+            return null;
+        }
+
+        final int end = mModel.end;
+        mModel.end = RecurrenceModel.END_NEVER;
+        try {
+            copyModelToEventRecurrence(mModel, mOccurrenceRecurrence);
+        } finally {
+            mModel.end = end;
+        }
+        mOccurrenceRecurrence.wkst = mRecurrence.wkst;
+
+        if (mOccurrences == null) {
+            mOccurrences = new RecurrenceMonthMask(mOccurrenceRecurrence, mTime);
+        } else {
+            mOccurrences.reset(mOccurrenceRecurrence, mTime);
+        }
+        return mOccurrences;
+    }
+
     public interface OnRecurrenceSetListener {
         void onRecurrenceSet(String rrule);
 
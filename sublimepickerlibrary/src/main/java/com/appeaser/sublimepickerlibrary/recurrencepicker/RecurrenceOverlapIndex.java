@@ -0,0 +1,366 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import android.text.format.Time;
+
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Finds which of a set of recurring events collide with each other, or with
+ * a new event, within a window of days.
+ * <p/>
+ * Each added rule is expanded once over the window. Its occurrences go into
+ * a sorted long[] keyed by (start day, rule id), one array per distinct
+ * duration. A query expands its own rule and binary-searches each array for
+ * every occurrence. Within an array all occurrences cover the same number of
+ * days, so every one in the searched range is a collision. The cost per
+ * query occurrence is O(b log n) plus the number of collisions, 'b' being
+ * the number of distinct durations, instead of expanding every indexed rule
+ * again.
+ * <p/>
+ * Resolution is one day, like the rest of the recurrence engine. An event
+ * may span several days: an occurrence starting on day 'd' with a duration
+ * of 'n' days covers d .. d + n - 1. Two occurrences overlap if they share
+ * a day.
+ * <p/>
+ * Days are epoch days (see {@link EpochDayUtils}). Add rules first, then
+ * query. Not thread-safe.
+ */
+public class RecurrenceOverlapIndex {
+
+    private final int mFromDay;
+    private final int mToDay;
+
+    // Reused for every expansion
+    private RecurrenceIterator mIterator;
+
+    // Per rule: its duration in days & its occurrences, in
+    // mRuleDays[mRuleStart[id] ... mRuleStart[id + 1] - 1]
+    private int[] mDurations = new int[8];
+    private int[] mRuleStart = new int[9];
+    private int[] mRuleDays = new int[64];
+    private int mRuleCount;
+    private int mOccurrenceCount;
+
+    // Per distinct duration, ascending: (day << 32) | rule id, sorted.
+    // Built on the first query after an add.
+    private long[][] mIndex;
+    private int[] mIndexDurations;
+
+    // Query scratch
+    private boolean[] mHits = new boolean[8];
+    private int[] mQueryDays = new int[64];
+
+    /**
+     * @param fromDay first day of the window, inclusive
+     * @param toDay   last day of the window, inclusive
+     */
+    public RecurrenceOverlapIndex(int fromDay, int toDay) {
+        if (toDay < fromDay) {
+            throw new IllegalArgumentException("toDay (" + toDay + ") is before fromDay ("
+                    + fromDay + ")");
+        }
+        mFromDay = fromDay;
+        mToDay = toDay;
+    }
+
+    /**
+     * Adds a single-day event.
+     *
+     * @return the id of the rule, used in query results
+     */
+    public int add(EventRecurrence er, Time start) {
+        return add(er, start, 1);
+    }
+
+    /**
+     * @param er           the recurrence rule. Its FREQ must be one of DAILY,
+     *                     WEEKLY, MONTHLY or YEARLY
+     * @param start        the first instance of the event (DTSTART)
+     * @param durationDays number of days each occurrence covers, at least 1
+     * @return the id of the rule, used in query results
+     */
+    public int add(EventRecurrence er, Time start, int durationDays) {
+        checkDuration(durationDays);
+        reset(er, start);
+        return addExpanded(durationDays);
+    }
+
+    /**
+     * @param startMillis  the first instance of the event (DTSTART)
+     * @param timezone     the event's timezone, or null for UTC
+     * @param durationDays number of days each occurrence covers, at least 1
+     * @return the id of the rule, used in query results
+     */
+    public int add(EventRecurrence er, long startMillis, TimeZone timezone, int durationDays) {
+        checkDuration(durationDays);
+        reset(er, startMillis, timezone);
+        return addExpanded(durationDays);
+    }
+
+    /**
+     * @return the number of rules added
+     */
+    public int size() {
+        return mRuleCount;
+    }
+
+    /**
+     * @return ids of the rules that have an occurrence covering 'epochDay',
+     * in ascending order
+     */
+    public int[] getRulesOn(int epochDay) {
+        mQueryDays[0] = epochDay;
+        return collectHits(mQueryDays, 1, 1, -1);
+    }
+
+    /**
+     * @return ids of the indexed rules that overlap rule 'id' within the window,
+     * in ascending order. 'id' itself is not included.
+     */
+    public int[] findOverlaps(int id) {
+        if (id < 0 || id >= mRuleCount) {
+            throw new IllegalArgumentException("No rule with id " + id);
+        }
+
+        final int from = mRuleStart[id];
+        final int count = mRuleStart[id + 1] - from;
+        final int[] days = ensureQueryCapacity(count);
+        System.arraycopy(mRuleDays, from, days, 0, count);
+        return collectHits(days, count, mDurations[id], id);
+    }
+
+    /**
+     * @param er           the rule to check, e.g. one about to be saved
+     * @param start        its first instance (DTSTART)
+     * @param durationDays number of days each of its occurrences covers
+     * @return ids of the indexed rules it overlaps within the window, in ascending order
+     */
+    public int[] findOverlaps(EventRecurrence er, Time start, int durationDays) {
+        checkDuration(durationDays);
+        reset(er, start);
+        // Expanding may replace mQueryDays
+        final int count = expandQuery(durationDays);
+        return collectHits(mQueryDays, count, durationDays, -1);
+    }
+
+    /**
+     * @param startMillis  its first instance (DTSTART)
+     * @param timezone     the event's timezone, or null for UTC
+     * @param durationDays number of days each of its occurrences covers
+     * @return ids of the indexed rules it overlaps within the window, in ascending order
+     */
+    public int[] findOverlaps(EventRecurrence er, long startMillis, TimeZone timezone,
+                              int durationDays) {
+        checkDuration(durationDays);
+        reset(er, startMillis, timezone);
+        // Expanding may replace mQueryDays
+        final int count = expandQuery(durationDays);
+        return collectHits(mQueryDays, count, durationDays, -1);
+    }
+
+    private void reset(EventRecurrence er, Time start) {
+        if (mIterator == null) {
+            mIterator = new RecurrenceIterator(er, start);
+        } else {
+            mIterator.reset(er, start);
+        }
+    }
+
+    private void reset(EventRecurrence er, long startMillis, TimeZone timezone) {
+        if (mIterator == null) {
+            mIterator = new RecurrenceIterator(er, startMillis, timezone);
+        } else {
+            mIterator.reset(er, startMillis, timezone);
+        }
+    }
+
+    private static void checkDuration(int durationDays) {
+        if (durationDays < 1) {
+            throw new IllegalArgumentException("durationDays must be at least 1, was "
+                    + durationDays);
+        }
+    }
+
+    private int addExpanded(int durationDays) {
+        final int id = mRuleCount;
+        if (id == mDurations.length) {
+            mDurations = Arrays.copyOf(mDurations, id * 2);
+            mRuleStart = Arrays.copyOf(mRuleStart, id * 2 + 1);
+            mHits = new boolean[id * 2];
+        }
+
+        // Occurrences starting before the window may still reach into it
+        final RecurrenceIterator iterator = mIterator;
+        iterator.advanceTo(mFromDay - (durationDays - 1));
+        int count = mOccurrenceCount;
+        while (iterator.hasNext()) {
+            final int day = iterator.nextEpochDay();
+            if (day > mToDay) {
+                break;
+            }
+            if (count == mRuleDays.length) {
+                mRuleDays = Arrays.copyOf(mRuleDays, count * 2);
+            }
+            mRuleDays[count++] = day;
+        }
+
+        mDurations[id] = durationDays;
+        mRuleStart[id] = mOccurrenceCount;
+        mRuleStart[id + 1] = count;
+        mOccurrenceCount = count;
+        mRuleCount++;
+        mIndex = null;
+        return id;
+    }
+
+    /**
+     * Expands the query rule into mQueryDays.
+     *
+     * @return the number of occurrences
+     */
+    private int expandQuery(int durationDays) {
+        final RecurrenceIterator iterator = mIterator;
+        iterator.advanceTo(mFromDay - (durationDays - 1));
+        int count = 0;
+        while (iterator.hasNext()) {
+            final int day = iterator.nextEpochDay();
+            if (day > mToDay) {
+                break;
+            }
+            ensureQueryCapacity(count + 1)[count++] = day;
+        }
+        return count;
+    }
+
+    private int[] ensureQueryCapacity(int capacity) {
+        if (mQueryDays.length < capacity) {
+            mQueryDays = Arrays.copyOf(mQueryDays, Math.max(capacity, mQueryDays.length * 2));
+        }
+        return mQueryDays;
+    }
+
+    private void buildIndex() {
+        final int ruleCount = mRuleCount;
+
+        // Distinct durations, ascending
+        final int[] durations = Arrays.copyOf(mDurations, ruleCount);
+        Arrays.sort(durations);
+        int bucketCount = 0;
+        for (int i = 0; i < ruleCount; i++) {
+            if (i == 0 || durations[i] != durations[i - 1]) {
+                durations[bucketCount++] = durations[i];
+            }
+        }
+
+        final int[] ruleBuckets = new int[ruleCount];
+        final int[] sizes = new int[bucketCount];
+        for (int id = 0; id < ruleCount; id++) {
+            final int bucket = Arrays.binarySearch(durations, 0, bucketCount, mDurations[id]);
+            ruleBuckets[id] = bucket;
+            sizes[bucket] += mRuleStart[id + 1] - mRuleStart[id];
+        }
+
+        final long[][] index = new long[bucketCount][];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            index[bucket] = new long[sizes[bucket]];
+            sizes[bucket] = 0;
+        }
+        for (int id = 0; id < ruleCount; id++) {
+            final long[] keys = index[ruleBuckets[id]];
+            int n = sizes[ruleBuckets[id]];
+            for (int i = mRuleStart[id]; i < mRuleStart[id + 1]; i++) {
+                keys[n++] = ((long) mRuleDays[i] << 32) | id;
+            }
+            sizes[ruleBuckets[id]] = n;
+        }
+        for (long[] keys : index) {
+            Arrays.sort(keys);
+        }
+
+        mIndex = index;
+        mIndexDurations = Arrays.copyOf(durations, bucketCount);
+    }
+
+    /**
+     * @param days       start days of the query occurrences, ascending
+     * @param duration   days covered by each query occurrence
+     * @param excludedId rule to leave out of the result, or -1
+     */
+    private int[] collectHits(int[] days, int count, int duration, int excludedId) {
+        if (mIndex == null) {
+            buildIndex();
+        }
+        final boolean[] hits = mHits;
+        int hitCount = 0;
+
+        for (int bucket = 0; bucket < mIndex.length; bucket++) {
+            final long[] index = mIndex[bucket];
+            final int reach = mIndexDurations[bucket] - 1;
+
+            for (int i = 0; i < count; i++) {
+                final int first = days[i];
+                final int last = first + duration - 1;
+
+                // Every occurrence starting in [first - reach, last] covers
+                // a day of [first, last]
+                int j = lowerBound(index, (long) (first - reach) << 32);
+                for (; j < index.length; j++) {
+                    if ((int) (index[j] >> 32) > last) {
+                        break;
+                    }
+                    final int id = (int) index[j];
+                    if (!hits[id] && id != excludedId) {
+                        hits[id] = true;
+                        hitCount++;
+                    }
+                }
+            }
+        }
+
+        final int[] result = new int[hitCount];
+        int n = 0;
+        for (int id = 0; id < mRuleCount && n < hitCount; id++) {
+            if (hits[id]) {
+                result[n++] = id;
+                hits[id] = false;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return index of the first element of the sorted 'array' that is >= 'key'
+     */
+    private static int lowerBound(long[] array, long key) {
+        int low = 0;
+        int high = array.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (array[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
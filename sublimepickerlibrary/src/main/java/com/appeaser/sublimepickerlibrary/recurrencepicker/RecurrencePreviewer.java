@@ -0,0 +1,197 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.format.Time;
+
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the next occurrences of a rule as it is being edited, off the
+ * UI thread.
+ * <p/>
+ * Requests are debounced: a burst of edits results in one computation, for
+ * the last rule. Each request supersedes the previous one - a computation
+ * that is overtaken stops early, and only the result of the latest request
+ * is delivered. Results are delivered on the main thread.
+ * <p/>
+ * Must be used from the main thread.
+ */
+class RecurrencePreviewer {
+
+    interface Listener {
+        /**
+         * @param epochDays the occurrences, as epoch days, in ascending order.
+         *                  Fewer than requested if the rule ends sooner.
+         */
+        void onPreview(int[] epochDays);
+    }
+
+    // Wait this long after the last edit before computing
+    private static final long DEBOUNCE_MILLIS = 150;
+
+    // A newer request is checked for after every occurrence, & after
+    // scanning this many periods without one
+    private static final int CANCEL_CHECK_PERIODS = 64;
+
+    // One background thread for all previewers, let go of when idle
+    private static final Executor sExecutor;
+
+    static {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "RecurrencePreviewer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        sExecutor = executor;
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Listener mListener;
+
+    // Incremented by every request & cancel(). A computation whose
+    // generation is no longer current is stale.
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    // The pending (debounced) request
+    private EventRecurrenceSnapshot mRule;
+    private long mStartMillis;
+    private TimeZone mTimeZone;
+    private int mCount;
+
+    private final Runnable mSubmit = new Runnable() {
+        @Override
+        public void run() {
+            sExecutor.execute(new Task(mGeneration.get(), mRule, mStartMillis, mTimeZone, mCount));
+            mRule = null;
+        }
+    };
+
+    RecurrencePreviewer(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Schedules a preview of the first 'count' occurrences of 'er' from 'start'.
+     * 'er' is copied, & may be changed once this returns.
+     */
+    void request(EventRecurrence er, Time start, int count) {
+        mGeneration.incrementAndGet();
+        mHandler.removeCallbacks(mSubmit);
+
+        mRule = new EventRecurrenceSnapshot(er);
+        mStartMillis = start.toMillis(false);
+        mTimeZone = TimeZone.getTimeZone(start.timezone);
+        mCount = count;
+        mHandler.postDelayed(mSubmit, DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * Drops the pending request, if any. Nothing is delivered until the next
+     * request.
+     */
+    void cancel() {
+        mGeneration.incrementAndGet();
+        mHandler.removeCallbacks(mSubmit);
+        mRule = null;
+    }
+
+    private boolean isCurrent(int generation) {
+        return mGeneration.get() == generation;
+    }
+
+    private class Task implements Runnable {
+        private final int mTaskGeneration;
+        private final EventRecurrenceSnapshot mTaskRule;
+        private final long mTaskStartMillis;
+        private final TimeZone mTaskTimeZone;
+        private final int mTaskCount;
+
+        Task(int generation, EventRecurrenceSnapshot rule, long startMillis,
+             TimeZone timezone, int count) {
+            mTaskGeneration = generation;
+            mTaskRule = rule;
+            mTaskStartMillis = startMillis;
+            mTaskTimeZone = timezone;
+            mTaskCount = count;
+        }
+
+        @Override
+        public void run() {
+            if (!isCurrent(mTaskGeneration)) {
+                return;
+            }
+
+            final RecurrenceIterator iterator;
+            try {
+                iterator = new RecurrenceIterator(mTaskRule.toEventRecurrence(),
+                        mTaskStartMillis, mTaskTimeZone);
+            } catch (IllegalArgumentException | EventRecurrence.InvalidFormatException e) {
+                // An unsupported FREQ, or a bad UNTIL: nothing to preview
+                deliver(new int[0]);
+                return;
+            }
+
+            int[] days = new int[mTaskCount];
+            int n = 0;
+            while (n < mTaskCount) {
+                final int next = iterator.hasNextWithin(CANCEL_CHECK_PERIODS);
+                if (next == RecurrenceIterator.NO_NEXT) {
+                    break;
+                }
+                if (next == RecurrenceIterator.HAS_NEXT) {
+                    days[n++] = iterator.nextEpochDay();
+                }
+                if (!isCurrent(mTaskGeneration)) {
+                    return;
+                }
+            }
+
+            if (n < mTaskCount) {
+                final int[] trimmed = new int[n];
+                System.arraycopy(days, 0, trimmed, 0, n);
+                days = trimmed;
+            }
+            deliver(days);
+        }
+
+        private void deliver(final int[] days) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // A newer request may have come in meanwhile
+                    if (isCurrent(mTaskGeneration)) {
+                        mListener.onPreview(days);
+                    }
+                }
+            });
+        }
+    }
+}
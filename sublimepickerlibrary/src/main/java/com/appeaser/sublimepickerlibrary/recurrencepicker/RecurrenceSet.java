@@ -0,0 +1,362 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import android.text.format.Time;
+
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.TimeZone;
+
+/**
+ * An iCalendar recurrence set: the union of one or more RRULEs & RDATEs,
+ * minus EXDATEs.
+ * <p/>
+ * Occurrences are epoch days (see {@link EpochDayUtils}), produced in
+ * ascending order without duplicates. Each rule is expanded lazily by its
+ * own {@link RecurrenceIterator}; the streams are merged through a min-heap
+ * keyed on each stream's next day, so the set is never materialized.
+ * RDATEs & EXDATEs are held as sorted int arrays.
+ * <p/>
+ * As with a single rule, DTSTART is only produced if a rule matches it -
+ * add it with {@link #addDate(int)} to always include it.
+ * <p/>
+ * Add rules & dates first, then iterate. Modifying the set rewinds it.
+ * Not thread-safe.
+ */
+public class RecurrenceSet {
+
+    // DTSTART: either mStart, or mStartMillis in mTimeZone
+    private final Time mStart;
+    private final long mStartMillis;
+    private final TimeZone mTimeZone;
+
+    private RecurrenceIterator[] mRules = new RecurrenceIterator[2];
+    private int mRuleCount;
+
+    private int[] mDates = new int[4];
+    private int mDateCount;
+    private boolean mDatesSorted = true;
+
+    private int[] mExDates = new int[4];
+    private int mExDateCount;
+    private boolean mExDatesSorted = true;
+
+    // Streams 0 .. mRuleCount - 1 are rules, stream mRuleCount is the RDATEs.
+    // mHeads holds each stream's next day; mHeap holds the non-exhausted
+    // streams, ordered by head.
+    private int[] mHeads = new int[3];
+    private int[] mHeap = new int[3];
+    private int mHeapSize;
+    private int mDateIndex;
+
+    private int mExDateIndex;
+    private int mLastDay;
+    private boolean mHasLast;
+
+    private boolean mPrepared;
+
+    /**
+     * @param start the first instance of the event (DTSTART), from which
+     *              every rule is expanded
+     */
+    public RecurrenceSet(Time start) {
+        if (start == null) {
+            throw new IllegalArgumentException("A start date is required");
+        }
+        mStart = start;
+        mStartMillis = 0;
+        mTimeZone = null;
+    }
+
+    /**
+     * @param startMillis the first instance of the event (DTSTART), from
+     *                    which every rule is expanded
+     * @param timezone    the event's timezone, or null for UTC
+     */
+    public RecurrenceSet(long startMillis, TimeZone timezone) {
+        mStart = null;
+        mStartMillis = startMillis;
+        mTimeZone = timezone;
+    }
+
+    /**
+     * Adds an RRULE. Its FREQ must be one of DAILY, WEEKLY, MONTHLY or YEARLY.
+     * The rule is compiled immediately; later changes to 'er' are not seen.
+     */
+    public void addRule(EventRecurrence er) {
+        if (mRuleCount == mRules.length) {
+            mRules = Arrays.copyOf(mRules, mRuleCount * 2);
+        }
+        mRules[mRuleCount++] = mStart != null ? new RecurrenceIterator(er, mStart)
+                : new RecurrenceIterator(er, mStartMillis, mTimeZone);
+        mPrepared = false;
+    }
+
+    /**
+     * Adds an RDATE.
+     */
+    public void addDate(int epochDay) {
+        if (mDateCount == mDates.length) {
+            mDates = Arrays.copyOf(mDates, mDateCount * 2);
+        }
+        if (mDateCount > 0 && mDates[mDateCount - 1] >= epochDay) {
+            mDatesSorted = false;
+        }
+        mDates[mDateCount++] = epochDay;
+        mPrepared = false;
+    }
+
+    /**
+     * Adds an EXDATE. No occurrence is produced on 'epochDay'.
+     */
+    public void addExceptionDate(int epochDay) {
+        if (mExDateCount == mExDates.length) {
+            mExDates = Arrays.copyOf(mExDates, mExDateCount * 2);
+        }
+        if (mExDateCount > 0 && mExDates[mExDateCount - 1] >= epochDay) {
+            mExDatesSorted = false;
+        }
+        mExDates[mExDateCount++] = epochDay;
+        mPrepared = false;
+    }
+
+    /**
+     * Rewinds to the first occurrence.
+     */
+    public void restart() {
+        if (!mDatesSorted) {
+            mDateCount = sortUnique(mDates, mDateCount);
+            mDatesSorted = true;
+        }
+        if (!mExDatesSorted) {
+            mExDateCount = sortUnique(mExDates, mExDateCount);
+            mExDatesSorted = true;
+        }
+
+        final int streams = mRuleCount + 1;
+        if (mHeads.length < streams) {
+            mHeads = new int[streams];
+            mHeap = new int[streams];
+        }
+
+        for (int i = 0; i < mRuleCount; i++) {
+            mRules[i].restart();
+        }
+        mDateIndex = 0;
+        mExDateIndex = 0;
+        mHasLast = false;
+
+        fillHeap(Integer.MIN_VALUE);
+        mPrepared = true;
+    }
+
+    public boolean hasNext() {
+        if (!mPrepared) {
+            restart();
+        }
+
+        while (mHeapSize > 0) {
+            final int day = mHeads[mHeap[0]];
+            if ((mHasLast && day == mLastDay) || isExcluded(day)) {
+                // Duplicate of the previous occurrence, or an EXDATE
+                pollHeap();
+                continue;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the next occurrence as an epoch day
+     * @throws NoSuchElementException if there are no more occurrences
+     */
+    public int nextEpochDay() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final int day = mHeads[mHeap[0]];
+        pollHeap();
+        mLastDay = day;
+        mHasLast = true;
+        return day;
+    }
+
+    /**
+     * Skips all occurrences before 'epochDay'.
+     */
+    public void advanceTo(int epochDay) {
+        if (!mPrepared) {
+            restart();
+        }
+        if (mHeapSize > 0 && mHeads[mHeap[0]] >= epochDay) {
+            return;
+        }
+
+        // Streams whose head is already past 'epochDay' are left alone
+        for (int i = 0; i < mHeapSize; i++) {
+            final int stream = mHeap[i];
+            if (stream < mRuleCount && mHeads[stream] < epochDay) {
+                mRules[stream].advanceTo(epochDay);
+            }
+        }
+        fillHeap(epochDay);
+
+        mExDateIndex = lowerBound(mExDates, mExDateCount, epochDay);
+    }
+
+    /**
+     * Re-reads the head of every live stream that precedes 'minDay' and
+     * rebuilds the heap.
+     */
+    private void fillHeap(int minDay) {
+        final boolean fresh = minDay == Integer.MIN_VALUE;
+        final int[] live = mHeap;
+        int liveCount = fresh ? mRuleCount + 1 : mHeapSize;
+        if (fresh) {
+            for (int i = 0; i < liveCount; i++) {
+                live[i] = i;
+            }
+        }
+
+        int size = 0;
+        for (int i = 0; i < liveCount; i++) {
+            final int stream = live[i];
+            if (fresh || mHeads[stream] < minDay) {
+                if (!pull(stream, minDay)) {
+                    continue;
+                }
+            }
+            live[size++] = stream;
+        }
+        mHeapSize = size;
+
+        for (int i = (size >> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Loads the next day of 'stream' that is on or after 'minDay' into mHeads.
+     *
+     * @return false if the stream is exhausted
+     */
+    private boolean pull(int stream, int minDay) {
+        if (stream < mRuleCount) {
+            final RecurrenceIterator rule = mRules[stream];
+            while (rule.hasNext()) {
+                final int day = rule.nextEpochDay();
+                if (day >= minDay) {
+                    mHeads[stream] = day;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (mDateIndex < mDateCount && mDates[mDateIndex] < minDay) {
+            mDateIndex = lowerBound(mDates, mDateCount, minDay);
+        }
+        if (mDateIndex < mDateCount) {
+            mHeads[stream] = mDates[mDateIndex++];
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Advances the stream at the top of the heap.
+     */
+    private void pollHeap() {
+        final int stream = mHeap[0];
+        if (!pull(stream, Integer.MIN_VALUE)) {
+            mHeap[0] = mHeap[--mHeapSize];
+        }
+        if (mHeapSize > 0) {
+            siftDown(0);
+        }
+    }
+
+    private void siftDown(int index) {
+        final int[] heap = mHeap;
+        final int[] heads = mHeads;
+        final int size = mHeapSize;
+        final int stream = heap[index];
+        final int day = heads[stream];
+
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heads[heap[child + 1]] < heads[heap[child]]) {
+                child++;
+            }
+            if (heads[heap[child]] >= day) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = stream;
+    }
+
+    // Days are produced in ascending order, so EXDATEs are consumed in order too
+    private boolean isExcluded(int day) {
+        while (mExDateIndex < mExDateCount && mExDates[mExDateIndex] < day) {
+            mExDateIndex++;
+        }
+        return mExDateIndex < mExDateCount && mExDates[mExDateIndex] == day;
+    }
+
+    /**
+     * @return index of the first element of the sorted 'array' that is >= 'key'
+     */
+    private static int lowerBound(int[] array, int size, int key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (array[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Sorts the first 'size' elements of 'array' & removes duplicates.
+     *
+     * @return the new size
+     */
+    private static int sortUnique(int[] array, int size) {
+        Arrays.sort(array, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || array[unique - 1] != array[i]) {
+                array[unique++] = array[i];
+            }
+        }
+        return unique;
+    }
+}
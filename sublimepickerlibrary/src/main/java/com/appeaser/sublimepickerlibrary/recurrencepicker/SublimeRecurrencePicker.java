@@ -291,7 +291,7 @@ public class SublimeRecurrencePicker extends FrameLayout
             if (tv.getId() == R.id.tvChosenCustomOption) {
                 if (!TextUtils.isEmpty(mRecurrenceRule)) {
                     EventRecurrence eventRecurrence = new EventRecurrence();
-                    eventRecurrence.parse(mRecurrenceRule);
+                    EventRecurrenceCache.getDefault().parse(mRecurrenceRule, eventRecurrence);
                     Time startDate = new Time(TimeZone.getDefault().getID());
                     startDate.set(mCurrentlyChosenTime);
                     eventRecurrence.setStartDate(startDate);
@@ -464,7 +464,7 @@ public class SublimeRecurrencePicker extends FrameLayout
 
             sCurrentView = CurrentView.valueOf(in.readString());
             sCurrentRecurrenceOption = RecurrenceOption.valueOf(in.readString());
-            sRecurrenceRule = in.readString();
+            sRecurrenceRule = EventRecurrenceCodec.readRule(in);
         }
 
         @Override
@@ -473,7 +473,7 @@ public class SublimeRecurrencePicker extends FrameLayout
 
             dest.writeString(sCurrentView.name());
             dest.writeString(sCurrentRecurrenceOption.name());
-            dest.writeString(sRecurrenceRule);
+            EventRecurrenceCodec.writeRule(dest, sRecurrenceRule);
         }
 
         public CurrentView getCurrentView() {
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import com.appeaser.sublimepickerlibrary.utilities.EpochDayUtils;
+
+import java.util.TimeZone;
+
+/**
+ * Parses UNTIL values - and other iCalendar DATE & DATE-TIME values, such
+ * as those of DTSTART, RDATE & EXDATE - without android.text.format.Time,
+ * so that rules can be parsed & expanded on a plain JVM.
+ * <p/>
+ * Accepts the same forms as Time.parse(String): "YYYYMMDD" (a date),
+ * "YYYYMMDDTHHMMSS" (a floating date-time) and "YYYYMMDDTHHMMSSZ" (a UTC
+ * date-time). Like Time.normalize(), out-of-range fields roll over into
+ * the next larger field.
+ */
+final class UntilDate {
+
+    private static final int DATE_LENGTH = 8;
+    private static final int DATE_TIME_LENGTH = 15;
+    private static final int UTC_DATE_TIME_LENGTH = 16;
+
+    private UntilDate() {
+        // no instances
+    }
+
+    /**
+     * @return true if cs[start, end) is in one of the accepted forms
+     */
+    static boolean isValid(CharSequence cs, int start, int end) {
+        final int length = end - start;
+        if (length != DATE_LENGTH && length != DATE_TIME_LENGTH
+                && length != UTC_DATE_TIME_LENGTH) {
+            return false;
+        }
+
+        if (!isDigits(cs, start, start + DATE_LENGTH)) {
+            return false;
+        }
+        if (length == DATE_LENGTH) {
+            return true;
+        }
+
+        if (cs.charAt(start + DATE_LENGTH) != 'T'
+                || !isDigits(cs, start + DATE_LENGTH + 1, start + DATE_TIME_LENGTH)) {
+            return false;
+        }
+        return length == DATE_TIME_LENGTH || cs.charAt(start + DATE_TIME_LENGTH) == 'Z';
+    }
+
+    /**
+     * Resolves 'until' to the epoch day of the last allowed instance.
+     * <p/>
+     * A UTC value is first moved into the event's timezone. If UNTIL carries a
+     * time that is earlier in the day than the event's, no instance can start
+     * on the UNTIL date itself, so the day before is returned.
+     *
+     * @param until            the UNTIL value, or null/empty if there is none
+     * @param timezone         the event's timezone, or null to leave UTC values as they are
+     * @param startSecondOfDay the event's start time, as seconds since midnight
+     * @return the epoch day, or Integer.MAX_VALUE if 'until' is empty
+     * @throws EventRecurrence.InvalidFormatException if 'until' is malformed
+     */
+    static int resolve(String until, TimeZone timezone, int startSecondOfDay) {
+        if (until == null || until.length() == 0) {
+            return Integer.MAX_VALUE;
+        }
+
+        final int length = until.length();
+        if (!isValid(until, 0, length)) {
+            throw new EventRecurrence.InvalidFormatException("Invalid UNTIL value: " + until);
+        }
+
+        int untilDay = parseEpochDay(until, 0);
+        if (length == DATE_LENGTH) {
+            // All-day: the whole UNTIL date is allowed
+            return untilDay;
+        }
+
+        long seconds = untilDay * (long) EpochDayUtils.SECONDS_PER_DAY
+                + parseSecondOfDay(until, 0);
+
+        if (length == UTC_DATE_TIME_LENGTH && timezone != null) {
+            // UNTIL is in UTC - express it in the event's timezone
+            seconds += timezone.getOffset(seconds * 1000L) / 1000;
+        }
+
+        untilDay = (int) EpochDayUtils.floorDiv(seconds, EpochDayUtils.SECONDS_PER_DAY);
+        if (EpochDayUtils.floorMod(seconds, EpochDayUtils.SECONDS_PER_DAY) < startSecondOfDay) {
+            // The instance on the UNTIL date would start after UNTIL
+            untilDay--;
+        }
+        return untilDay;
+    }
+
+    /**
+     * @param start index of a valid date or date-time (see {@link #isValid})
+     * @return the epoch day of its date part
+     */
+    static int parseEpochDay(CharSequence cs, int start) {
+        final int year = parseDigits(cs, start, start + 4);
+        final int month = parseDigits(cs, start + 4, start + 6) - 1;
+        final int monthDay = parseDigits(cs, start + 6, start + 8);
+
+        // Normalize the month first, then let the day run on from the 1st
+        return EpochDayUtils.toEpochDay(year + EpochDayUtils.floorDiv(month, 12),
+                EpochDayUtils.floorMod(month, 12), 1) + monthDay - 1;
+    }
+
+    /**
+     * @param start index of a valid date-time (see {@link #isValid})
+     * @return its time part, as seconds since midnight. May exceed a day.
+     */
+    static int parseSecondOfDay(CharSequence cs, int start) {
+        return parseDigits(cs, start + 9, start + 11) * 3600
+                + parseDigits(cs, start + 11, start + 13) * 60
+                + parseDigits(cs, start + 13, start + 15);
+    }
+
+    /**
+     * @return true if the valid date or date-time at cs[start, end) carries a time
+     */
+    static boolean hasTime(int start, int end) {
+        return end - start > DATE_LENGTH;
+    }
+
+    private static boolean isDigits(CharSequence cs, int start, int end) {
+        for (int i = start; i < end; i++) {
+            final char c = cs.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int parseDigits(CharSequence cs, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (cs.charAt(i) - '0');
+        }
+        return value;
+    }
+}
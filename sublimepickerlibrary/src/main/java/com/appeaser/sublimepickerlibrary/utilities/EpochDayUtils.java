@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.utilities;
+
+import java.util.TimeZone;
+
+/**
+ * Allocation-free calendar arithmetic on 'epoch days' - the number of days
+ * since 1970-01-01 in the proleptic Gregorian calendar.
+ * <p/>
+ * Months are 0-based (as in java.util.Calendar & android.text.format.Time)
+ * and days of the week follow android.text.format.Time (SUNDAY = 0 ...
+ * SATURDAY = 6).
+ */
+public final class EpochDayUtils {
+
+    // 1970-01-01 was a Thursday
+    private static final int EPOCH_DAY_OF_WEEK = 4;
+
+    // Days from 0000-03-01 to 1970-01-01
+    private static final int DAYS_0000_TO_1970 = 719468;
+
+    private static final int DAYS_PER_ERA = 146097;
+
+    public static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+    // Cumulative day count at the start of each month (non-leap year)
+    private static final int[] DAYS_BEFORE_MONTH = {
+            0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334
+    };
+
+    private EpochDayUtils() {
+        // no instances
+    }
+
+    /**
+     * @param year     the year, e.g. 2016
+     * @param month    the month, 0-based
+     * @param monthDay the day of the month, 1-based
+     * @return the epoch day for the given date
+     */
+    public static int toEpochDay(int year, int month, int monthDay) {
+        // See http://howardhinnant.github.io/date_algorithms.html (days_from_civil)
+        final int m = month + 1;
+        final int y = m <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yoe = y - era * 400;
+        final int doy = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5 + monthDay - 1;
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * DAYS_PER_ERA + doe - DAYS_0000_TO_1970;
+    }
+
+    /**
+     * Packs the year, month & day of month of 'epochDay' into a single int.
+     * Use {@link #packedYear(int)}, {@link #packedMonth(int)} &
+     * {@link #packedMonthDay(int)} to unpack.
+     */
+    public static int toPackedDate(int epochDay) {
+        // See http://howardhinnant.github.io/date_algorithms.html (civil_from_days)
+        final int z = epochDay + DAYS_0000_TO_1970;
+        final int era = (z >= 0 ? z : z - DAYS_PER_ERA + 1) / DAYS_PER_ERA;
+        final int doe = z - era * DAYS_PER_ERA;
+        final int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final int mp = (5 * doy + 2) / 153;
+        final int d = doy - (153 * mp + 2) / 5 + 1;
+        final int m = mp < 10 ? mp + 3 : mp - 9;
+        final int y = yoe + era * 400 + (m <= 2 ? 1 : 0);
+        return (y << 9) | ((m - 1) << 5) | d;
+    }
+
+    public static int packedYear(int packedDate) {
+        return packedDate >> 9;
+    }
+
+    public static int packedMonth(int packedDate) {
+        return (packedDate >> 5) & 0xF;
+    }
+
+    public static int packedMonthDay(int packedDate) {
+        return packedDate & 0x1F;
+    }
+
+    public static int getYear(int epochDay) {
+        return packedYear(toPackedDate(epochDay));
+    }
+
+    public static int getMonth(int epochDay) {
+        return packedMonth(toPackedDate(epochDay));
+    }
+
+    public static int getMonthDay(int epochDay) {
+        return packedMonthDay(toPackedDate(epochDay));
+    }
+
+    /**
+     * @return day of the week for 'epochDay' - SUNDAY = 0 ... SATURDAY = 6
+     */
+    public static int getWeekDay(int epochDay) {
+        return floorMod(epochDay + EPOCH_DAY_OF_WEEK, 7);
+    }
+
+    /**
+     * @return 0-based day of the year
+     */
+    public static int getYearDay(int year, int month, int monthDay) {
+        int yearDay = DAYS_BEFORE_MONTH[month] + monthDay - 1;
+        if (month > 1 && isLeapYear(year)) {
+            yearDay++;
+        }
+        return yearDay;
+    }
+
+    public static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    public static int getDaysInYear(int year) {
+        return isLeapYear(year) ? 366 : 365;
+    }
+
+    /**
+     * @param year  the year
+     * @param month the month, 0-based
+     * @return number of days in the month
+     */
+    public static int getDaysInMonth(int year, int month) {
+        if (month == 1) {
+            return isLeapYear(year) ? 29 : 28;
+        }
+        // Jan, Mar, May, Jul, Aug, Oct, Dec have 31 days
+        return ((0xAD5 >> month) & 1) != 0 ? 31 : 30;
+    }
+
+    /**
+     * @return number of months between 'epochMonth' style indexes - i.e.
+     * year * 12 + month
+     */
+    public static int toEpochMonth(int year, int month) {
+        return year * 12 + month;
+    }
+
+    /**
+     * @return the epoch day of the first day of the week containing 'epochDay',
+     * given the first day of the week 'weekStart' (SUNDAY = 0 ... SATURDAY = 6)
+     */
+    public static int getWeekStartEpochDay(int epochDay, int weekStart) {
+        return epochDay - floorMod(getWeekDay(epochDay) - weekStart, 7);
+    }
+
+    /**
+     * @param millis   milliseconds since 1970-01-01T00:00:00Z
+     * @param timezone the zone the wall-clock date is taken in, or null for UTC
+     * @return the epoch day of the date 'millis' falls on in 'timezone'
+     */
+    public static int fromMillis(long millis, TimeZone timezone) {
+        return (int) floorDiv(toLocalSeconds(millis, timezone), SECONDS_PER_DAY);
+    }
+
+    /**
+     * @return the wall-clock time of 'millis' in 'timezone' (or UTC, if null),
+     * as seconds since midnight
+     */
+    public static int getSecondOfDay(long millis, TimeZone timezone) {
+        return (int) floorMod(toLocalSeconds(millis, timezone), SECONDS_PER_DAY);
+    }
+
+    private static long toLocalSeconds(long millis, TimeZone timezone) {
+        if (timezone != null) {
+            millis += timezone.getOffset(millis);
+        }
+        return floorDiv(millis, 1000L);
+    }
+
+    public static int floorMod(int x, int y) {
+        final int mod = x % y;
+        return mod < 0 ? mod + y : mod;
+    }
+
+    public static int floorDiv(int x, int y) {
+        final int div = x / y;
+        return (x % y != 0 && ((x ^ y) < 0)) ? div - 1 : div;
+    }
+
+    public static long floorMod(long x, long y) {
+        final long mod = x % y;
+        return mod < 0 ? mod + y : mod;
+    }
+
+    public static long floorDiv(long x, long y) {
+        final long div = x / y;
+        return (x % y != 0 && ((x ^ y) < 0)) ? div - 1 : div;
+    }
+}
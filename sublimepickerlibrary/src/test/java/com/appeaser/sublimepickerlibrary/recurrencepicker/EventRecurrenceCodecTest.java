@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EventRecurrenceCodecTest {
+
+    private static final String[] EXTRA_RULES = {
+            "FREQ=YEARLY;UNTIL=20301231T000000Z;BYMONTH=1,12;BYHOUR=5;BYMINUTE=0,59;"
+                    + "BYSECOND=30;BYSETPOS=-1,1;BYYEARDAY=-366,200;BYWEEKNO=-53,1;"
+                    + "BYMONTHDAY=-31,15",
+            "FREQ=WEEKLY;BYDAY=FR,MO",
+            "FREQ=MONTHLY;BYDAY=-1FR,2TU,+3SA;COUNT=12",
+            "FREQ=DAILY;INTERVAL=1000000;COUNT=2147483647",
+            "FREQ=SECONDLY;BYDAY=SU,MO,TU,WE,TH,FR,SA",
+            "FREQ=MONTHLY;BYSETPOS=-2147483648,2147483647;BYDAY=MO"
+    };
+
+    @Test
+    public void testRoundTrip() {
+        for (String rule : allRules()) {
+            final EventRecurrence er = RecurrenceIteratorTest.parse(rule);
+            final byte[] bytes = EventRecurrenceCodec.encode(er);
+            final EventRecurrence decoded = EventRecurrenceCodec.decode(bytes);
+
+            assertEquals(rule, er, decoded);
+            assertEquals(rule, er.toString(), decoded.toString());
+            assertTrue(rule, bytes.length <= EventRecurrenceCodec.maxEncodedSize(er));
+        }
+    }
+
+    @Test
+    public void testDecodeIntoReusedInstance() {
+        // Every field set, so that stale values would show
+        final EventRecurrence out = RecurrenceIteratorTest.parse(EXTRA_RULES[0]);
+        for (String rule : allRules()) {
+            final EventRecurrence er = RecurrenceIteratorTest.parse(rule);
+            EventRecurrenceCodec.decode(ByteBuffer.wrap(EventRecurrenceCodec.encode(er)), out);
+            assertEquals(rule, er, out);
+        }
+    }
+
+    @Test
+    public void testSequentialRulesInOneBuffer() {
+        final String[] rules = allRules();
+        final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        for (String rule : rules) {
+            EventRecurrenceCodec.encode(RecurrenceIteratorTest.parse(rule), buffer);
+        }
+        buffer.flip();
+
+        final EventRecurrence out = new EventRecurrence();
+        for (String rule : rules) {
+            EventRecurrenceCodec.decode(buffer, out);
+            assertEquals(rule, RecurrenceIteratorTest.parse(rule), out);
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void testWeekdaysWithoutOrdinalsTakeOneByte() {
+        final byte[] mask = EventRecurrenceCodec.encode(
+                RecurrenceIteratorTest.parse("FREQ=WEEKLY;BYDAY=SU,MO,TU,WE,TH,FR,SA"));
+        final byte[] single = EventRecurrenceCodec.encode(
+                RecurrenceIteratorTest.parse("FREQ=WEEKLY;BYDAY=MO"));
+
+        assertEquals(single.length, mask.length);
+    }
+
+    @Test
+    public void testRejectsTruncatedEncoding() {
+        final byte[] bytes = EventRecurrenceCodec.encode(
+                RecurrenceIteratorTest.parse(EXTRA_RULES[0]));
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                EventRecurrenceCodec.decode(Arrays.copyOf(bytes, length));
+                fail("Decoded " + length + " of " + bytes.length + " bytes");
+            } catch (EventRecurrence.InvalidFormatException expected) {
+            }
+        }
+    }
+
+    @Test(expected = EventRecurrence.InvalidFormatException.class)
+    public void testRejectsUnknownVersion() {
+        final byte[] bytes = EventRecurrenceCodec.encode(
+                RecurrenceIteratorTest.parse("FREQ=DAILY"));
+        bytes[0] = 99;
+        EventRecurrenceCodec.decode(bytes);
+    }
+
+    private static String[] allRules() {
+        final String[] rules = Arrays.copyOf(RecurrenceIteratorTest.RULES,
+                RecurrenceIteratorTest.RULES.length + EXTRA_RULES.length);
+        System.arraycopy(EXTRA_RULES, 0, rules, RecurrenceIteratorTest.RULES.length,
+                EXTRA_RULES.length);
+        return rules;
+    }
+}
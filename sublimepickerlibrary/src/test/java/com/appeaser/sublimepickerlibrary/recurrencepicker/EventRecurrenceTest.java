@@ -0,0 +1,308 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class EventRecurrenceTest {
+
+    private static final String[] ALL_PARTS_RULES = {
+            "FREQ=DAILY",
+            "FREQ=WEEKLY;UNTIL=20161231T235959Z;WKST=SU;BYDAY=SU,SA",
+            "FREQ=YEARLY;INTERVAL=4;COUNT=10;WKST=SU;BYSECOND=0,30;BYMINUTE=15;"
+                    + "BYHOUR=9,17;BYDAY=1SU,-1SA,TU;BYMONTHDAY=-1,2;BYYEARDAY=100,-366;"
+                    + "BYWEEKNO=-53,20;BYMONTH=11;BYSETPOS=1,-1",
+            "FREQ=SECONDLY;INTERVAL=15",
+            "FREQ=MINUTELY",
+            "FREQ=HOURLY;BYHOUR=0,23",
+            "FREQ=MONTHLY;BYDAY=MO,TU,WE,TH,FR;BYSETPOS=-1"
+    };
+
+    @Test
+    public void testParseAllParts() {
+        final EventRecurrence er = parse("FREQ=YEARLY;INTERVAL=4;COUNT=10;WKST=SU;"
+                + "BYSECOND=0,30;BYMINUTE=15;BYHOUR=9,17;BYDAY=1SU,-1SA,TU;"
+                + "BYMONTHDAY=-1,2;BYYEARDAY=100,-366;BYWEEKNO=-53,20;BYMONTH=11;"
+                + "BYSETPOS=1,-1");
+
+        assertEquals(EventRecurrence.YEARLY, er.freq);
+        assertEquals(4, er.interval);
+        assertEquals(10, er.count);
+        assertNull(er.until);
+        assertEquals(EventRecurrence.SU, er.wkst);
+        assertList(new int[]{0, 30}, er.bysecond, er.bysecondCount);
+        assertList(new int[]{15}, er.byminute, er.byminuteCount);
+        assertList(new int[]{9, 17}, er.byhour, er.byhourCount);
+        assertList(new int[]{EventRecurrence.SU, EventRecurrence.SA, EventRecurrence.TU},
+                er.byday, er.bydayCount);
+        assertList(new int[]{1, -1, 0}, er.bydayNum, er.bydayCount);
+        assertList(new int[]{-1, 2}, er.bymonthday, er.bymonthdayCount);
+        assertList(new int[]{100, -366}, er.byyearday, er.byyeardayCount);
+        assertList(new int[]{-53, 20}, er.byweekno, er.byweeknoCount);
+        assertList(new int[]{11}, er.bymonth, er.bymonthCount);
+        assertList(new int[]{1, -1}, er.bysetpos, er.bysetposCount);
+    }
+
+    @Test
+    public void testParseDefaults() {
+        final EventRecurrence er = parse("FREQ=DAILY");
+
+        assertEquals(EventRecurrence.DAILY, er.freq);
+        assertEquals(0, er.interval);
+        assertEquals(0, er.count);
+        assertEquals(EventRecurrence.MO, er.wkst);
+        assertEquals(0, er.bydayCount);
+    }
+
+    @Test
+    public void testParseUntil() {
+        assertEquals("20161231T235959Z", parse("FREQ=WEEKLY;UNTIL=20161231T235959Z").until);
+        assertEquals("20161231", parse("FREQ=WEEKLY;UNTIL=20161231").until);
+    }
+
+    @Test
+    public void testParseIgnoresCaseAndEmptyParts() {
+        final EventRecurrence er = parse("freq=monthly;;byday=-1fr;x-custom=anything;");
+
+        assertEquals(EventRecurrence.MONTHLY, er.freq);
+        assertList(new int[]{EventRecurrence.FR}, er.byday, er.bydayCount);
+        assertList(new int[]{-1}, er.bydayNum, er.bydayCount);
+    }
+
+    @Test
+    public void testParseRange() {
+        final String text = "RRULE:FREQ=WEEKLY;BYDAY=MO,WE\nEXDATE:20160101";
+        final int start = text.indexOf(':') + 1;
+        final EventRecurrence er = new EventRecurrence();
+        er.parse(text, start, text.indexOf('\n'));
+
+        assertEquals(parse("FREQ=WEEKLY;BYDAY=MO,WE"), er);
+    }
+
+    @Test
+    public void testReparseResetsFields() {
+        final EventRecurrence er = parse("FREQ=MONTHLY;COUNT=5;WKST=SU;BYDAY=1MO,2TU,3WE");
+        er.parse("FREQ=DAILY;BYDAY=FR");
+
+        assertEquals(parse("FREQ=DAILY;BYDAY=FR"), er);
+        assertEquals(0, er.count);
+        assertEquals(EventRecurrence.MO, er.wkst);
+        assertEquals(1, er.bydayCount);
+        assertEquals(0, er.bydayNum[0]);
+    }
+
+    @Test
+    public void testToStringRoundTrip() {
+        for (String rule : RecurrenceIteratorTest.RULES) {
+            final EventRecurrence er = parse(rule);
+            assertEquals(rule, er, parse(er.toString()));
+        }
+    }
+
+    // These parse with a fix-up rather than failing, & must not touch
+    // android.util.Log doing so - the android.jar stubs throw off-device
+    @Test
+    public void testLenientPartsOnJvm() {
+        final int start = RecurrenceReference.toEpochDay(2016, 1, 4);
+
+        EventRecurrence er = parse("FREQ=DAILY;UNTIL=20160110;COUNT=3");
+        assertEquals("20160110", er.until);
+        assertEquals(3, er.count);
+        assertEquals(listOf(start, start + 1, start + 2), expand(er, start));
+
+        er = parse("FREQ=DAILY;UNTIL=20160105;COUNT=10");
+        assertEquals(listOf(start, start + 1), expand(er, start));
+
+        er = parse("FREQ=DAILY;COUNT=-1");
+        assertEquals(1, er.count);
+        assertEquals(listOf(start), expand(er, start));
+
+        er = parse("FREQ=DAILY;INTERVAL=0;COUNT=3");
+        assertEquals(1, er.interval);
+        assertEquals(listOf(start, start + 1, start + 2), expand(er, start));
+    }
+
+    @Test
+    public void testWriteToMatchesToString() {
+        final StringBuilder builder = new StringBuilder();
+        final CharBuffer buffer = CharBuffer.allocate(512);
+        for (String rule : ALL_PARTS_RULES) {
+            final EventRecurrence er = parse(rule);
+            final String expected = er.toString();
+
+            builder.setLength(0);
+            er.writeTo(builder);
+            assertEquals(expected, builder.toString());
+
+            buffer.clear();
+            er.writeTo(buffer);
+            buffer.flip();
+            assertEquals(expected, buffer.toString());
+
+            assertEquals(rule, er, parse(builder.toString()));
+        }
+    }
+
+    @Test
+    public void testWriteToAppends() {
+        final StringBuilder builder = new StringBuilder("RRULE:");
+        parse("FREQ=MONTHLY;BYDAY=-1FR,2MO;BYMONTHDAY=-31").writeTo(builder);
+
+        assertEquals("RRULE:FREQ=MONTHLY;WKST=MO;BYDAY=-1FR,2MO;BYMONTHDAY=-31",
+                builder.toString());
+    }
+
+    @Test
+    public void testWriteToNumbers() {
+        final EventRecurrence er = parse("FREQ=YEARLY;INTERVAL=2147483647;BYSETPOS=-2147483648,0,10");
+
+        assertEquals("FREQ=YEARLY;INTERVAL=2147483647;WKST=MO;BYSETPOS=-2147483648,0,10",
+                er.toString());
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void testWriteToFullBuffer() {
+        parse("FREQ=WEEKLY;BYDAY=MO,TU,WE").writeTo(CharBuffer.allocate(10));
+    }
+
+    @Test
+    public void testCanonicalFormExpandsTheSame() {
+        final String[] rules = {
+                "FREQ=WEEKLY;BYDAY=SU,MO;BYSETPOS=1;WKST=SU",
+                "FREQ=WEEKLY;BYDAY=SA,SU,MO;BYSETPOS=-1;WKST=TU",
+                "FREQ=WEEKLY;INTERVAL=1;BYDAY=FR,MO,MO;WKST=SU",
+                "FREQ=WEEKLY;INTERVAL=2;BYDAY=SU,SA;WKST=SU",
+                "FREQ=YEARLY;BYWEEKNO=1;BYDAY=SU;WKST=SU",
+                "FREQ=MONTHLY;BYDAY=2MO,-1FR,2MO;WKST=SU"
+        };
+        final Random random = new Random(1);
+        for (String rule : concat(rules, RecurrenceIteratorTest.RULES)) {
+            final String canonical = EventRecurrence.toCanonicalString(rule);
+            final EventRecurrence er = parse(rule);
+            final EventRecurrence normalized = parse(canonical);
+
+            for (int i = 0; i < 8; i++) {
+                final int start = RecurrenceReference.toEpochDay(2016, 1, 1) + random.nextInt(400);
+                assertEquals(rule + " vs " + canonical + " from " + start,
+                        expand(er, start, 200), expand(normalized, start, 200));
+            }
+            assertEquals(canonical, EventRecurrence.toCanonicalString(canonical));
+        }
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals("FREQ=WEEKLY;WKST=MO;BYDAY=MO,FR",
+                EventRecurrence.toCanonicalString("FREQ=WEEKLY;INTERVAL=1;WKST=SU;BYDAY=FR,MO,FR"));
+        assertEquals("FREQ=WEEKLY;WKST=SU;BYDAY=SU,MO;BYSETPOS=1",
+                EventRecurrence.toCanonicalString("FREQ=WEEKLY;BYDAY=SU,MO;BYSETPOS=1;WKST=SU"));
+        assertEquals("FREQ=WEEKLY;INTERVAL=2;WKST=SU",
+                EventRecurrence.toCanonicalString("FREQ=WEEKLY;INTERVAL=2;WKST=SU"));
+        assertEquals("FREQ=MONTHLY;WKST=MO;BYDAY=2MO,-1FR",
+                EventRecurrence.toCanonicalString("FREQ=MONTHLY;BYDAY=-1FR,2MO;WKST=SU"));
+    }
+
+    @Test
+    public void testParseRejectsMalformedRules() {
+        final String[] rules = {
+                "",
+                "BYDAY=MO",
+                "FREQ=FORTNIGHTLY",
+                "FREQ=WEEKLY;FREQ=DAILY",
+                "FREQ=WEEKLY;BYDAY=MO;BYDAY=TU",
+                "FREQ=WEEKLY;BYDAY=XX",
+                "FREQ=WEEKLY;BYDAY=",
+                "FREQ=WEEKLY;BYDAY=MO,,TU",
+                "FREQ=WEEKLY;BYDAY=54MO",
+                "FREQ=WEEKLY;=MO",
+                "FREQ=WEEKLY;BYDAY",
+                "FREQ=WEEKLY;WKST=XX",
+                "FREQ=MONTHLY;BYMONTHDAY=0",
+                "FREQ=MONTHLY;BYMONTHDAY=32",
+                "FREQ=YEARLY;BYMONTH=13",
+                "FREQ=YEARLY;BYYEARDAY=367",
+                "FREQ=YEARLY;BYWEEKNO=54",
+                "FREQ=DAILY;BYHOUR=24",
+                "FREQ=DAILY;COUNT=1x",
+                "FREQ=DAILY;INTERVAL=-",
+                "FREQ=DAILY;BYSOMETHING=1"
+        };
+
+        for (String rule : rules) {
+            try {
+                parse(rule);
+                fail("Parsed " + rule);
+            } catch (EventRecurrence.InvalidFormatException expected) {
+            }
+        }
+    }
+
+    static EventRecurrence parse(String rule) {
+        final EventRecurrence er = new EventRecurrence();
+        er.parse(rule);
+        return er;
+    }
+
+    // The first 'limit' occurrences
+    private static List<Integer> expand(EventRecurrence er, int start, int limit) {
+        final RecurrenceIterator iterator = new RecurrenceIterator(er,
+                RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+        final List<Integer> days = new ArrayList<>();
+        while (iterator.hasNext() && days.size() < limit) {
+            days.add(iterator.nextEpochDay());
+        }
+        return days;
+    }
+
+    private static String[] concat(String[] a, String[] b) {
+        final String[] all = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, all, a.length, b.length);
+        return all;
+    }
+
+    private static List<Integer> expand(EventRecurrence er, int start) {
+        return RecurrenceIteratorTest.drain(new RecurrenceIterator(er,
+                RecurrenceReference.toMillis(start), RecurrenceReference.UTC), Integer.MAX_VALUE);
+    }
+
+    private static List<Integer> listOf(int... days) {
+        final List<Integer> list = new ArrayList<>();
+        for (int day : days) {
+            list.add(day);
+        }
+        return list;
+    }
+
+    static void assertList(int[] expected, int[] actual, int count) {
+        assertEquals(expected.length, count);
+        final int[] values = new int[count];
+        System.arraycopy(actual, 0, values, 0, count);
+        assertArrayEquals(expected, values);
+    }
+}
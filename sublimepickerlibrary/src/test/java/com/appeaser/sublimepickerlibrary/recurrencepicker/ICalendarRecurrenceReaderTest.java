@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ICalendarRecurrenceReaderTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    // 2016-01-04 09:30:15
+    private static final String START = "start 16804 34215";
+
+    private static final String CALENDAR = "BEGIN:VCALENDAR\r\n"
+            + "VERSION:2.0\r\n"
+            + "BEGIN:VEVENT\r\n"
+            + "UID:1@example.com\r\n"
+            + "DTSTART;TZID=Europe/Berlin:20160104T093015\r\n"
+            // Folded twice, once inside a token
+            + "RRULE:FREQ=WEEKLY;BYDAY=MO,\r\n"
+            + " WE;COU\r\n"
+            + "\tNT=10\r\n"
+            + "EXDATE:20160106T093015,20160111T093015\r\n"
+            + "RDATE;VALUE=PERIOD:20160201T090000Z/PT1H\r\n"
+            + "END:VEVENT\r\n"
+            + "END:VCALENDAR\r\n";
+
+    private static final List<String> CALENDAR_EVENTS = Arrays.asList(
+            "event",
+            START,
+            "rule FREQ=WEEKLY;COUNT=10;WKST=MO;BYDAY=MO,WE",
+            "exdate 16806",
+            "exdate 16811",
+            "rdate 16832",
+            "end");
+
+    @Test
+    public void testReadsEvent() {
+        assertEquals(CALENDAR_EVENTS, read(CALENDAR));
+    }
+
+    @Test
+    public void testUnfoldsBareLineFeeds() {
+        assertEquals(CALENDAR_EVENTS, read(CALENDAR.replace("\r\n", "\n")));
+    }
+
+    @Test
+    public void testInputSplitAtEveryByte() {
+        final byte[] bytes = CALENDAR.getBytes(ASCII);
+        for (int split = 0; split <= bytes.length; split++) {
+            final Recorder recorder = new Recorder();
+            final ICalendarRecurrenceReader reader = new ICalendarRecurrenceReader(recorder);
+            reader.feed(ByteBuffer.wrap(bytes, 0, split));
+            reader.feed(ByteBuffer.wrap(bytes, split, bytes.length - split));
+            reader.finish();
+            assertEquals("split at " + split, CALENDAR_EVENTS, recorder.events);
+        }
+
+        // A byte at a time: every CR is split from its LF
+        final Recorder recorder = new Recorder();
+        final ICalendarRecurrenceReader reader = new ICalendarRecurrenceReader(recorder);
+        for (byte b : bytes) {
+            reader.feed(ByteBuffer.wrap(new byte[]{b}));
+        }
+        reader.finish();
+        assertEquals(CALENDAR_EVENTS, recorder.events);
+    }
+
+    @Test
+    public void testQuotedParametersMayHoldColons() {
+        assertEquals(Arrays.asList(
+                START,
+                "exdate 16805",
+                "rdate 16806"), read(
+                "DTSTART;X-NOTE=\"at 9:30; or so\":20160104T093015\r\n"
+                        + "EXDATE;VALUE=DATE;X-A=\"a:b\",\"c:d\":20160105\r\n"
+                        + "RDATE;X-A=plain;X-B=\"x:\":20160106\r\n"));
+    }
+
+    @Test
+    public void testUnterminatedQuoteHasNoValue() {
+        assertEquals(Arrays.asList(
+                "error 1 Missing value",
+                "rdate 16805"), read(
+                "EXDATE;X-A=\"a:20160104\r\n"
+                        + "RDATE:20160105"));
+    }
+
+    @Test
+    public void testReportsOverlongRecurrenceLines() {
+        final StringBuilder longRule = new StringBuilder("RRULE:FREQ=DAILY;BYMONTHDAY=1");
+        for (int i = 2; i <= 28; i++) {
+            longRule.append(',').append(i);
+        }
+        final StringBuilder longText = new StringBuilder("DESCRIPTION:");
+        for (int i = 0; i < 100; i++) {
+            longText.append('x');
+        }
+
+        final Recorder recorder = new Recorder();
+        final ICalendarRecurrenceReader reader = new ICalendarRecurrenceReader(recorder, 64);
+        reader.read(ByteBuffer.wrap(("BEGIN:VEVENT\r\n"
+                + "DTSTART:20160104T093015\r\n"
+                // Skipped quietly, not being a recurrence property
+                + longText + "\r\n"
+                + longRule.substring(0, 50) + "\r\n "
+                + longRule.substring(50) + "\r\n"
+                + "RRULE:FREQ=DAILY;COUNT=2\r\n"
+                + "END:VEVENT\r\n").getBytes(ASCII)));
+
+        assertEquals(Arrays.asList(
+                "event",
+                START,
+                "error 4 Line longer than 64 characters",
+                "rule FREQ=DAILY;COUNT=2;WKST=MO",
+                "end"), recorder.events);
+    }
+
+    @Test
+    public void testReportsInvalidDates() {
+        assertEquals(Arrays.asList(
+                "error 1 Invalid date: 2016010",
+                "rdate 16805",
+                "error 2 Invalid date: 20160104T09"), read(
+                "RDATE;VALUE=DATE:2016010,20160105\r\n"
+                        + "DTSTART:20160104T09\r\n"));
+    }
+
+    private static List<String> read(String calendar) {
+        final Recorder recorder = new Recorder();
+        new ICalendarRecurrenceReader(recorder).read(ByteBuffer.wrap(calendar.getBytes(ASCII)));
+        return recorder.events;
+    }
+
+    // Records each call as a line of text
+    static class Recorder implements ICalendarRecurrenceReader.Handler {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onEventStart() {
+            events.add("event");
+        }
+
+        @Override
+        public void onStartDate(int epochDay, int secondOfDay) {
+            events.add("start " + epochDay + " " + secondOfDay);
+        }
+
+        @Override
+        public void onRule(EventRecurrence rule) {
+            events.add("rule " + rule);
+        }
+
+        @Override
+        public void onDate(boolean exclude, int epochDay) {
+            events.add((exclude ? "exdate " : "rdate ") + epochDay);
+        }
+
+        @Override
+        public void onEventEnd() {
+            events.add("end");
+        }
+
+        @Override
+        public void onError(int line, String message) {
+            events.add("error " + line + " " + message);
+        }
+    }
+}
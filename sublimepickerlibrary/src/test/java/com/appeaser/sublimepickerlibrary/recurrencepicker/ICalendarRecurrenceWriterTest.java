@@ -0,0 +1,253 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ICalendarRecurrenceWriterTest {
+
+    private static final String CRLF = "\r\n";
+
+    // 2016-01-04
+    private static final int START_DAY = RecurrenceReference.toEpochDay(2016, 1, 4);
+
+    // 09:30:15
+    private static final int START_SECOND = 9 * 3600 + 30 * 60 + 15;
+
+    private final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+    private final ICalendarRecurrenceWriter mWriter =
+            new ICalendarRecurrenceWriter(Channels.newChannel(mOut));
+
+    @Test
+    public void testDateEvent() throws IOException {
+        mWriter.beginEvent();
+        mWriter.writeStartDate(START_DAY);
+        mWriter.writeRule(RecurrenceIteratorTest.parse("FREQ=WEEKLY;UNTIL=20160201"));
+        mWriter.writeDates(true, new int[]{START_DAY + 7, START_DAY + 14}, 2);
+        mWriter.endEvent();
+
+        assertEquals("BEGIN:VEVENT" + CRLF
+                + "DTSTART;VALUE=DATE:20160104" + CRLF
+                + "RRULE:FREQ=WEEKLY;UNTIL=20160201;WKST=MO" + CRLF
+                + "EXDATE;VALUE=DATE:20160111,20160118" + CRLF
+                + "END:VEVENT" + CRLF, output());
+    }
+
+    @Test
+    public void testFloatingDateTimeEvent() throws IOException {
+        mWriter.beginEvent();
+        mWriter.writeStartDate(START_DAY, START_SECOND);
+        mWriter.writeRule(RecurrenceIteratorTest.parse("FREQ=DAILY;UNTIL=20160110T093015"));
+        mWriter.writeDates(true, new int[]{START_DAY + 1}, 1);
+        mWriter.writeDateTimes(false, new int[]{START_DAY + 20}, new int[]{0}, 1);
+        mWriter.endEvent();
+
+        assertEquals("BEGIN:VEVENT" + CRLF
+                + "DTSTART:20160104T093015" + CRLF
+                + "RRULE:FREQ=DAILY;UNTIL=20160110T093015;WKST=MO" + CRLF
+                + "EXDATE:20160105T093015" + CRLF
+                + "RDATE:20160124T000000" + CRLF
+                + "END:VEVENT" + CRLF, output());
+    }
+
+    @Test
+    public void testUtcDateTimeEvent() throws IOException {
+        mWriter.beginEvent();
+        mWriter.writeStartDate(START_DAY, START_SECOND, true);
+        mWriter.writeRule(RecurrenceIteratorTest.parse("FREQ=DAILY;UNTIL=20160110T093015Z"));
+        mWriter.writeDates(true, new int[]{START_DAY + 1}, 1);
+        mWriter.writeDateTimes(false, new int[]{START_DAY + 20}, new int[]{86399}, 1);
+        mWriter.endEvent();
+
+        assertEquals("BEGIN:VEVENT" + CRLF
+                + "DTSTART:20160104T093015Z" + CRLF
+                + "RRULE:FREQ=DAILY;UNTIL=20160110T093015Z;WKST=MO" + CRLF
+                + "EXDATE:20160105T093015Z" + CRLF
+                + "RDATE:20160124T235959Z" + CRLF
+                + "END:VEVENT" + CRLF, output());
+    }
+
+    @Test
+    public void testUntilTakesTheValueTypeOfStart() throws IOException {
+        final EventRecurrence dateTimeUntil = RecurrenceIteratorTest.parse(
+                "FREQ=DAILY;UNTIL=20160110T120000Z");
+        final EventRecurrence dateUntil = RecurrenceIteratorTest.parse(
+                "FREQ=DAILY;UNTIL=20160110");
+
+        mWriter.writeStartDate(START_DAY);
+        mWriter.writeRule(dateTimeUntil);
+        mWriter.writeStartDate(START_DAY, START_SECOND);
+        mWriter.writeRule(dateUntil);
+        mWriter.writeStartDate(START_DAY, START_SECOND, true);
+        mWriter.writeRule(dateUntil);
+
+        assertEquals("DTSTART;VALUE=DATE:20160104" + CRLF
+                + "RRULE:FREQ=DAILY;UNTIL=20160110;WKST=MO" + CRLF
+                + "DTSTART:20160104T093015" + CRLF
+                + "RRULE:FREQ=DAILY;UNTIL=20160110T235959;WKST=MO" + CRLF
+                + "DTSTART:20160104T093015Z" + CRLF
+                + "RRULE:FREQ=DAILY;UNTIL=20160110T235959Z;WKST=MO" + CRLF, output());
+
+        // The rules are left as they were
+        assertEquals("20160110T120000Z", dateTimeUntil.until);
+        assertEquals("20160110", dateUntil.until);
+    }
+
+    @Test
+    public void testRejectsUntilInOtherTime() throws IOException {
+        mWriter.writeStartDate(START_DAY, START_SECOND);
+        assertRejected("FREQ=DAILY;UNTIL=20160110T093015Z");
+
+        mWriter.writeStartDate(START_DAY, START_SECOND, true);
+        assertRejected("FREQ=DAILY;UNTIL=20160110T093015");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsDateTimesForDateStart() throws IOException {
+        mWriter.writeStartDate(START_DAY);
+        mWriter.writeDateTimes(true, new int[]{START_DAY}, new int[]{0}, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsSecondOfDayOutOfRange() throws IOException {
+        mWriter.writeStartDate(START_DAY, 86400);
+    }
+
+    @Test
+    public void testFoldsAt75Octets() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append((char) ('a' + i % 26));
+        }
+        final EventRecurrence er = RecurrenceIteratorTest.parse(
+                "FREQ=MONTHLY;BYMONTHDAY=1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16,17,18,19,20,21,22,23");
+        mWriter.writeProperty("DESCRIPTION", text.toString());
+        mWriter.writeRule(er);
+
+        final String output = output();
+        final String[] lines = output.split(CRLF, -1);
+        assertEquals("", lines[lines.length - 1]);
+        assertEquals(75, lines[0].length());
+        for (int i = 1; i < lines.length - 1; i++) {
+            assertTrue(lines[i], lines[i].length() <= 75);
+            if (!lines[i].startsWith("RRULE:")) {
+                assertEquals(lines[i], ' ', lines[i].charAt(0));
+            }
+        }
+
+        // Unfolded, the lines are as written
+        assertEquals("DESCRIPTION:" + text + CRLF + "RRULE:" + er + CRLF,
+                output.replace(CRLF + " ", ""));
+
+        final ICalendarRecurrenceReaderTest.Recorder recorder =
+                new ICalendarRecurrenceReaderTest.Recorder();
+        new ICalendarRecurrenceReader(recorder).read(
+                Channels.newChannel(new ByteArrayInputStream(mOut.toByteArray())));
+        assertEquals("[rule " + er + "]", recorder.events.toString());
+    }
+
+    @Test
+    public void testReaderReadsWhatWasWritten() throws IOException {
+        final Random random = new Random(1);
+        // The smallest buffer, so that most lines are split between writes
+        final ICalendarRecurrenceWriter writer =
+                new ICalendarRecurrenceWriter(Channels.newChannel(mOut), 78);
+        final List<String> expected = new ArrayList<>();
+
+        for (int n = 0; n < 200; n++) {
+            final EventRecurrence er = RecurrenceIteratorTest.parse(RecurrenceIteratorTest.RULES[
+                    random.nextInt(RecurrenceIteratorTest.RULES.length)]);
+            final int startDay = START_DAY + random.nextInt(1000);
+            final int secondOfDay = random.nextInt(86400);
+
+            writer.beginEvent();
+            expected.add("event");
+            writer.writeProperty("UID", n + "@example.com");
+
+            // A start of the value type of UNTIL, or any if there is none
+            final String until = er.until;
+            final int type = until == null ? random.nextInt(3)
+                    : until.endsWith("Z") ? 2 : until.length() == 8 ? 0 : 1;
+            if (type == 0) {
+                writer.writeStartDate(startDay);
+                expected.add("start " + startDay + " -1");
+            } else {
+                writer.writeStartDate(startDay, secondOfDay, type == 2);
+                expected.add("start " + startDay + " " + secondOfDay);
+            }
+
+            writer.writeRule(er);
+            expected.add("rule " + er);
+
+            final int[] days = new int[random.nextInt(30)];
+            for (int i = 0; i < days.length; i++) {
+                days[i] = startDay + random.nextInt(1000);
+            }
+            final boolean exclude = random.nextBoolean();
+            if (type != 0 && random.nextBoolean()) {
+                final int[] seconds = new int[days.length];
+                for (int i = 0; i < seconds.length; i++) {
+                    seconds[i] = random.nextInt(86400);
+                }
+                writer.writeDateTimes(exclude, days, seconds, days.length);
+            } else {
+                writer.writeDates(exclude, days, days.length);
+            }
+            for (int day : days) {
+                expected.add((exclude ? "exdate " : "rdate ") + day);
+            }
+
+            writer.endEvent();
+            expected.add("end");
+        }
+        writer.flush();
+
+        final ICalendarRecurrenceReaderTest.Recorder recorder =
+                new ICalendarRecurrenceReaderTest.Recorder();
+        new ICalendarRecurrenceReader(recorder).read(
+                Channels.newChannel(new ByteArrayInputStream(mOut.toByteArray())));
+        assertEquals(expected, recorder.events);
+    }
+
+    private void assertRejected(String rule) throws IOException {
+        final int written = output().length();
+        try {
+            mWriter.writeRule(RecurrenceIteratorTest.parse(rule));
+            fail(rule);
+        } catch (IllegalArgumentException expected) {
+            // Nothing of the line is written
+            assertEquals(written, output().length());
+        }
+    }
+
+    private String output() throws IOException {
+        mWriter.flush();
+        return mOut.toString("US-ASCII");
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RecurrenceBatchParserTest {
+
+    private static final String[] INVALID_RULES = {
+            "FREQ=FORTNIGHTLY",
+            "BYDAY=MO",
+            "FREQ=WEEKLY;BYDAY=XX"
+    };
+
+    // Enough rules for several chunks
+    private static final int BATCH_SIZE = 3000;
+
+    // 2016-01-04
+    private static final int START = 16804;
+
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Test
+    public void testParseMatchesSingleParse() throws InterruptedException {
+        final String[] rules = randomRules(new Random(1));
+        final RecurrenceBatchParser.Result result = RecurrenceBatchParser.parse(rules, mExecutor);
+
+        assertEquals(rules.length, result.size);
+        assertNull(result.occurrenceStart);
+        assertNull(result.occurrences);
+
+        int errors = 0;
+        final EventRecurrence er = new EventRecurrence();
+        for (int i = 0; i < rules.length; i++) {
+            if (isInvalid(rules[i])) {
+                assertFalse(rules[i], result.isValid(i));
+                assertNotNull(result.errors[i]);
+                assertEquals(0, result.byday.getCount(i));
+                errors++;
+                continue;
+            }
+
+            final EventRecurrence expected = RecurrenceIteratorTest.parse(rules[i]);
+            assertTrue(rules[i], result.isValid(i));
+            assertEquals(expected.freq, result.freq[i]);
+            assertEquals(expected.interval, result.interval[i]);
+            assertEquals(expected.count, result.count[i]);
+            assertEquals(expected.wkst, result.wkst[i]);
+            assertEquals(expected.until, result.until[i]);
+            assertColumn(expected.byday, expected.bydayCount, result.byday, i);
+            assertColumn(expected.bydayNum, expected.bydayCount, result.bydayNum, i);
+            assertColumn(expected.bymonthday, expected.bymonthdayCount, result.bymonthday, i);
+            assertColumn(expected.byyearday, expected.byyeardayCount, result.byyearday, i);
+            assertColumn(expected.byweekno, expected.byweeknoCount, result.byweekno, i);
+            assertColumn(expected.bymonth, expected.bymonthCount, result.bymonth, i);
+            assertColumn(expected.bysetpos, expected.bysetposCount, result.bysetpos, i);
+
+            result.getRule(i, er);
+            assertEquals(rules[i], expected, er);
+        }
+        assertEquals(errors, result.getErrorCount());
+    }
+
+    @Test
+    public void testParseAndExpandMatchesIterator() throws InterruptedException {
+        final String[] rules = randomRules(new Random(2));
+        final long[] starts = new long[rules.length];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = RecurrenceReference.toMillis(START + i % 400);
+        }
+        final int fromDay = START + 200;
+        final int toDay = fromDay + 365;
+        final int maxPerRule = 20;
+
+        final RecurrenceBatchParser.Result result = RecurrenceBatchParser.parseAndExpand(
+                rules, starts, RecurrenceReference.UTC, fromDay, toDay, maxPerRule, mExecutor);
+
+        for (int i = 0; i < rules.length; i++) {
+            final List<Integer> actual = new ArrayList<>();
+            for (int j = result.occurrenceStart[i]; j < result.occurrenceStart[i + 1]; j++) {
+                actual.add(result.occurrences[j]);
+            }
+
+            final List<Integer> expected = new ArrayList<>();
+            if (!isInvalid(rules[i])) {
+                final RecurrenceIterator iterator = new RecurrenceIterator(
+                        RecurrenceIteratorTest.parse(rules[i]), starts[i],
+                        RecurrenceReference.UTC);
+                iterator.advanceTo(fromDay);
+                while (iterator.hasNext() && expected.size() < maxPerRule) {
+                    final int day = iterator.nextEpochDay();
+                    if (day > toDay) {
+                        break;
+                    }
+                    expected.add(day);
+                }
+            }
+            assertEquals(rules[i], expected, actual);
+        }
+    }
+
+    @Test
+    public void testUnsupportedFreqIsAnExpansionError() throws InterruptedException {
+        final String[] rules = {"FREQ=DAILY", "FREQ=HOURLY;BYDAY=MO", "FREQ=WEEKLY", "BYDAY=MO"};
+        final long[] starts = new long[rules.length];
+
+        final RecurrenceBatchParser.Result result = RecurrenceBatchParser.parseAndExpand(
+                rules, starts, RecurrenceReference.UTC, 0, 10, 5, mExecutor);
+
+        // The HOURLY rule parses, & keeps its fields
+        assertTrue(result.isValid(1));
+        assertFalse(result.isValid(3));
+        assertEquals(1, result.getErrorCount());
+        assertEquals(1, result.getExpansionErrorCount());
+        assertNull(result.expansionErrors[0]);
+        assertNotNull(result.expansionErrors[1]);
+        assertNull(result.expansionErrors[2]);
+        assertNull(result.expansionErrors[3]);
+
+        final EventRecurrence er = new EventRecurrence();
+        result.getRule(1, er);
+        assertEquals(RecurrenceIteratorTest.parse(rules[1]), er);
+        assertEquals(1, result.byday.getCount(1));
+
+        assertEquals(5, result.occurrenceStart[1]);
+        assertEquals(5, result.occurrenceStart[2]);
+        assertEquals(7, result.occurrenceStart[3]);
+        assertEquals(7, result.occurrences.length);
+    }
+
+    @Test
+    public void testParseOnlyHasNoExpansionColumns() throws InterruptedException {
+        final RecurrenceBatchParser.Result result = RecurrenceBatchParser.parse(
+                new String[]{"FREQ=HOURLY"}, mExecutor);
+
+        assertTrue(result.isValid(0));
+        assertEquals(0, result.getExpansionErrorCount());
+        assertNull(result.expansionErrors);
+        assertNull(result.occurrenceStart);
+        assertNull(result.occurrences);
+    }
+
+    @Test
+    public void testLenientRulesAreValid() throws InterruptedException {
+        final String[] rules = {
+                "FREQ=DAILY;UNTIL=20160110;COUNT=3",
+                "FREQ=DAILY;COUNT=-1",
+                "FREQ=DAILY;INTERVAL=0;COUNT=3"
+        };
+        final long[] starts = new long[rules.length];
+        Arrays.fill(starts, RecurrenceReference.toMillis(START));
+
+        final RecurrenceBatchParser.Result result = RecurrenceBatchParser.parseAndExpand(
+                rules, starts, RecurrenceReference.UTC, START, START + 10, 10, mExecutor);
+
+        assertEquals(0, result.getErrorCount());
+        assertEquals(0, result.getExpansionErrorCount());
+        assertEquals(1, result.count[1]);
+        assertEquals(1, result.interval[2]);
+        assertEquals(3 + 1 + 3, result.occurrences.length);
+    }
+
+    @Test
+    public void testEmptyBatch() throws InterruptedException {
+        final RecurrenceBatchParser.Result result = RecurrenceBatchParser.parse(
+                new String[0], mExecutor);
+
+        assertEquals(0, result.size);
+        assertEquals(1, result.byday.offsets.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetRuleRejectsInvalidRule() throws InterruptedException {
+        RecurrenceBatchParser.parse(INVALID_RULES, mExecutor).getRule(0, new EventRecurrence());
+    }
+
+    private static String[] randomRules(Random random) {
+        final String[] rules = new String[BATCH_SIZE];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = random.nextInt(20) == 0 ?
+                    INVALID_RULES[random.nextInt(INVALID_RULES.length)]
+                    : RecurrenceIteratorTest.RULES[random.nextInt(
+                    RecurrenceIteratorTest.RULES.length)];
+        }
+        return rules;
+    }
+
+    private static boolean isInvalid(String rule) {
+        for (String invalid : INVALID_RULES) {
+            if (invalid.equals(rule)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void assertColumn(int[] expected, int count,
+                                     RecurrenceBatchParser.IntListColumn column, int index) {
+        assertEquals(count, column.getCount(index));
+        for (int i = 0; i < count; i++) {
+            assertEquals(expected[i], column.get(index, i));
+        }
+    }
+}
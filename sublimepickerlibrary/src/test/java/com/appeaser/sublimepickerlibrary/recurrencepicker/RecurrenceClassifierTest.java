@@ -0,0 +1,321 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares RecurrenceClassifier with the checks RecurrenceOptionCreator made
+ * before it: canHandleRecurrenceRule() & copyEventRecurrenceToModel(), kept
+ * here as they were. The one intended difference is that rules with BYSETPOS,
+ * BYYEARDAY or BYWEEKNO are no longer supported.
+ */
+public class RecurrenceClassifierTest {
+
+    private static final String[] FREQS = {"DAILY", "WEEKLY", "MONTHLY", "YEARLY", "HOURLY"};
+
+    private static final String[] DAYS = {"SU", "MO", "TU", "WE", "TH", "FR", "SA"};
+
+    private static final int RANDOM_RULES = 50000;
+
+    @Test
+    public void testMatchesBaseline() {
+        final Random random = new Random(1);
+        int supported = 0;
+        int convertible = 0;
+        for (int i = 0; i < RANDOM_RULES; i++) {
+            final String rule = randomRule(random);
+            final EventRecurrence er = new EventRecurrence();
+            try {
+                er.parse(rule);
+            } catch (EventRecurrence.InvalidFormatException ife) {
+                continue;
+            }
+
+            final int descriptor = RecurrenceClassifier.classify(er);
+            final boolean expectedSupported = canHandleRecurrenceRule(er)
+                    && er.bysetposCount == 0
+                    && er.byyeardayCount == 0
+                    && er.byweeknoCount == 0;
+            assertEquals(rule, expectedSupported, RecurrenceClassifier.isSupported(descriptor));
+
+            final BaselineModel model = new BaselineModel();
+            boolean expectedConvertible = true;
+            try {
+                copyEventRecurrenceToModel(er, model);
+            } catch (IllegalStateException ise) {
+                expectedConvertible = false;
+            }
+            assertEquals(rule, expectedConvertible, RecurrenceClassifier.isConvertible(descriptor));
+            assertEquals(rule, RecurrenceClassifier.isSupported(descriptor)
+                            && RecurrenceClassifier.isConvertible(descriptor),
+                    RecurrenceClassifier.isEditable(descriptor));
+
+            if (expectedConvertible) {
+                assertModel(rule, model, descriptor);
+                convertible++;
+            }
+            if (expectedSupported) {
+                supported++;
+            }
+        }
+
+        // The generator covers both sides of each check
+        assertTrue(supported > RANDOM_RULES / 20);
+        assertTrue(convertible - supported > RANDOM_RULES / 20);
+    }
+
+    @Test
+    public void testClassifyString() {
+        final int descriptor = RecurrenceClassifier.classify("FREQ=MONTHLY;BYDAY=-1FR;COUNT=3");
+
+        assertTrue(RecurrenceClassifier.isEditable(descriptor));
+        assertEquals(RecurrenceClassifier.FREQ_MONTHLY, RecurrenceClassifier.getFreq(descriptor));
+        assertEquals(RecurrenceClassifier.END_BY_COUNT, RecurrenceClassifier.getEnd(descriptor));
+        assertEquals(RecurrenceClassifier.MONTHLY_BY_NTH_DAY_OF_WEEK,
+                RecurrenceClassifier.getMonthlyRepeat(descriptor));
+        assertEquals(5, RecurrenceClassifier.getMonthlyByDayOfWeek(descriptor));
+        assertEquals(-1, RecurrenceClassifier.getMonthlyByNthDayOfWeek(descriptor));
+
+        assertEquals(0, RecurrenceClassifier.classify("FREQ=WEEKLY;BYDAY=XX"));
+        assertFalse(RecurrenceClassifier.isSupported(RecurrenceClassifier.classify("")));
+    }
+
+    private static void assertModel(String rule, BaselineModel model, int descriptor) {
+        assertEquals(rule, model.freq, RecurrenceClassifier.getFreq(descriptor));
+        assertEquals(rule, model.end, RecurrenceClassifier.getEnd(descriptor));
+
+        int weekDays = 0;
+        for (int i = 0; i < 7; i++) {
+            if (model.weeklyByDayOfWeek[i]) {
+                weekDays |= 1 << i;
+            }
+        }
+        assertEquals(rule, weekDays, RecurrenceClassifier.getWeekDays(descriptor));
+        assertEquals(rule, model.monthlyRepeat, RecurrenceClassifier.getMonthlyRepeat(descriptor));
+
+        switch (model.monthlyRepeat) {
+            case RecurrenceClassifier.MONTHLY_BY_NTH_DAY_OF_WEEK:
+                assertEquals(rule, model.monthlyByDayOfWeek,
+                        RecurrenceClassifier.getMonthlyByDayOfWeek(descriptor));
+                assertEquals(rule, model.monthlyByNthDayOfWeek,
+                        RecurrenceClassifier.getMonthlyByNthDayOfWeek(descriptor));
+                break;
+            case RecurrenceClassifier.MONTHLY_BY_DATE:
+                assertEquals(rule, model.monthlyByMonthDay,
+                        RecurrenceClassifier.getMonthlyByMonthDay(descriptor));
+                break;
+        }
+    }
+
+    private static String randomRule(Random random) {
+        final StringBuilder rule = new StringBuilder("FREQ=")
+                .append(FREQS[random.nextInt(FREQS.length)]);
+        if (random.nextInt(4) == 0) {
+            rule.append(";INTERVAL=").append(1 + random.nextInt(3));
+        }
+        if (random.nextInt(3) == 0) {
+            rule.append(";COUNT=").append(1 + random.nextInt(5));
+        }
+        if (random.nextInt(3) == 0) {
+            rule.append(";UNTIL=20200101");
+        }
+
+        final int days = random.nextInt(4);
+        if (days > 0) {
+            rule.append(";BYDAY=");
+            for (int i = 0; i < days; i++) {
+                if (i > 0) {
+                    rule.append(',');
+                }
+                if (random.nextBoolean()) {
+                    // -2 to 6, some of them unsupported
+                    final int nth = random.nextInt(9) - 2;
+                    rule.append(nth == 0 ? 1 : nth);
+                }
+                rule.append(DAYS[random.nextInt(DAYS.length)]);
+            }
+        }
+
+        final int monthDays = random.nextInt(3);
+        if (monthDays > 0) {
+            rule.append(";BYMONTHDAY=");
+            for (int i = 0; i < monthDays; i++) {
+                if (i > 0) {
+                    rule.append(',');
+                }
+                final int monthDay = random.nextInt(63) - 31;
+                rule.append(monthDay == 0 ? 15 : monthDay);
+            }
+        }
+
+        if (random.nextInt(4) == 0) {
+            rule.append(random.nextBoolean() ? ";BYMONTH=1,2" : ";BYMONTH=6");
+        }
+        if (random.nextInt(12) == 0) {
+            rule.append(";BYSETPOS=").append(random.nextBoolean() ? 1 : -1);
+        }
+        if (random.nextInt(12) == 0) {
+            rule.append(";BYYEARDAY=").append(1 + random.nextInt(366));
+        }
+        if (random.nextInt(12) == 0) {
+            rule.append(";BYWEEKNO=").append(1 + random.nextInt(53));
+        }
+        return rule.toString();
+    }
+
+    // The fields of RecurrenceOptionCreator.RecurrenceModel that a rule sets
+    private static class BaselineModel {
+        int freq;
+        int end = RecurrenceClassifier.END_NEVER;
+        final boolean[] weeklyByDayOfWeek = new boolean[7];
+        int monthlyRepeat = RecurrenceClassifier.MONTHLY_NONE;
+        int monthlyByDayOfWeek;
+        int monthlyByNthDayOfWeek;
+        int monthlyByMonthDay;
+    }
+
+    private static boolean isEmpty(String s) {
+        return s == null || s.length() == 0;
+    }
+
+    // RecurrenceOptionCreator.canHandleRecurrenceRule(), before RecurrenceClassifier
+    private static boolean canHandleRecurrenceRule(EventRecurrence er) {
+        switch (er.freq) {
+            case EventRecurrence.DAILY:
+            case EventRecurrence.MONTHLY:
+            case EventRecurrence.YEARLY:
+            case EventRecurrence.WEEKLY:
+                break;
+            default:
+                return false;
+        }
+
+        if (er.count > 0 && !isEmpty(er.until)) {
+            return false;
+        }
+
+        int numOfByDayNum = 0;
+        for (int i = 0; i < er.bydayCount; i++) {
+            if (RecurrenceClassifier.isSupportedMonthlyByNthDayOfWeek(er.bydayNum[i])) {
+                ++numOfByDayNum;
+            }
+        }
+
+        if (numOfByDayNum > 1) {
+            return false;
+        }
+
+        if (numOfByDayNum > 0 && er.freq != EventRecurrence.MONTHLY) {
+            return false;
+        }
+
+        if (er.bymonthdayCount > 1) {
+            return false;
+        }
+
+        if (er.freq == EventRecurrence.MONTHLY) {
+            if (er.bydayCount > 1) {
+                return false;
+            }
+            if (er.bydayCount > 0 && er.bymonthdayCount > 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // RecurrenceOptionCreator.copyEventRecurrenceToModel(), before
+    // RecurrenceClassifier. UNTIL is always well formed here, so parsing it
+    // into the model's end date is left out.
+    private static void copyEventRecurrenceToModel(EventRecurrence er, BaselineModel model) {
+        switch (er.freq) {
+            case EventRecurrence.DAILY:
+                model.freq = RecurrenceClassifier.FREQ_DAILY;
+                break;
+            case EventRecurrence.MONTHLY:
+                model.freq = RecurrenceClassifier.FREQ_MONTHLY;
+                break;
+            case EventRecurrence.YEARLY:
+                model.freq = RecurrenceClassifier.FREQ_YEARLY;
+                break;
+            case EventRecurrence.WEEKLY:
+                model.freq = RecurrenceClassifier.FREQ_WEEKLY;
+                break;
+            default:
+                throw new IllegalStateException("freq=" + er.freq);
+        }
+
+        if (er.count > 0) {
+            model.end = RecurrenceClassifier.END_BY_COUNT;
+        }
+
+        if (!isEmpty(er.until)) {
+            if (model.end == RecurrenceClassifier.END_BY_COUNT) {
+                throw new IllegalStateException("freq=" + er.freq);
+            }
+            model.end = RecurrenceClassifier.END_BY_DATE;
+        }
+
+        if (er.bydayCount > 0) {
+            int count = 0;
+            for (int i = 0; i < er.bydayCount; i++) {
+                final int dayOfWeek = EventRecurrence.day2TimeDay(er.byday[i]);
+                model.weeklyByDayOfWeek[dayOfWeek] = true;
+
+                if (model.freq == RecurrenceClassifier.FREQ_MONTHLY
+                        && RecurrenceClassifier.isSupportedMonthlyByNthDayOfWeek(
+                        er.bydayNum[i])) {
+                    model.monthlyByDayOfWeek = dayOfWeek;
+                    model.monthlyByNthDayOfWeek = er.bydayNum[i];
+                    model.monthlyRepeat = RecurrenceClassifier.MONTHLY_BY_NTH_DAY_OF_WEEK;
+                    count++;
+                }
+            }
+
+            if (model.freq == RecurrenceClassifier.FREQ_MONTHLY) {
+                if (er.bydayCount != 1) {
+                    throw new IllegalStateException("Can handle only 1 byDayOfWeek in monthly");
+                }
+                if (count != 1) {
+                    throw new IllegalStateException(
+                            "Didn't specify which nth day of week to repeat for a monthly");
+                }
+            }
+        }
+
+        if (model.freq == RecurrenceClassifier.FREQ_MONTHLY) {
+            if (er.bymonthdayCount == 1) {
+                if (model.monthlyRepeat == RecurrenceClassifier.MONTHLY_BY_NTH_DAY_OF_WEEK) {
+                    throw new IllegalStateException(
+                            "Can handle only by monthday or by nth day of week, not both");
+                }
+                model.monthlyByMonthDay = er.bymonthday[0];
+                model.monthlyRepeat = RecurrenceClassifier.MONTHLY_BY_DATE;
+            } else if (er.bymonthCount > 1) {
+                throw new IllegalStateException("Can handle only one bymonthday");
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecurrenceCounterTest {
+
+    // Rules answered arithmetically, for starts on days 1-28 of the month
+    private static final String[] CLOSED_FORM_RULES = {
+            "FREQ=DAILY",
+            "FREQ=DAILY;INTERVAL=3",
+            "FREQ=DAILY;COUNT=10",
+            "FREQ=DAILY;INTERVAL=2;UNTIL=20190301",
+            "FREQ=WEEKLY",
+            "FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,WE,FR",
+            "FREQ=WEEKLY;WKST=SU;INTERVAL=2;BYDAY=SU,SA",
+            "FREQ=WEEKLY;INTERVAL=3;BYDAY=SU,WE,SA;WKST=TH;COUNT=20",
+            "FREQ=WEEKLY;UNTIL=20170301",
+            "FREQ=MONTHLY",
+            "FREQ=MONTHLY;BYMONTHDAY=5,20,5;COUNT=9",
+            "FREQ=MONTHLY;INTERVAL=5;UNTIL=20300101;BYMONTHDAY=1,28",
+            "FREQ=YEARLY",
+            "FREQ=YEARLY;BYMONTH=6",
+            "FREQ=YEARLY;BYMONTH=2,7;BYMONTHDAY=3,28",
+            "FREQ=YEARLY;INTERVAL=3;COUNT=4"
+    };
+
+    // Every bounded rule ends well within this
+    private static final int HORIZON_DAYS = 30 * 366;
+
+    // Occurrences looked up by index, per rule
+    private static final int MAX_N = 400;
+
+    @Test
+    public void testClosedForms() {
+        final Random random = new Random(1);
+        for (String rule : CLOSED_FORM_RULES) {
+            for (int i = 0; i < 4; i++) {
+                final int start = randomStart(random);
+                final RecurrenceCounter counter = new RecurrenceCounter(
+                        RecurrenceIteratorTest.parse(rule),
+                        RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+
+                assertTrue(rule, counter.isClosedForm());
+                checkAgainstReference(rule, start, counter, random);
+            }
+        }
+    }
+
+    @Test
+    public void testExpandedForms() {
+        final Random random = new Random(2);
+        for (String rule : RecurrenceIteratorTest.RULES) {
+            final int start = randomStart(random);
+            final RecurrenceCounter counter = new RecurrenceCounter(
+                    RecurrenceIteratorTest.parse(rule),
+                    RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+
+            checkAgainstReference(rule, start, counter, random);
+        }
+    }
+
+    @Test
+    public void testNotClosedForm() {
+        final int start = RecurrenceReference.toEpochDay(2016, 1, 4);
+        final String[] rules = {
+                "FREQ=DAILY;BYDAY=MO",
+                "FREQ=WEEKLY;BYMONTH=1;BYDAY=TU,TH",
+                "FREQ=MONTHLY;BYMONTHDAY=31",
+                "FREQ=MONTHLY;BYDAY=-1FR",
+                "FREQ=YEARLY;BYDAY=20MO"
+        };
+
+        for (String rule : rules) {
+            final RecurrenceCounter counter = new RecurrenceCounter(
+                    RecurrenceIteratorTest.parse(rule),
+                    RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+            assertFalse(rule, counter.isClosedForm());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNthOccurrenceRejectsZero() {
+        new RecurrenceCounter(RecurrenceIteratorTest.parse("FREQ=DAILY"),
+                0, RecurrenceReference.UTC).getNthOccurrence(0);
+    }
+
+    private static void checkAgainstReference(String rule, int start, RecurrenceCounter counter,
+                                              Random random) {
+        final EventRecurrence er = RecurrenceIteratorTest.parse(rule);
+        final int end = start + HORIZON_DAYS;
+        final List<Integer> expected = RecurrenceReference.expand(er, start, end);
+        final boolean bounded = er.count > 0 || er.until != null;
+        final String message = rule + " from " + start;
+
+        for (int n = 1; n <= Math.min(expected.size(), MAX_N); n++) {
+            assertEquals(message + " n=" + n, expected.get(n - 1).intValue(),
+                    counter.getNthOccurrence(n));
+        }
+
+        if (bounded) {
+            assertEquals(message, RecurrenceCounter.NO_OCCURRENCE,
+                    counter.getNthOccurrence(expected.size() + 1));
+            assertEquals(message, expected.isEmpty() ? RecurrenceCounter.NO_OCCURRENCE
+                    : expected.get(expected.size() - 1), counter.getLastOccurrence());
+        } else {
+            assertEquals(message, RecurrenceCounter.NO_OCCURRENCE,
+                    counter.getLastOccurrence());
+        }
+
+        for (int i = 0; i < 50; i++) {
+            final int from = start - 30 + random.nextInt(HORIZON_DAYS / 2);
+            final int to = from + random.nextInt(HORIZON_DAYS / 2);
+            assertEquals(message + " [" + from + ", " + to + "]",
+                    countBetween(expected, from, to), counter.countOccurrences(from, to));
+        }
+
+        final int until = start + random.nextInt(HORIZON_DAYS);
+        assertEquals(message + " until " + until,
+                countBetween(expected, start, until), counter.countUntil(until));
+    }
+
+    private static int countBetween(List<Integer> days, int from, int to) {
+        int count = 0;
+        for (int day : days) {
+            if (day >= from && day <= to) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // A day 1-28 of a month in 2015-2019
+    private static int randomStart(Random random) {
+        return RecurrenceReference.toEpochDay(2015 + random.nextInt(5),
+                1 + random.nextInt(12), 1 + random.nextInt(28));
+    }
+}
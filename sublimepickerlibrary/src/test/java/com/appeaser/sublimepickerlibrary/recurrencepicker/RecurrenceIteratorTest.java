@@ -0,0 +1,296 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class RecurrenceIteratorTest {
+
+    static final String[] RULES = {
+            "FREQ=DAILY",
+            "FREQ=DAILY;INTERVAL=3",
+            "FREQ=DAILY;BYMONTH=2,3;BYDAY=MO,FR",
+            "FREQ=DAILY;INTERVAL=5;BYMONTHDAY=-1,1,15",
+            "FREQ=DAILY;INTERVAL=7;BYDAY=MO",
+            "FREQ=DAILY;BYYEARDAY=-1,-2;COUNT=6",
+            "FREQ=DAILY;BYWEEKNO=-1;WKST=SA",
+            "FREQ=WEEKLY",
+            "FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,WE,FR",
+            "FREQ=WEEKLY;WKST=SU;INTERVAL=2;BYDAY=SU,SA",
+            "FREQ=WEEKLY;BYMONTH=1;BYDAY=TU,TH",
+            "FREQ=WEEKLY;INTERVAL=3;BYDAY=SU,WE,SA;WKST=TH;COUNT=20",
+            "FREQ=WEEKLY;BYWEEKNO=2;BYDAY=TU",
+            "FREQ=WEEKLY;BYDAY=SU,MO;BYSETPOS=1;WKST=SU",
+            "FREQ=MONTHLY",
+            "FREQ=MONTHLY;BYMONTHDAY=31",
+            "FREQ=MONTHLY;BYDAY=3TU",
+            "FREQ=MONTHLY;BYDAY=-1FR",
+            "FREQ=MONTHLY;INTERVAL=2;BYDAY=MO,TU,WE,TH,FR;BYSETPOS=-1",
+            "FREQ=MONTHLY;BYDAY=FR;BYMONTHDAY=13",
+            "FREQ=MONTHLY;BYMONTH=2;BYMONTHDAY=30",
+            "FREQ=MONTHLY;BYDAY=SA,SU;BYSETPOS=1,2,-1",
+            "FREQ=MONTHLY;BYMONTHDAY=5,20,5;COUNT=9",
+            "FREQ=MONTHLY;BYYEARDAY=60",
+            "FREQ=MONTHLY;BYDAY=MO,TU,WE,TH,FR;BYSETPOS=-2;COUNT=12",
+            "FREQ=MONTHLY;UNTIL=20180101T000000Z;BYMONTHDAY=1,-1",
+            "FREQ=YEARLY",
+            "FREQ=YEARLY;BYMONTH=2;BYMONTHDAY=29",
+            "FREQ=YEARLY;BYDAY=20MO",
+            "FREQ=YEARLY;BYDAY=-1SU",
+            "FREQ=YEARLY;BYMONTH=3,11;BYDAY=2SU,1SU",
+            "FREQ=YEARLY;INTERVAL=4;BYMONTH=11;BYDAY=TU;BYMONTHDAY=2,3,4,5,6,7,8",
+            "FREQ=YEARLY;BYMONTH=2,7;BYMONTHDAY=3,28",
+            "FREQ=YEARLY;INTERVAL=3;COUNT=4",
+            "FREQ=YEARLY;BYYEARDAY=1,100,200,-1",
+            "FREQ=YEARLY;BYYEARDAY=-306;BYMONTH=2,3",
+            "FREQ=YEARLY;BYWEEKNO=20;BYDAY=MO",
+            "FREQ=YEARLY;BYWEEKNO=1,-1",
+            "FREQ=YEARLY;BYWEEKNO=53;WKST=SU",
+            "FREQ=YEARLY;INTERVAL=2;BYWEEKNO=10,11;BYDAY=MO,FR;BYSETPOS=-1",
+            "FREQ=YEARLY;BYYEARDAY=366",
+            "FREQ=YEARLY;BYDAY=MO;BYMONTH=1",
+            "FREQ=DAILY;COUNT=10",
+            "FREQ=WEEKLY;UNTIL=20170301",
+            "FREQ=DAILY;INTERVAL=2;UNTIL=20190301"
+    };
+
+    // Starts per rule
+    private static final int STARTS = 4;
+
+    // How far past the start occurrences are compared
+    private static final int HORIZON_DAYS = 12 * 366;
+
+    // 2015-01-01
+    private static final int FIRST_START = 16436;
+
+    @Test
+    public void testMatchesReference() {
+        final Random random = new Random(1);
+        for (String rule : RULES) {
+            final EventRecurrence er = parse(rule);
+            for (int i = 0; i < STARTS; i++) {
+                final int start = FIRST_START + random.nextInt(1500);
+                final int end = start + HORIZON_DAYS;
+                final RecurrenceIterator iterator = new RecurrenceIterator(er,
+                        RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+
+                assertEquals(rule + " from " + start,
+                        RecurrenceReference.expand(er, start, end), drain(iterator, end));
+            }
+        }
+    }
+
+    @Test
+    public void testAdvanceTo() {
+        final Random random = new Random(2);
+        for (String rule : RULES) {
+            final EventRecurrence er = parse(rule);
+            for (int i = 0; i < STARTS; i++) {
+                final int start = FIRST_START + random.nextInt(1500);
+                final int end = start + HORIZON_DAYS;
+                final List<Integer> expected = RecurrenceReference.expand(er, start, end);
+                if (expected.isEmpty()) {
+                    continue;
+                }
+
+                final int target = expected.get(0) + 1 + random.nextInt(800);
+                final RecurrenceIterator iterator = new RecurrenceIterator(er,
+                        RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+                iterator.advanceTo(target);
+                assertEquals(rule + " from " + start + " to " + target,
+                        tailFrom(expected, target), drain(iterator, end));
+            }
+        }
+    }
+
+    @Test
+    public void testAdvanceToFromPartlyConsumedPeriod() {
+        final Random random = new Random(3);
+        for (String rule : RULES) {
+            final EventRecurrence er = parse(rule);
+            for (int i = 0; i < STARTS; i++) {
+                final int start = FIRST_START + random.nextInt(1500);
+                final int end = start + HORIZON_DAYS;
+                final List<Integer> expected = RecurrenceReference.expand(er, start, end);
+                if (expected.isEmpty()) {
+                    continue;
+                }
+
+                // Take the first occurrence, leaving the rest of its period
+                // buffered, then jump past that period
+                final RecurrenceIterator iterator = new RecurrenceIterator(er,
+                        RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+                assertEquals(expected.get(0).intValue(), iterator.nextEpochDay());
+
+                final int target = expected.get(0) + 1 + random.nextInt(800);
+                iterator.advanceTo(target);
+                assertEquals(rule + " from " + start + " to " + target,
+                        tailFrom(expected, target), drain(iterator, end));
+            }
+        }
+    }
+
+    @Test
+    public void testAdvanceToWithinCurrentPeriod() {
+        // 2016-01-04, a Monday
+        final int start = RecurrenceReference.toEpochDay(2016, 1, 4);
+        final EventRecurrence er = parse("FREQ=WEEKLY;BYDAY=MO,WE,FR");
+        final RecurrenceIterator iterator = new RecurrenceIterator(er,
+                RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+
+        assertEquals(start, iterator.nextEpochDay());
+        iterator.advanceTo(start + 3);
+        assertEquals(start + 4, iterator.nextEpochDay());
+        iterator.advanceTo(start + 7);
+        assertEquals(start + 7, iterator.nextEpochDay());
+    }
+
+    @Test
+    public void testAdvanceToCountsSkippedOccurrences() {
+        final int start = RecurrenceReference.toEpochDay(2016, 1, 4);
+        final EventRecurrence er = parse("FREQ=DAILY;COUNT=10");
+        final RecurrenceIterator iterator = new RecurrenceIterator(er,
+                RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+
+        iterator.advanceTo(start + 8);
+        assertEquals(start + 8, iterator.nextEpochDay());
+        assertEquals(start + 9, iterator.nextEpochDay());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testRestart() {
+        final int start = RecurrenceReference.toEpochDay(2016, 1, 4);
+        final EventRecurrence er = parse("FREQ=MONTHLY;COUNT=3;BYDAY=-1FR");
+        final RecurrenceIterator iterator = new RecurrenceIterator(er,
+                RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+
+        final List<Integer> first = drain(iterator, Integer.MAX_VALUE);
+        iterator.restart();
+        assertEquals(first, drain(iterator, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testNeverMatchingRuleEnds() {
+        final int start = RecurrenceReference.toEpochDay(2016, 1, 4);
+        final RecurrenceIterator iterator = new RecurrenceIterator(
+                parse("FREQ=YEARLY;BYMONTH=2;BYMONTHDAY=30"),
+                RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+
+        assertFalse(iterator.hasNext());
+        try {
+            iterator.nextEpochDay();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void testHasNextWithinMatchesHasNext() {
+        final Random random = new Random(4);
+        for (String rule : RULES) {
+            final int start = FIRST_START + random.nextInt(1500);
+            final int end = start + HORIZON_DAYS;
+            final EventRecurrence er = parse(rule);
+            final RecurrenceIterator iterator = new RecurrenceIterator(er,
+                    RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+
+            final List<Integer> days = new ArrayList<>();
+            while (days.isEmpty() || days.get(days.size() - 1) <= end) {
+                final int next = iterator.hasNextWithin(1 + random.nextInt(3));
+                if (next == RecurrenceIterator.NO_NEXT) {
+                    assertFalse(iterator.hasNext());
+                    break;
+                }
+                if (next == RecurrenceIterator.HAS_NEXT) {
+                    days.add(iterator.nextEpochDay());
+                }
+            }
+            if (!days.isEmpty() && days.get(days.size() - 1) > end) {
+                days.remove(days.size() - 1);
+            }
+
+            assertEquals(rule + " from " + start, drain(new RecurrenceIterator(er,
+                    RecurrenceReference.toMillis(start), RecurrenceReference.UTC), end), days);
+        }
+    }
+
+    @Test
+    public void testHasNextWithinStopsBetweenPeriods() {
+        final int start = RecurrenceReference.toEpochDay(2017, 1, 1);
+        final RecurrenceIterator iterator = new RecurrenceIterator(
+                parse("FREQ=YEARLY;BYMONTH=2;BYMONTHDAY=29"),
+                RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+
+        // 2017, 2018 & 2019 have no February 29th
+        for (int i = 0; i < 3; i++) {
+            assertEquals(RecurrenceIterator.UNDECIDED, iterator.hasNextWithin(1));
+        }
+        assertEquals(RecurrenceIterator.HAS_NEXT, iterator.hasNextWithin(1));
+        assertEquals(RecurrenceReference.toEpochDay(2020, 2, 29), iterator.nextEpochDay());
+
+        // A rule that never matches still ends
+        iterator.reset(parse("FREQ=YEARLY;BYMONTH=2;BYMONTHDAY=30"),
+                RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+        int undecided = 0;
+        int next;
+        while ((next = iterator.hasNextWithin(10)) == RecurrenceIterator.UNDECIDED) {
+            undecided++;
+        }
+        assertEquals(RecurrenceIterator.NO_NEXT, next);
+        // A 400 year cycle (& one more year), 10 years at a time
+        assertEquals(40, undecided);
+    }
+
+    static EventRecurrence parse(String rule) {
+        final EventRecurrence er = new EventRecurrence();
+        er.parse(rule);
+        return er;
+    }
+
+    // Occurrences up to & including 'end'
+    static List<Integer> drain(RecurrenceIterator iterator, int end) {
+        final List<Integer> days = new ArrayList<>();
+        while (iterator.hasNext()) {
+            final int day = iterator.nextEpochDay();
+            if (day > end) {
+                break;
+            }
+            days.add(day);
+        }
+        return days;
+    }
+
+    private static List<Integer> tailFrom(List<Integer> days, int from) {
+        final List<Integer> tail = new ArrayList<>();
+        for (int day : days) {
+            if (day >= from) {
+                tail.add(day);
+            }
+        }
+        return tail;
+    }
+}
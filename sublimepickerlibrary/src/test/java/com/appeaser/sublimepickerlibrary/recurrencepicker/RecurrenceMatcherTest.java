@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class RecurrenceMatcherTest {
+
+    // 2015-01-01
+    private static final int FIRST_START = 16436;
+
+    private static final int HORIZON_DAYS = 6 * 366;
+
+    @Test
+    public void testMatchesReferenceInOrder() {
+        final Random random = new Random(1);
+        for (String rule : RecurrenceIteratorTest.RULES) {
+            final EventRecurrence er = RecurrenceIteratorTest.parse(rule);
+            final int start = FIRST_START + random.nextInt(1500);
+            final Set<Integer> expected = new HashSet<>(
+                    RecurrenceReference.expand(er, start, start + HORIZON_DAYS));
+            final RecurrenceMatcher matcher = new RecurrenceMatcher(er,
+                    RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+
+            for (int day = start - 10; day <= start + HORIZON_DAYS; day++) {
+                assertEquals(rule + " from " + start + " on " + day,
+                        expected.contains(day), matcher.matches(day));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesReferenceInAnyOrder() {
+        final Random random = new Random(2);
+        for (String rule : RecurrenceIteratorTest.RULES) {
+            final EventRecurrence er = RecurrenceIteratorTest.parse(rule);
+            final int start = FIRST_START + random.nextInt(1500);
+            final Set<Integer> expected = new HashSet<>(
+                    RecurrenceReference.expand(er, start, start + HORIZON_DAYS));
+            final RecurrenceMatcher matcher = new RecurrenceMatcher(er,
+                    RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+
+            for (int i = 0; i < 500; i++) {
+                final int day = start + random.nextInt(HORIZON_DAYS);
+                assertEquals(rule + " from " + start + " on " + day,
+                        expected.contains(day), matcher.matches(day));
+            }
+        }
+    }
+}
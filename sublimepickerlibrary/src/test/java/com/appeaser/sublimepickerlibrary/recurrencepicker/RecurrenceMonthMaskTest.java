@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares masks against a fresh RecurrenceIterator expansion, while paging
+ * the way a date picker does: forward, back, & jumping.
+ */
+public class RecurrenceMonthMaskTest {
+
+    // Months are paged within [FIRST_YEAR, LAST_YEAR]
+    private static final int FIRST_YEAR = 2014;
+    private static final int LAST_YEAR = 2030;
+
+    private static final int LAST_DAY = RecurrenceReference.toEpochDay(LAST_YEAR, 12, 31);
+
+    private static final int RANDOM_SEQUENCES = 100;
+    private static final int STEPS = 300;
+
+    // January 4th, 11th, 18th & 25th
+    private static final int WEEKLY_JANUARY = 1 << 3 | 1 << 10 | 1 << 17 | 1 << 24;
+
+    @Test
+    public void testMatchesExpansionWhilePaging() {
+        final Random random = new Random(1);
+        for (int n = 0; n < RANDOM_SEQUENCES; n++) {
+            String rule = randomRule(random);
+            int start = randomStart(random);
+            final RecurrenceMonthMask masks = new RecurrenceMonthMask(
+                    RecurrenceIteratorTest.parse(rule), RecurrenceReference.toMillis(start),
+                    RecurrenceReference.UTC);
+            Set<Integer> days = expand(rule, start);
+
+            int month = toEpochMonth(start);
+            for (int step = 0; step < STEPS; step++) {
+                final int action = random.nextInt(20);
+                if (action == 0) {
+                    // Halfway through, as when the rule is edited
+                    rule = randomRule(random);
+                    start = randomStart(random);
+                    masks.reset(RecurrenceIteratorTest.parse(rule),
+                            RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+                    days = expand(rule, start);
+                } else if (action < 3) {
+                    month = FIRST_YEAR * 12 + random.nextInt((LAST_YEAR - FIRST_YEAR + 1) * 12);
+                } else if (action < 6) {
+                    month = Math.max(month - 1, FIRST_YEAR * 12);
+                } else if (action < 8) {
+                    // The same month again, from the cache
+                } else {
+                    month = Math.min(month + 1, LAST_YEAR * 12 + 11);
+                }
+
+                final int year = month / 12;
+                assertEquals(rule + " from " + start + " in " + year + "-" + (month % 12 + 1)
+                                + " at step " + step,
+                        expectedMask(days, year, month % 12), masks.getMask(year, month % 12));
+            }
+        }
+    }
+
+    @Test
+    public void testPagesBackAfterCountIsExhausted() {
+        final int start = RecurrenceReference.toEpochDay(2016, 1, 4);
+        final RecurrenceMonthMask masks = new RecurrenceMonthMask(
+                RecurrenceIteratorTest.parse("FREQ=WEEKLY;COUNT=5"),
+                RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+
+        // Jan 4, 11, 18, 25, Feb 1
+        assertEquals(WEEKLY_JANUARY, masks.getMask(2016, 0));
+        assertEquals(0, masks.getMask(2016, 2));
+        assertEquals(0, masks.getMask(2017, 0));
+        // Back over the end, & before the start
+        assertEquals(1, masks.getMask(2016, 1));
+        assertEquals(0, masks.getMask(2015, 11));
+        assertEquals(WEEKLY_JANUARY, masks.getMask(2016, 0));
+        assertEquals(1, masks.getMask(2016, 1));
+    }
+
+    @Test
+    public void testSkippedMonthsKeepTheirOccurrences() {
+        final int start = RecurrenceReference.toEpochDay(2016, 1, 31);
+        final RecurrenceMonthMask masks = new RecurrenceMonthMask(
+                RecurrenceIteratorTest.parse("FREQ=MONTHLY;BYMONTHDAY=1,-1"),
+                RecurrenceReference.toMillis(start), RecurrenceReference.UTC);
+
+        // Jumping ahead, then back to a month that was skipped
+        assertEquals(1 | 1 << 30, masks.getMask(2016, 6));
+        assertEquals(1 | 1 << 28, masks.getMask(2016, 1));
+        assertEquals(1 << 30, masks.getMask(2016, 0));
+        assertTrue(RecurrenceMonthMask.hasOccurrence(masks.getMask(2016, 1), 29));
+    }
+
+    private static String randomRule(Random random) {
+        // Often bounded by COUNT, which rewinding has to replay
+        final String rule = RecurrenceIteratorTest.RULES[
+                random.nextInt(RecurrenceIteratorTest.RULES.length)];
+        if (random.nextInt(3) == 0 && !rule.contains("COUNT") && !rule.contains("UNTIL")) {
+            return rule + ";COUNT=" + (1 + random.nextInt(40));
+        }
+        return rule;
+    }
+
+    private static int randomStart(Random random) {
+        return RecurrenceReference.toEpochDay(2015, 1, 1) + random.nextInt(3 * 365);
+    }
+
+    private static Set<Integer> expand(String rule, int start) {
+        final RecurrenceIterator iterator = new RecurrenceIterator(
+                RecurrenceIteratorTest.parse(rule), RecurrenceReference.toMillis(start),
+                RecurrenceReference.UTC);
+        final List<Integer> days = RecurrenceIteratorTest.drain(iterator, LAST_DAY);
+        return new HashSet<>(days);
+    }
+
+    private static int expectedMask(Set<Integer> days, int year, int month) {
+        final int firstDay = RecurrenceReference.toEpochDay(year, month + 1, 1);
+        final int nextFirstDay = month == 11 ? RecurrenceReference.toEpochDay(year + 1, 1, 1)
+                : RecurrenceReference.toEpochDay(year, month + 2, 1);
+        int mask = 0;
+        for (int day = firstDay; day < nextFirstDay; day++) {
+            if (days.contains(day)) {
+                mask |= 1 << (day - firstDay);
+            }
+        }
+        return mask;
+    }
+
+    private static int toEpochMonth(int epochDay) {
+        final GregorianCalendar calendar = new GregorianCalendar(RecurrenceReference.UTC);
+        calendar.setTimeInMillis(RecurrenceReference.toMillis(epochDay));
+        return calendar.get(Calendar.YEAR) * 12 + calendar.get(Calendar.MONTH);
+    }
+}
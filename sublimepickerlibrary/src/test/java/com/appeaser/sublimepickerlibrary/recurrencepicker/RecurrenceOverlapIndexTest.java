@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class RecurrenceOverlapIndexTest {
+
+    // 2016-01-01
+    private static final int FIRST_FROM_DAY = 16801;
+
+    private static final int RANDOM_INDEXES = 60;
+
+    // Mostly short events, some long enough to reach far into the window
+    private static final int[] DURATIONS = {1, 1, 1, 2, 3, 5, 9, 31};
+
+    @Test
+    public void testMatchesBruteForce() {
+        final Random random = new Random(1);
+        for (int n = 0; n < RANDOM_INDEXES; n++) {
+            final int fromDay = FIRST_FROM_DAY + random.nextInt(400);
+            final int toDay = fromDay + random.nextInt(500);
+            final RecurrenceOverlapIndex index = new RecurrenceOverlapIndex(fromDay, toDay);
+
+            final int rules = 1 + random.nextInt(15);
+            final List<Set<Integer>> covered = new ArrayList<>();
+            final StringBuilder description = new StringBuilder();
+            for (int i = 0; i < rules; i++) {
+                final String rule = RecurrenceIteratorTest.RULES[
+                        random.nextInt(RecurrenceIteratorTest.RULES.length)];
+                final EventRecurrence er = RecurrenceIteratorTest.parse(rule);
+                // Many start before the window
+                final int start = fromDay - 200 + random.nextInt(400);
+                final int duration = DURATIONS[random.nextInt(DURATIONS.length)];
+
+                assertEquals(i, index.add(er, RecurrenceReference.toMillis(start),
+                        RecurrenceReference.UTC, duration));
+                covered.add(cover(er, start, duration, fromDay, toDay));
+                description.append(i).append(": ").append(rule).append(" from ")
+                        .append(start).append(" for ").append(duration).append("; ");
+            }
+            final String message = description.append("window [").append(fromDay)
+                    .append(", ").append(toDay).append(']').toString();
+            assertEquals(rules, index.size());
+
+            for (int id = 0; id < rules; id++) {
+                assertEquals(message + " overlaps of " + id,
+                        overlaps(covered, covered.get(id), id),
+                        toList(index.findOverlaps(id)));
+            }
+
+            // A rule that isn't indexed
+            final String rule = RecurrenceIteratorTest.RULES[
+                    random.nextInt(RecurrenceIteratorTest.RULES.length)];
+            final EventRecurrence er = RecurrenceIteratorTest.parse(rule);
+            final int start = fromDay - 50 + random.nextInt(200);
+            final int duration = DURATIONS[random.nextInt(DURATIONS.length)];
+            assertEquals(message + " query " + rule + " from " + start + " for " + duration,
+                    overlaps(covered, cover(er, start, duration, fromDay, toDay), -1),
+                    toList(index.findOverlaps(er, RecurrenceReference.toMillis(start),
+                            RecurrenceReference.UTC, duration)));
+
+            for (int i = 0; i < 20; i++) {
+                final int day = fromDay + random.nextInt(toDay - fromDay + 1);
+                assertEquals(message + " on " + day,
+                        overlaps(covered, Collections.singleton(day), -1),
+                        toList(index.getRulesOn(day)));
+            }
+        }
+    }
+
+    @Test
+    public void testOccurrenceBeforeWindowReachesIntoIt() {
+        final int fromDay = RecurrenceReference.toEpochDay(2016, 3, 1);
+        final RecurrenceOverlapIndex index = new RecurrenceOverlapIndex(fromDay, fromDay + 30);
+
+        // Feb 27th - Mar 2nd, then the window is over
+        final int longEvent = index.add(RecurrenceIteratorTest.parse("FREQ=YEARLY"),
+                RecurrenceReference.toMillis(fromDay - 3), RecurrenceReference.UTC, 5);
+        final int shortEvent = index.add(RecurrenceIteratorTest.parse("FREQ=DAILY;COUNT=1"),
+                RecurrenceReference.toMillis(fromDay + 1), RecurrenceReference.UTC, 1);
+
+        assertEquals(Collections.singletonList(shortEvent), toList(index.findOverlaps(longEvent)));
+        assertEquals(Collections.singletonList(longEvent), toList(index.findOverlaps(shortEvent)));
+        assertEquals(Arrays.asList(longEvent, shortEvent), toList(index.getRulesOn(fromDay + 1)));
+        assertEquals(Collections.<Integer>emptyList(), toList(index.getRulesOn(fromDay + 2)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsUnknownId() {
+        new RecurrenceOverlapIndex(0, 10).findOverlaps(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsEmptyDuration() {
+        new RecurrenceOverlapIndex(0, 10).add(RecurrenceIteratorTest.parse("FREQ=DAILY"),
+                0, RecurrenceReference.UTC, 0);
+    }
+
+    /**
+     * @return the days of [fromDay, toDay] covered by an occurrence of 'er'
+     */
+    private static Set<Integer> cover(EventRecurrence er, int start, int duration,
+                                      int fromDay, int toDay) {
+        final Set<Integer> days = new HashSet<>();
+        for (int day : RecurrenceReference.expand(er, start, toDay)) {
+            for (int d = day; d < day + duration; d++) {
+                if (d >= fromDay && d <= toDay) {
+                    days.add(d);
+                }
+            }
+        }
+        return days;
+    }
+
+    /**
+     * @return ids of the rules in 'covered' sharing a day with 'days', but 'excludedId'
+     */
+    private static List<Integer> overlaps(List<Set<Integer>> covered, Set<Integer> days,
+                                          int excludedId) {
+        final List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < covered.size(); id++) {
+            if (id != excludedId && !Collections.disjoint(covered.get(id), days)) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private static List<Integer> toList(int[] ids) {
+        final List<Integer> list = new ArrayList<>();
+        for (int id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+}
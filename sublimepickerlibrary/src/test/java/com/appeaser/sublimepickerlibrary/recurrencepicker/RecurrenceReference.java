@@ -0,0 +1,321 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+/**
+ * A naive RFC 5545 expansion to check the recurrence engine against: every
+ * day of every period is tested against every BY* part. Built on
+ * {@link GregorianCalendar} only, so that it shares no code with the
+ * engine. Slow - keep horizons to a few decades.
+ */
+final class RecurrenceReference {
+
+    static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private RecurrenceReference() {
+    }
+
+    /**
+     * @return the UTC millis of midnight on 'epochDay'
+     */
+    static long toMillis(int epochDay) {
+        return epochDay * MILLIS_PER_DAY;
+    }
+
+    /**
+     * @param month 1-12
+     */
+    static int toEpochDay(int year, int month, int monthDay) {
+        final GregorianCalendar calendar = newCalendar();
+        calendar.set(year, month - 1, monthDay);
+        return toEpochDay(calendar);
+    }
+
+    /**
+     * Expands 'er' from 'startDay', honoring COUNT & UNTIL.
+     *
+     * @return the occurrences up to & including 'endDay', as epoch days
+     */
+    static List<Integer> expand(EventRecurrence er, int startDay, int endDay) {
+        final List<Integer> out = new ArrayList<>();
+        final int interval = er.interval <= 1 ? 1 : er.interval;
+        final int wkst = er.wkst == 0 ? 1 : weekDayOf(er.wkst);
+        final int untilDay = er.until == null ? Integer.MAX_VALUE
+                : toEpochDay(Integer.parseInt(er.until.substring(0, 4)),
+                Integer.parseInt(er.until.substring(4, 6)),
+                Integer.parseInt(er.until.substring(6, 8)));
+        final Fields start = new Fields(startDay);
+
+        // BY* parts, with the defaults DTSTART implies
+        final List<Integer> months = new ArrayList<>();
+        for (int i = 0; i < er.bymonthCount; i++) {
+            months.add(er.bymonth[i]);
+        }
+        final List<Integer> monthDays = new ArrayList<>();
+        for (int i = 0; i < er.bymonthdayCount; i++) {
+            monthDays.add(er.bymonthday[i]);
+        }
+        final List<int[]> weekDays = new ArrayList<>();
+        for (int i = 0; i < er.bydayCount; i++) {
+            weekDays.add(new int[]{er.bydayNum == null ? 0 : er.bydayNum[i],
+                    weekDayOf(er.byday[i])});
+        }
+        final boolean hasYearDays = er.byyeardayCount > 0;
+        final boolean hasWeekNos = er.byweeknoCount > 0;
+        if (monthDays.isEmpty() && weekDays.isEmpty() && !hasYearDays && !hasWeekNos) {
+            if (er.freq == EventRecurrence.YEARLY) {
+                if (months.isEmpty()) {
+                    months.add(start.month);
+                }
+                monthDays.add(start.monthDay);
+            } else if (er.freq == EventRecurrence.MONTHLY) {
+                monthDays.add(start.monthDay);
+            } else if (er.freq == EventRecurrence.WEEKLY) {
+                weekDays.add(new int[]{0, start.weekDay});
+            }
+        }
+
+        int emitted = 0;
+        Fields period = firstPeriod(er.freq, start, wkst);
+        while (period.epochDay <= endDay && period.epochDay <= untilDay) {
+            final int periodEnd = getPeriodEnd(er.freq, period);
+
+            List<Integer> candidates = new ArrayList<>();
+            for (int day = period.epochDay; day <= periodEnd; day++) {
+                final Fields d = new Fields(day);
+                if (matches(er, d, wkst, months, monthDays, weekDays)) {
+                    candidates.add(day);
+                }
+            }
+
+            if (er.bysetposCount > 0) {
+                final TreeSet<Integer> indices = new TreeSet<>();
+                for (int i = 0; i < er.bysetposCount; i++) {
+                    final int pos = er.bysetpos[i];
+                    final int index = pos > 0 ? pos - 1 : candidates.size() + pos;
+                    if (pos != 0 && index >= 0 && index < candidates.size()) {
+                        indices.add(index);
+                    }
+                }
+                final List<Integer> selected = new ArrayList<>();
+                for (int index : indices) {
+                    selected.add(candidates.get(index));
+                }
+                candidates = selected;
+            }
+
+            for (int day : candidates) {
+                if (day < startDay) {
+                    continue;
+                }
+                if (day > untilDay || day > endDay
+                        || (er.count > 0 && emitted >= er.count)) {
+                    return out;
+                }
+                out.add(day);
+                emitted++;
+            }
+
+            period = nextPeriod(er.freq, period, interval);
+        }
+        return out;
+    }
+
+    private static boolean matches(EventRecurrence er, Fields d, int wkst,
+                                   List<Integer> months, List<Integer> monthDays,
+                                   List<int[]> weekDays) {
+        if (!months.isEmpty() && !months.contains(d.month)) {
+            return false;
+        }
+
+        if (!monthDays.isEmpty()) {
+            boolean found = false;
+            for (int monthDay : monthDays) {
+                final int day = monthDay > 0 ? monthDay : d.daysInMonth + monthDay + 1;
+                found |= day == d.monthDay;
+            }
+            if (!found) {
+                return false;
+            }
+        }
+
+        if (er.byyeardayCount > 0) {
+            boolean found = false;
+            for (int i = 0; i < er.byyeardayCount; i++) {
+                final int yearDay = er.byyearday[i];
+                final int day = yearDay > 0 ? yearDay : d.daysInYear + yearDay + 1;
+                found |= day == d.yearDay;
+            }
+            if (!found) {
+                return false;
+            }
+        }
+
+        if (er.byweeknoCount > 0) {
+            final int weekStart = d.epochDay - floorMod(d.weekDay - wkst, 7);
+            final int weekYear = new Fields(weekStart + 3).year;
+            final int firstWeek = getFirstWeekStart(weekYear, wkst);
+            final int weekNo = (weekStart - firstWeek) / 7 + 1;
+            final int weeks = (getFirstWeekStart(weekYear + 1, wkst) - firstWeek) / 7;
+            boolean found = false;
+            for (int i = 0; i < er.byweeknoCount; i++) {
+                final int v = er.byweekno[i];
+                found |= v == weekNo || v == weekNo - weeks - 1;
+            }
+            if (!found) {
+                return false;
+            }
+        }
+
+        if (!weekDays.isEmpty()) {
+            boolean found = false;
+            for (int[] weekDay : weekDays) {
+                if (weekDay[1] != d.weekDay) {
+                    continue;
+                }
+                final int n = weekDay[0];
+                if (n == 0 || (er.freq != EventRecurrence.MONTHLY
+                        && er.freq != EventRecurrence.YEARLY)) {
+                    found = true;
+                    continue;
+                }
+                final int index, fromEnd;
+                if (er.freq == EventRecurrence.YEARLY && months.isEmpty()) {
+                    index = (d.yearDay - 1) / 7 + 1;
+                    fromEnd = -((d.daysInYear - d.yearDay) / 7 + 1);
+                } else {
+                    index = (d.monthDay - 1) / 7 + 1;
+                    fromEnd = -((d.daysInMonth - d.monthDay) / 7 + 1);
+                }
+                found |= n == index || n == fromEnd;
+            }
+            if (!found) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static Fields firstPeriod(int freq, Fields start, int wkst) {
+        switch (freq) {
+            case EventRecurrence.DAILY:
+                return start;
+            case EventRecurrence.WEEKLY:
+                return new Fields(start.epochDay - floorMod(start.weekDay - wkst, 7));
+            case EventRecurrence.MONTHLY:
+                return new Fields(toEpochDay(start.year, start.month, 1));
+            default:
+                return new Fields(toEpochDay(start.year, 1, 1));
+        }
+    }
+
+    private static int getPeriodEnd(int freq, Fields period) {
+        switch (freq) {
+            case EventRecurrence.DAILY:
+                return period.epochDay;
+            case EventRecurrence.WEEKLY:
+                return period.epochDay + 6;
+            case EventRecurrence.MONTHLY:
+                return period.epochDay + period.daysInMonth - 1;
+            default:
+                return period.epochDay + period.daysInYear - 1;
+        }
+    }
+
+    private static Fields nextPeriod(int freq, Fields period, int interval) {
+        switch (freq) {
+            case EventRecurrence.DAILY:
+                return new Fields(period.epochDay + interval);
+            case EventRecurrence.WEEKLY:
+                return new Fields(period.epochDay + 7 * interval);
+            case EventRecurrence.MONTHLY: {
+                final GregorianCalendar calendar = newCalendar();
+                calendar.set(period.year, period.month - 1, 1);
+                calendar.add(Calendar.MONTH, interval);
+                return new Fields(toEpochDay(calendar));
+            }
+            default:
+                return new Fields(toEpochDay(period.year + interval, 1, 1));
+        }
+    }
+
+    // Week 1 is the first week with at least 4 days in the year
+    private static int getFirstWeekStart(int year, int wkst) {
+        final Fields jan4 = new Fields(toEpochDay(year, 1, 4));
+        return jan4.epochDay - floorMod(jan4.weekDay - wkst, 7);
+    }
+
+    // SU = 0
+    private static int weekDayOf(int day) {
+        return Integer.numberOfTrailingZeros(day) - 16;
+    }
+
+    private static int floorMod(int x, int y) {
+        return ((x % y) + y) % y;
+    }
+
+    private static GregorianCalendar newCalendar() {
+        final GregorianCalendar calendar = new GregorianCalendar(UTC);
+        calendar.setGregorianChange(new Date(Long.MIN_VALUE));
+        calendar.clear();
+        return calendar;
+    }
+
+    private static int toEpochDay(Calendar calendar) {
+        final long millis = calendar.getTimeInMillis();
+        final long day = millis / MILLIS_PER_DAY;
+        return (int) (millis % MILLIS_PER_DAY < 0 ? day - 1 : day);
+    }
+
+    /**
+     * The calendar fields of one day. Months are 1-12, week days SU = 0.
+     */
+    private static class Fields {
+        final int epochDay;
+        final int year;
+        final int month;
+        final int monthDay;
+        final int yearDay;
+        final int weekDay;
+        final int daysInMonth;
+        final int daysInYear;
+
+        Fields(int epochDay) {
+            final GregorianCalendar calendar = newCalendar();
+            calendar.setTimeInMillis(toMillis(epochDay));
+            this.epochDay = epochDay;
+            year = calendar.get(Calendar.YEAR);
+            month = calendar.get(Calendar.MONTH) + 1;
+            monthDay = calendar.get(Calendar.DAY_OF_MONTH);
+            yearDay = calendar.get(Calendar.DAY_OF_YEAR);
+            weekDay = calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY;
+            daysInMonth = calendar.getActualMaximum(Calendar.DAY_OF_MONTH);
+            daysInYear = calendar.getActualMaximum(Calendar.DAY_OF_YEAR);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 Vikram Kakkar
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.appeaser.sublimepickerlibrary.recurrencepicker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class RecurrenceSetTest {
+
+    // 2015-01-01
+    private static final int FIRST_START = 16436;
+
+    private static final int HORIZON_DAYS = 4 * 366;
+
+    private static final int RANDOM_SETS = 150;
+
+    @Test
+    public void testMatchesMergedReference() {
+        final Random random = new Random(1);
+        for (int i = 0; i < RANDOM_SETS; i++) {
+            final int start = FIRST_START + random.nextInt(1500);
+            final RecurrenceSet set = new RecurrenceSet(RecurrenceReference.toMillis(start),
+                    RecurrenceReference.UTC);
+            final TreeSet<Integer> expected = new TreeSet<>();
+            final String description = fill(set, expected, start, random);
+
+            assertEquals(description, new ArrayList<>(expected),
+                    drain(set, start + HORIZON_DAYS));
+
+            // Iterating again gives the same occurrences
+            set.restart();
+            assertEquals(description, new ArrayList<>(expected),
+                    drain(set, start + HORIZON_DAYS));
+        }
+    }
+
+    @Test
+    public void testAdvanceTo() {
+        final Random random = new Random(2);
+        for (int i = 0; i < RANDOM_SETS; i++) {
+            final int start = FIRST_START + random.nextInt(1500);
+            final RecurrenceSet set = new RecurrenceSet(RecurrenceReference.toMillis(start),
+                    RecurrenceReference.UTC);
+            final TreeSet<Integer> expected = new TreeSet<>();
+            final String description = fill(set, expected, start, random);
+
+            // Consume a few, then jump
+            final int taken = random.nextInt(4);
+            for (int j = 0; j < taken && set.hasNext(); j++) {
+                assertEquals(description, expected.pollFirst().intValue(), set.nextEpochDay());
+            }
+            final int target = start + random.nextInt(HORIZON_DAYS / 2);
+            set.advanceTo(target);
+
+            assertEquals(description + " to " + target,
+                    new ArrayList<>(expected.tailSet(target)), drain(set, start + HORIZON_DAYS));
+        }
+    }
+
+    @Test
+    public void testDuplicatesAcrossStreams() {
+        final int start = RecurrenceReference.toEpochDay(2016, 1, 4);
+        final RecurrenceSet set = new RecurrenceSet(RecurrenceReference.toMillis(start),
+                RecurrenceReference.UTC);
+        set.addRule(RecurrenceIteratorTest.parse("FREQ=DAILY;COUNT=3"));
+        set.addRule(RecurrenceIteratorTest.parse("FREQ=DAILY;INTERVAL=2;COUNT=3"));
+        set.addDate(start + 2);
+        set.addDate(start + 2);
+        set.addDate(start + 1);
+
+        assertEquals(listOf(start, start + 1, start + 2, start + 4), drain(set, start + 10));
+    }
+
+    @Test
+    public void testExceptionDates() {
+        final int start = RecurrenceReference.toEpochDay(2016, 1, 4);
+        final RecurrenceSet set = new RecurrenceSet(RecurrenceReference.toMillis(start),
+                RecurrenceReference.UTC);
+        set.addRule(RecurrenceIteratorTest.parse("FREQ=DAILY;COUNT=5"));
+        set.addDate(start + 10);
+        set.addExceptionDate(start + 10);
+        set.addExceptionDate(start + 3);
+        set.addExceptionDate(start);
+
+        assertEquals(listOf(start + 1, start + 2, start + 4), drain(set, start + 20));
+    }
+
+    @Test
+    public void testModifyingRewinds() {
+        final int start = RecurrenceReference.toEpochDay(2016, 1, 4);
+        final RecurrenceSet set = new RecurrenceSet(RecurrenceReference.toMillis(start),
+                RecurrenceReference.UTC);
+        set.addRule(RecurrenceIteratorTest.parse("FREQ=DAILY;COUNT=2"));
+        assertEquals(start, set.nextEpochDay());
+
+        set.addDate(start - 1);
+        assertEquals(listOf(start - 1, start, start + 1), drain(set, start + 10));
+    }
+
+    @Test
+    public void testEmpty() {
+        final RecurrenceSet set = new RecurrenceSet(0, RecurrenceReference.UTC);
+
+        assertFalse(set.hasNext());
+        try {
+            set.nextEpochDay();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    /**
+     * Adds 0-3 random rules, RDATEs & EXDATEs to 'set', & their expected
+     * merge up to the horizon to 'expected'.
+     *
+     * @return a description of what was added
+     */
+    private static String fill(RecurrenceSet set, TreeSet<Integer> expected, int start,
+                               Random random) {
+        final StringBuilder description = new StringBuilder();
+        final int end = start + HORIZON_DAYS;
+
+        final int rules = random.nextInt(4);
+        for (int i = 0; i < rules; i++) {
+            final String rule = RecurrenceIteratorTest.RULES[
+                    random.nextInt(RecurrenceIteratorTest.RULES.length)];
+            final EventRecurrence er = RecurrenceIteratorTest.parse(rule);
+            set.addRule(er);
+            expected.addAll(RecurrenceReference.expand(er, start, end));
+            description.append(rule).append(' ');
+        }
+
+        final int dates = random.nextInt(6);
+        for (int i = 0; i < dates; i++) {
+            final int day = start + random.nextInt(HORIZON_DAYS);
+            set.addDate(day);
+            expected.add(day);
+            description.append("RDATE=").append(day).append(' ');
+        }
+
+        // Some EXDATEs hit occurrences, others miss
+        final int exDates = random.nextInt(6);
+        final List<Integer> candidates = new ArrayList<>(expected);
+        for (int i = 0; i < exDates; i++) {
+            final int day = !candidates.isEmpty() && random.nextBoolean() ?
+                    candidates.get(random.nextInt(candidates.size()))
+                    : start + random.nextInt(HORIZON_DAYS);
+            set.addExceptionDate(day);
+            expected.remove(day);
+            description.append("EXDATE=").append(day).append(' ');
+        }
+
+        return description.append("from ").append(start).toString();
+    }
+
+    // Occurrences up to & including 'end'
+    private static List<Integer> drain(RecurrenceSet set, int end) {
+        final List<Integer> days = new ArrayList<>();
+        while (set.hasNext()) {
+            final int day = set.nextEpochDay();
+            if (day > end) {
+                break;
+            }
+            days.add(day);
+        }
+        return days;
+    }
+
+    private static List<Integer> listOf(int... days) {
+        final List<Integer> list = new ArrayList<>();
+        for (int day : days) {
+            list.add(day);
+        }
+        return list;
+    }
+}